@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.integration;
+
+import com.google.common.base.Strings;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import io.barracks.updateservice.manager.IndexManager;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import io.barracks.updateservice.repository.UpdateRevisionRepositoryImpl;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the lookup of the latest published update of a segment is answered from its index alone, whatever the
+ * number of updates stored.
+ */
+public class LatestPublishedUpdateCoveredQueryTest extends UpdateRevisionBaseTest {
+
+    private static final int[] UPDATE_COUNTS = {100, 1000, 10000};
+    private static final String[] SEGMENT_IDS = {"segment-1", "segment-2", "other"};
+    private static final UpdateStatus[] STATUSES = {UpdateStatus.DRAFT, UpdateStatus.PUBLISHED, UpdateStatus.ARCHIVED};
+    private static final String LATEST_UPDATE_INFO_COLLECTION = "updates_head";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UpdateRevisionRepository updateRevisionRepository;
+
+    @Autowired
+    private IndexManager indexManager;
+
+    @Test
+    public void getLatestPublishedUpdateInfoBySegment_whenDataGrows_shouldNeitherFetchNorSort() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        indexManager.ensureIndexes();
+        long date = 1234567890000L;
+        int stored = 0;
+
+        for (int count : UPDATE_COUNTS) {
+            final List<UpdateRevision> revisions = new ArrayList<>();
+            for (; stored < count; stored++) {
+                revisions.add(getUpdateRevision(stored % 2 == 0 ? userId : UUID.randomUUID().toString(), stored, date++));
+            }
+            updateRevisionRepository.saveLatestUpdateInfo(revisions);
+
+            for (String segmentId : SEGMENT_IDS) {
+                // When
+                final DBObject explain = mongoTemplate.getCollection(LATEST_UPDATE_INFO_COLLECTION)
+                        .find(
+                                UpdateRevisionRepositoryImpl.getPublishedQuery(userId, segmentId),
+                                UpdateRevisionRepositoryImpl.getPublishedProjection()
+                        )
+                        .sort(new BasicDBObject(CREATION_DATE_KEY, -1))
+                        .limit(1)
+                        .explain();
+                final Optional<UpdateRevision> result = updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+
+                // Then
+                final List<String> stages = getStages((DBObject) ((DBObject) explain.get("queryPlanner")).get("winningPlan"));
+                assertThat(stages).as("Plan for %d updates in %s", count, segmentId)
+                        .contains("IXSCAN")
+                        .doesNotContain("FETCH", "SORT", "COLLSCAN");
+                assertThat(result).isPresent();
+                assertThat(result.get().getUserId()).isEqualTo(userId);
+                assertThat(result.get().getStatus()).isEqualTo(UpdateStatus.PUBLISHED);
+                assertThat(result.get().getDescription()).isNotNull();
+                assertThat(result.get().getAdditionalProperties()).containsKey("index");
+            }
+        }
+    }
+
+    @Test
+    public void getLatestPublishedUpdateInfoBySegment_whenNameAndPackageIdAreLongerThanAnIndexKey_shouldReturnThatUpdate() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        indexManager.ensureIndexes();
+        final UpdateRevision revision = getUpdateRevision(userId, 2, 1234567890000L).toBuilder()
+                .name(Strings.repeat("name", 1000))
+                .packageId(Strings.repeat("packageId", 1000))
+                .build();
+        updateRevisionRepository.saveLatestUpdateInfo(Collections.singletonList(revision));
+
+        // When
+        final Optional<UpdateRevision> result = updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, revision.getSegmentId());
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(result.get().getName()).isEqualTo(revision.getName());
+        assertThat(result.get().getPackageId()).isEqualTo(revision.getPackageId());
+    }
+
+    private UpdateRevision getUpdateRevision(String userId, int index, long date) {
+        final int rank = index / 2;
+        final String segmentId = SEGMENT_IDS[(rank / STATUSES.length) % SEGMENT_IDS.length];
+        return UpdateRevision.builder()
+                .uuid(UUID.randomUUID())
+                .userId(userId)
+                .name("Update " + index)
+                .description("Description " + index)
+                .packageId(UUID.randomUUID().toString())
+                .segmentId("other".equals(segmentId) ? null : segmentId)
+                .additionalProperties(Collections.singletonMap("index", index))
+                .revisionId(1)
+                .creationDate(new Date(date))
+                .status(STATUSES[rank % STATUSES.length])
+                .build();
+    }
+
+    private List<String> getStages(DBObject plan) {
+        final List<String> stages = new ArrayList<>();
+        DBObject stage = plan;
+        while (stage != null) {
+            stages.add((String) stage.get("stage"));
+            stage = (DBObject) stage.get("inputStage");
+        }
+        return stages;
+    }
+}
@@ -180,4 +180,32 @@ public class LatestPublishedUpdateRevisionBySegmentTest extends UpdateRevisionBa
         assertThat(responseEntity.getBody()).isEqualTo(expected);
     }
 
+    @Test
+    public void getUpdateForSegment_whenLatestPublishedUpdateIsArchived_shouldReturnThePreviousPublishedUpdate() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final JSONObject request = getBaseUpdateRevisionRequest();
+        request.replace(USER_ID_KEY, userId);
+        request.replace(SEGMENT_ID_KEY, segmentId);
+        JSONObject created = createUpdate(request).getBody();
+        request.replace(STATUS_KEY, "published");
+        final JSONObject expected = reviseUpdate(userId, created.getAsString(UUID_KEY), request).getBody();
+
+        request.replace(STATUS_KEY, "draft");
+        created = createUpdate(request).getBody();
+        request.replace(STATUS_KEY, "published");
+        reviseUpdate(userId, created.getAsString(UUID_KEY), request);
+        getUpdateBySegmentId(userId, segmentId);
+        request.replace(STATUS_KEY, "archived");
+        reviseUpdate(userId, created.getAsString(UUID_KEY), request);
+
+        // When
+        final ResponseEntity<JSONObject> responseEntity = getUpdateBySegmentId(userId, segmentId);
+
+        // Then
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(responseEntity.getBody()).isEqualTo(expected);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.integration;
+
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Compares the latency of a page of updates for a tenant with more than 10k revisions:
+ * grouping the whole history twice (count, then page), counting then finding on the latest revisions,
+ * and the single $facet round trip used by the repository.
+ */
+public class LatestUpdateInfoPagingBenchmarkTest extends UpdateRevisionBaseTest {
+
+    private static final int UPDATE_COUNT = 2500;
+    private static final int REVISIONS_PER_UPDATE = 4;
+    private static final int WARM_UP_RUNS = 5;
+    private static final int MEASURED_RUNS = 20;
+    private static final String LATEST_UPDATE_INFO_COLLECTION = "updates_head";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UpdateRevisionRepository updateRevisionRepository;
+
+    @Test
+    public void getAllLatestUpdateInfo_whenTenantHasManyRevisions_shouldReturnTheSamePageFaster() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        insertHistory(userId);
+        updateRevisionRepository.rebuildLatestUpdateInfo();
+
+        for (Pageable pageable : Arrays.asList(new PageRequest(0, 20), new PageRequest(100, 20))) {
+            // When
+            final Page<UpdateRevision> facet = updateRevisionRepository.getAllLatestUpdateInfo(
+                    pageable, Optional.of(userId), Collections.emptyList(), Collections.emptyList()
+            );
+            final long historyNanos = measure(() -> getPageFromHistory(userId, pageable));
+            final long countAndFindNanos = measure(() -> getPageWithCountAndFind(userId, pageable));
+            final long facetNanos = measure(() -> updateRevisionRepository.getAllLatestUpdateInfo(
+                    pageable, Optional.of(userId), Collections.emptyList(), Collections.emptyList()
+            ));
+            log.info(String.format(
+                    "Page %d of %d updates (%d revisions): history aggregations %.2fms, count and find %.2fms, facet %.2fms",
+                    pageable.getPageNumber(), UPDATE_COUNT, UPDATE_COUNT * REVISIONS_PER_UPDATE,
+                    historyNanos / 1e6, countAndFindNanos / 1e6, facetNanos / 1e6
+            ));
+
+            // Then
+            assertThat(facet.getTotalElements()).isEqualTo(UPDATE_COUNT);
+            assertThat(facet.getContent()).isEqualTo(getPageWithCountAndFind(userId, pageable));
+            assertThat(facet.getContent()).isEqualTo(getPageFromHistory(userId, pageable));
+        }
+    }
+
+    private void insertHistory(String userId) {
+        final List<UpdateRevision> revisions = new ArrayList<>(UPDATE_COUNT * REVISIONS_PER_UPDATE);
+        final UpdateStatus[] statuses = {UpdateStatus.DRAFT, UpdateStatus.PUBLISHED, UpdateStatus.ARCHIVED, UpdateStatus.PUBLISHED};
+        long date = 1234567890000L;
+        for (int update = 0; update < UPDATE_COUNT; update++) {
+            final UUID uuid = UUID.randomUUID();
+            for (int revision = 0; revision < REVISIONS_PER_UPDATE; revision++) {
+                revisions.add(UpdateRevision.builder()
+                        .uuid(uuid)
+                        .userId(userId)
+                        .name("Update " + update)
+                        .description("Revision " + revision)
+                        .packageId(UUID.randomUUID().toString())
+                        .segmentId(UUID.randomUUID().toString())
+                        .additionalProperties(Collections.singletonMap("revision", revision))
+                        .revisionId(revision + 1)
+                        .creationDate(new Date(date++))
+                        .status(statuses[revision])
+                        .build()
+                );
+            }
+        }
+        mongoTemplate.insertAll(revisions);
+    }
+
+    private List<UpdateRevision> getPageFromHistory(String userId, Pageable pageable) {
+        final List<AggregationOperation> operations = new ArrayList<>(Arrays.asList(
+                match(where("userId").is(userId)),
+                Aggregation.sort(Sort.Direction.DESC, "creationDate"),
+                Aggregation.group("uuid").first("$$ROOT").as("updateInfo"),
+                Aggregation.project("updateInfo")
+                        .and("updateInfo._id").as("_id")
+                        .and("updateInfo.uuid").as("uuid")
+                        .and("updateInfo.packageId").as("packageId")
+                        .and("updateInfo.segmentId").as("segmentId")
+                        .and("updateInfo.name").as("name")
+                        .and("updateInfo.additionalProperties").as("additionalProperties")
+                        .and("updateInfo.userId").as("userId")
+                        .and("updateInfo.description").as("description")
+                        .and("updateInfo.revisionId").as("revisionId")
+                        .and("updateInfo.creationDate").as("creationDate")
+                        .and("updateInfo.scheduledDate").as("scheduledDate")
+                        .and("updateInfo.status").as("status"),
+                Aggregation.sort(Sort.Direction.DESC, "creationDate")
+        ));
+        final List<AggregationOperation> count = new ArrayList<>(operations);
+        count.add(Aggregation.group(new String[]{}).count().as("count"));
+        mongoTemplate.aggregate(Aggregation.newAggregation(UpdateRevision.class, count), Map.class);
+
+        operations.add(Aggregation.skip(pageable.getPageNumber() * pageable.getPageSize()));
+        operations.add(Aggregation.limit(pageable.getPageSize()));
+        return mongoTemplate.aggregate(Aggregation.newAggregation(UpdateRevision.class, operations), UpdateRevision.class)
+                .getMappedResults();
+    }
+
+    private List<UpdateRevision> getPageWithCountAndFind(String userId, Pageable pageable) {
+        final Query query = query(where("userId").is(userId));
+        mongoTemplate.count(query, LATEST_UPDATE_INFO_COLLECTION);
+        query.with(new Sort(Sort.Direction.DESC, "creationDate"))
+                .skip(pageable.getPageNumber() * pageable.getPageSize())
+                .limit(pageable.getPageSize());
+        return mongoTemplate.find(query, UpdateRevision.class, LATEST_UPDATE_INFO_COLLECTION);
+    }
+
+    private long measure(Supplier<?> call) {
+        for (int run = 0; run < WARM_UP_RUNS; run++) {
+            call.get();
+        }
+        final long[] durations = new long[MEASURED_RUNS];
+        for (int run = 0; run < MEASURED_RUNS; run++) {
+            final long start = System.nanoTime();
+            call.get();
+            durations[run] = System.nanoTime() - start;
+        }
+        Arrays.sort(durations);
+        return durations[MEASURED_RUNS / 2];
+    }
+}
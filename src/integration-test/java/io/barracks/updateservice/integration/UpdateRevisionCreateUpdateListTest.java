@@ -24,6 +24,7 @@
 
 package io.barracks.updateservice.integration;
 
+import com.google.common.base.Strings;
 import net.minidev.json.JSONObject;
 import org.junit.Test;
 import org.springframework.http.HttpStatus;
@@ -81,6 +82,24 @@ public class UpdateRevisionCreateUpdateListTest extends UpdateRevisionBaseTest {
         assertThat(result.getAsString(CREATION_DATE_KEY)).isNotNull();
     }
 
+    @Test
+    public void createUpdate_withNameAndPackageIdLongerThanAnIndexKey_shouldReturnThatUpdate() throws Exception {
+        // Given
+        final JSONObject request = getBaseUpdateRevisionRequest();
+        request.replace(NAME_KEY, Strings.repeat("name", 1000));
+        request.replace(PACKAGE_ID_KEY, Strings.repeat("packageId", 1000));
+        final JSONObject expected = duplicate(request);
+
+        // When
+        final ResponseEntity<JSONObject> responseEntity = createUpdate(request);
+        final JSONObject result = responseEntity.getBody();
+        copyUpdateExpectedFields(expected, result);
+
+        // Then
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(result).isEqualTo(expected);
+    }
+
     @Test
     public void createUpdate_withNoSegmentId_shouldReturnThatUpdate() throws Exception {
         // Given
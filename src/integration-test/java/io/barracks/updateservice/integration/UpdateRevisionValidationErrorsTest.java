@@ -112,6 +112,19 @@ public class UpdateRevisionValidationErrorsTest extends UpdateRevisionBaseTest {
         assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
     }
 
+    @Test
+    public void createUpdate_whenRequestSegmentIdIsTheOtherSegment_shouldReturn400() throws Exception {
+        // Given
+        final JSONObject request = getBaseUpdateRevisionRequest();
+        request.replace(SEGMENT_ID_KEY, "other");
+
+        // When
+        final ResponseEntity<JSONObject> responseEntity = createUpdate(request);
+
+        // Then
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
     @Test
     public void reviseUpdate_whenScheduledWithoutDate_shouldReturn400() throws Exception {
         // Given
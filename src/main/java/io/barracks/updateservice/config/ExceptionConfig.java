@@ -26,8 +26,10 @@ package io.barracks.updateservice.config;
 
 import cz.jirutka.spring.exhandler.RestHandlerExceptionResolverBuilder;
 import io.barracks.commons.configuration.ExceptionHandlingConfiguration;
+import io.barracks.updateservice.exception.ConcurrentRevisionException;
+import io.barracks.updateservice.exception.InvalidCursorException;
 import io.barracks.updateservice.exception.InvalidUpdateOperationException;
-import io.barracks.updateservice.exception.NoSuchUpdateException;
+import io.barracks.updateservice.exception.StaleRevisionException;
 import io.barracks.updateservice.exception.UnknownUpdateStatusException;
 import io.barracks.updateservice.exception.UpdateNotFoundException;
 import org.springframework.context.annotation.Configuration;
@@ -41,8 +43,10 @@ public class ExceptionConfig extends ExceptionHandlingConfiguration {
         return super.restExceptionResolver()
                 .addErrorMessageHandler(UnknownUpdateStatusException.class, HttpStatus.BAD_REQUEST)
                 .addErrorMessageHandler(UpdateNotFoundException.class, HttpStatus.NOT_FOUND)
-                .addErrorMessageHandler(NoSuchUpdateException.class, HttpStatus.NO_CONTENT)
-                .addErrorMessageHandler(InvalidUpdateOperationException.class, HttpStatus.BAD_REQUEST);
+                .addErrorMessageHandler(InvalidUpdateOperationException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(InvalidCursorException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(ConcurrentRevisionException.class, HttpStatus.CONFLICT)
+                .addErrorMessageHandler(StaleRevisionException.class, HttpStatus.PRECONDITION_FAILED);
     }
 
 }
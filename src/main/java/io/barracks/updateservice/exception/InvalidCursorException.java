@@ -24,8 +24,8 @@
 
 package io.barracks.updateservice.exception;
 
-public class NoSuchUpdateException extends RuntimeException {
-    public NoSuchUpdateException(String message) {
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String message) {
         super(message);
     }
 }
@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Paces the publication of a backlog: caps the number of updates published per second, and adapts the batch size to
+ * the latency of the last batch, halving it when the database slows down and growing it back slowly otherwise.
+ */
+class CatchUpThrottle {
+
+    private final RateLimiter rateLimiter;
+    private final long targetLatency;
+    private final int maximumBatchSize;
+    private final int increment;
+    private final AtomicInteger batchSize;
+
+    CatchUpThrottle(double rate, long targetLatency, int maximumBatchSize) {
+        this.rateLimiter = RateLimiter.create(rate);
+        this.targetLatency = targetLatency;
+        this.maximumBatchSize = maximumBatchSize;
+        this.increment = Math.max(1, maximumBatchSize / 10);
+        this.batchSize = new AtomicInteger(increment);
+    }
+
+    /**
+     * Wait until the rate allows another batch.
+     *
+     * @return the size of the batch to publish
+     */
+    int acquire() {
+        final int size = batchSize.get();
+        rateLimiter.acquire(size);
+        return size;
+    }
+
+    void record(int size, long latency) {
+        if (latency > targetLatency) {
+            batchSize.set(Math.max(1, size / 2));
+        } else {
+            batchSize.set(Math.min(maximumBatchSize, size + increment));
+        }
+    }
+
+    int getBatchSize() {
+        return batchSize.get();
+    }
+}
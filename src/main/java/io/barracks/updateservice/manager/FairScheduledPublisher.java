@@ -0,0 +1,328 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.barracks.updateservice.model.ScheduledTransition;
+import io.barracks.updateservice.model.TenantBacklog;
+import io.barracks.updateservice.repository.ScheduledTransitionRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes the due scheduled updates of the users in the partitions owned by this node, user by user, so that a user
+ * with a huge backlog does not delay the others.
+ * Every round gives each user with due updates at most one quota of them, and runs the users in parallel on a bounded
+ * pool. A user is handled by a single worker at a time, so the revisions of an update are always written in order.
+ * <p>
+ * When updates have been due for longer than the catch-up threshold, e.g. after a downtime, the backlog is drained
+ * oldest first across the owned users at a limited rate, with batches sized after the latency of the database, instead
+ * of all at once. The due transitions are still read user by user, and merged by due date.
+ * <p>
+ * The backlog and lag of the users are only exposed as aggregates, so that the number of metrics does not grow with
+ * the number of users.
+ */
+@Component
+public class FairScheduledPublisher implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "publication.tenants.";
+    private static final String CATCH_UP_METRIC_PREFIX = "publication.catchUp.";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ScheduledTransitionRepository scheduledTransitionRepository;
+    private final UpdateRevisionManager updateRevisionManager;
+    private final PublisherPartitionManager publisherPartitionManager;
+    private final ExecutorService executor;
+    private final int quota;
+    private final long catchUpThreshold;
+    private final CatchUpThrottle catchUpThrottle;
+    private final ConcurrentMap<String, TenantProgress> progress = new ConcurrentHashMap<>();
+    private final AtomicLong catchUpTotal = new AtomicLong();
+    private final AtomicLong catchUpRemaining = new AtomicLong();
+    private volatile boolean catchingUp = false;
+
+    @Autowired
+    public FairScheduledPublisher(
+            ScheduledTransitionRepository scheduledTransitionRepository,
+            UpdateRevisionManager updateRevisionManager,
+            PublisherPartitionManager publisherPartitionManager,
+            @Value("${io.barracks.updateservice.manager.FairScheduledPublisher.poolSize}") int poolSize,
+            @Value("${io.barracks.updateservice.manager.FairScheduledPublisher.quota}") int quota,
+            @Value("${io.barracks.updateservice.manager.FairScheduledPublisher.catchUpThreshold}") long catchUpThreshold,
+            @Value("${io.barracks.updateservice.manager.FairScheduledPublisher.catchUpRate}") double catchUpRate,
+            @Value("${io.barracks.updateservice.manager.FairScheduledPublisher.catchUpTargetLatency}") long catchUpTargetLatency
+    ) {
+        this.scheduledTransitionRepository = scheduledTransitionRepository;
+        this.updateRevisionManager = updateRevisionManager;
+        this.publisherPartitionManager = publisherPartitionManager;
+        this.executor = Executors.newFixedThreadPool(
+                poolSize,
+                new ThreadFactoryBuilder().setNameFormat("scheduled-publisher-%d").setDaemon(true).build()
+        );
+        this.quota = quota;
+        this.catchUpThreshold = catchUpThreshold;
+        this.catchUpThrottle = new CatchUpThrottle(catchUpRate, catchUpTargetLatency, quota);
+    }
+
+    /**
+     * Publish every update due now, round after round, until each user has no due update left.
+     * A user whose batch fails is left to the next run. Partitions are rebalanced between rounds, and the users of
+     * the partitions this node no longer owns are left to their new owner.
+     */
+    public void publishDueScheduledUpdates() {
+        final Date now = new Date();
+        final List<TenantBacklog> backlogs = scheduledTransitionRepository.getBacklogs(now)
+                .stream()
+                .filter(backlog -> publisherPartitionManager.owns(backlog.getUserId()))
+                .sorted(Comparator.comparing(TenantBacklog::getOldestDueDate))
+                .collect(Collectors.toList());
+        startCatchUpIfLate(now, backlogs);
+        progress.clear();
+        for (TenantBacklog backlog : backlogs) {
+            progress.put(backlog.getUserId(), new TenantProgress(backlog.getCount(), now.getTime() - backlog.getOldestDueDate().getTime()));
+        }
+        if (catchingUp) {
+            if (catchUp(now, backlogs)) {
+                log.info("Caught up with " + catchUpTotal.get() + " late scheduled updates");
+                catchingUp = false;
+            }
+            return;
+        }
+
+        Map<String, Optional<ScheduledTransition>> cursors = new LinkedHashMap<>();
+        for (TenantBacklog backlog : backlogs) {
+            cursors.put(backlog.getUserId(), Optional.empty());
+        }
+
+        while (!cursors.isEmpty()) {
+            final Predicate<String> owned = publisherPartitionManager.holdPartitions()
+                    ? publisherPartitionManager.checkOwnership()
+                    : userId -> false;
+            cursors.keySet().removeIf(owned.negate());
+            if (cursors.isEmpty()) {
+                break;
+            }
+            final Map<String, Future<Optional<ScheduledTransition>>> round = new LinkedHashMap<>();
+            cursors.forEach((userId, after) -> round.put(userId, executor.submit(() -> publishNextBatch(now, userId, after))));
+            cursors = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<Optional<ScheduledTransition>>> batch : round.entrySet()) {
+                try {
+                    final Optional<ScheduledTransition> last = batch.getValue().get();
+                    if (last.isPresent()) {
+                        cursors.put(batch.getKey(), last);
+                    }
+                } catch (ExecutionException e) {
+                    log.warn("Could not publish the scheduled updates of user " + batch.getKey() + ", leaving them to the next run", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        final Collection<TenantProgress> tenants = progress.values();
+        metrics.add(new Metric<>(METRIC_PREFIX + "pending", tenants.stream().filter(tenant -> tenant.backlog > 0).count()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "backlog", tenants.stream().mapToLong(tenant -> tenant.backlog).sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "maxLag", tenants.stream().mapToLong(tenant -> tenant.lag).max().orElse(0)));
+        final long total = catchUpTotal.get();
+        metrics.add(new Metric<>(CATCH_UP_METRIC_PREFIX + "active", catchingUp ? 1 : 0));
+        metrics.add(new Metric<>(CATCH_UP_METRIC_PREFIX + "total", total));
+        metrics.add(new Metric<>(CATCH_UP_METRIC_PREFIX + "remaining", catchUpRemaining.get()));
+        metrics.add(new Metric<>(CATCH_UP_METRIC_PREFIX + "progress", total == 0 ? 1.0 : 1.0 - (double) catchUpRemaining.get() / total));
+        metrics.add(new Metric<>(CATCH_UP_METRIC_PREFIX + "batchSize", catchUpThrottle.getBatchSize()));
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the last transition of the batch if the user has more due transitions, nothing otherwise
+     */
+    private Optional<ScheduledTransition> publishNextBatch(Date now, String userId, Optional<ScheduledTransition> after) {
+        final Slice<ScheduledTransition> slice = scheduledTransitionRepository.getDueTransitions(now, userId, after, quota);
+        if (!slice.hasContent()) {
+            progress.computeIfPresent(userId, (id, tenant) -> new TenantProgress(0, tenant.lag));
+            return Optional.empty();
+        }
+        publish(userId, slice.getContent());
+        if (!slice.hasNext()) {
+            progress.computeIfPresent(userId, (id, tenant) -> new TenantProgress(0, tenant.lag));
+        }
+        return slice.hasNext() ? Optional.of(slice.getContent().get(slice.getNumberOfElements() - 1)) : Optional.empty();
+    }
+
+    /**
+     * Publish the due updates of the owned users oldest first, whoever they belong to, one throttled batch per round.
+     * The due transitions of each user are read ahead, only once the user holds the oldest of the ones left, and the
+     * batch takes the oldest transitions of all the users. The users of the batch are published in parallel, one
+     * worker per user. A user whose batch fails, or whose partition is taken over, is left to the next run.
+     *
+     * @return whether every due update has been handled
+     */
+    private boolean catchUp(Date now, List<TenantBacklog> backlogs) {
+        final PriorityQueue<CatchUpCursor> cursors = new PriorityQueue<>(
+                Comparator.comparing((CatchUpCursor cursor) -> cursor.nextDueAt).thenComparing(cursor -> cursor.userId)
+        );
+        backlogs.forEach(backlog -> cursors.add(new CatchUpCursor(backlog.getUserId(), backlog.getOldestDueDate())));
+        while (!cursors.isEmpty()) {
+            if (!publisherPartitionManager.holdPartitions()) {
+                return false;
+            }
+            final Predicate<String> owned = publisherPartitionManager.checkOwnership();
+            cursors.removeIf(cursor -> !owned.test(cursor.userId));
+            final int size = catchUpThrottle.acquire();
+            final Map<String, List<ScheduledTransition>> batches = new LinkedHashMap<>();
+            int count = 0;
+            while (count < size && !cursors.isEmpty()) {
+                final CatchUpCursor cursor = cursors.poll();
+                if (cursor.transitions.isEmpty()) {
+                    cursor.readAhead(scheduledTransitionRepository.getDueTransitions(now, cursor.userId, cursor.after, size));
+                } else {
+                    batches.computeIfAbsent(cursor.userId, userId -> new ArrayList<>()).add(cursor.next());
+                    count++;
+                }
+                if (cursor.hasNext()) {
+                    cursors.add(cursor);
+                }
+            }
+            final long start = System.nanoTime();
+            final Map<String, Future<?>> round = new LinkedHashMap<>();
+            batches.forEach((userId, transitions) -> round.put(userId, executor.submit(() -> publish(userId, transitions))));
+            for (Map.Entry<String, Future<?>> batch : round.entrySet()) {
+                try {
+                    batch.getValue().get();
+                    catchUpRemaining.updateAndGet(remaining -> Math.max(0, remaining - batches.get(batch.getKey()).size()));
+                } catch (ExecutionException e) {
+                    cursors.removeIf(cursor -> cursor.userId.equals(batch.getKey()));
+                    log.warn("Could not publish the scheduled updates of user " + batch.getKey() + ", leaving them to the next run", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (count > 0) {
+                catchUpThrottle.record(size, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+        return true;
+    }
+
+    private void publish(String userId, List<ScheduledTransition> transitions) {
+        final long lag = System.currentTimeMillis() - transitions.get(0).getDueAt().getTime();
+        updateRevisionManager.publishScheduledUpdates(updateRevisionManager.getScheduledUpdates(transitions));
+        progress.computeIfPresent(userId, (id, tenant) -> new TenantProgress(Math.max(0, tenant.backlog - transitions.size()), lag));
+    }
+
+    private void startCatchUpIfLate(Date now, List<TenantBacklog> backlogs) {
+        final boolean late = !backlogs.isEmpty() && now.getTime() - backlogs.get(0).getOldestDueDate().getTime() > catchUpThreshold;
+        if (late && !catchingUp) {
+            final long total = backlogs.stream().mapToLong(TenantBacklog::getCount).sum();
+            log.info("Catching up with " + total + " late scheduled updates");
+            catchUpTotal.set(total);
+            catchUpRemaining.set(total);
+        }
+        catchingUp = late;
+    }
+
+    /**
+     * The due transitions of a user read ahead during a catch-up, and the due date of the next one, which is only a
+     * lower bound until it is read.
+     */
+    private static class CatchUpCursor {
+        private final String userId;
+        private final Deque<ScheduledTransition> transitions = new ArrayDeque<>();
+        private Date nextDueAt;
+        private Optional<ScheduledTransition> after = Optional.empty();
+        private boolean more = true;
+
+        private CatchUpCursor(String userId, Date oldestDueDate) {
+            this.userId = userId;
+            this.nextDueAt = oldestDueDate;
+        }
+
+        private void readAhead(Slice<ScheduledTransition> slice) {
+            transitions.addAll(slice.getContent());
+            more = slice.hasNext();
+            if (slice.hasContent()) {
+                after = Optional.of(slice.getContent().get(slice.getNumberOfElements() - 1));
+                nextDueAt = transitions.peek().getDueAt();
+            }
+        }
+
+        private ScheduledTransition next() {
+            final ScheduledTransition transition = transitions.poll();
+            nextDueAt = transitions.isEmpty() ? transition.getDueAt() : transitions.peek().getDueAt();
+            return transition;
+        }
+
+        private boolean hasNext() {
+            return !transitions.isEmpty() || more;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class TenantProgress {
+        private final long backlog;
+        private final long lag;
+    }
+}
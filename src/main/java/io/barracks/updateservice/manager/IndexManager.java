@@ -0,0 +1,246 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.manager;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.DBObject;
+import io.barracks.updateservice.repository.IndexedRepository;
+import io.barracks.updateservice.repository.QueryShape;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the indexes declared by the repositories for their query shapes.
+ * Every index is built in the background, so that building one does not lock the database for the nodes still
+ * serving traffic. The repositories rely on the unique indexes to detect conflicting writes though, so startup waits
+ * for the missing ones to be built, and fails if one cannot be. The other missing indexes are built once started. The query shapes still lacking an index are logged, and exposed as metrics. The indexes the
+ * repositories no longer rely on are dropped first.
+ */
+@Component
+public class IndexManager implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "indexes.";
+    private static final long POLL_INTERVAL = 1000L;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final MongoOperations operations;
+    private final List<QueryShape> queryShapes;
+    private final long uniqueIndexTimeout;
+    private final Map<String, List<String>> obsoleteIndexes = new HashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("index-builder-%d").setDaemon(true).build()
+    );
+    private volatile List<QueryShape> unsupportedShapes;
+
+    @Autowired
+    public IndexManager(
+            MongoOperations operations,
+            List<IndexedRepository> repositories,
+            @Value("${io.barracks.updateservice.manager.IndexManager.uniqueIndexTimeout}") long uniqueIndexTimeout
+    ) {
+        this.operations = operations;
+        this.uniqueIndexTimeout = uniqueIndexTimeout;
+        this.queryShapes = repositories.stream()
+                .flatMap(repository -> repository.getQueryShapes().stream())
+                .collect(Collectors.toList());
+        this.unsupportedShapes = queryShapes;
+        repositories.forEach(repository -> repository.getObsoleteIndexes().forEach(
+                (collection, names) -> obsoleteIndexes.computeIfAbsent(collection, key -> new ArrayList<>()).addAll(names)
+        ));
+    }
+
+    @PostConstruct
+    public void start() {
+        dropObsoleteIndexes();
+        ensureUniqueIndexes();
+        executor.submit(() -> {
+            try {
+                ensureIndexes();
+            } catch (RuntimeException e) {
+                log.error("Could not build the missing indexes", e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Drop the indexes the repositories no longer rely on, e.g. because an index with other keys replaced them. An index
+     * that cannot be dropped is logged and left as is.
+     */
+    public void dropObsoleteIndexes() {
+        obsoleteIndexes.forEach((collection, names) -> {
+            final Set<Object> existingNames = operations.getCollection(collection).getIndexInfo().stream()
+                    .map(index -> index.get("name"))
+                    .collect(Collectors.toSet());
+            names.stream().filter(existingNames::contains).forEach(name -> {
+                try {
+                    operations.indexOps(collection).dropIndex(name);
+                    log.info("Dropped the obsolete index " + name + " on " + collection);
+                } catch (RuntimeException e) {
+                    log.warn("Could not drop the obsolete index " + name + " on " + collection, e);
+                }
+            });
+        });
+    }
+
+    /**
+     * Build the unique indexes missing for the declared query shapes in the background, and wait until the collections
+     * report them, e.g. when another node is building them.
+     *
+     * @throws IllegalStateException if one of them cannot be built, e.g. because its collection holds duplicates, or
+     *                               is still not reported once the timeout has elapsed
+     */
+    public void ensureUniqueIndexes() {
+        final List<QueryShape> missing = getUnsupportedShapes().stream()
+                .filter(QueryShape::isUnique)
+                .collect(Collectors.toList());
+        for (QueryShape shape : missing) {
+            try {
+                operations.indexOps(shape.getCollection()).ensureIndex(shape.getIndex().background());
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Could not build the unique index of query shape " + shape.getName() + " on " + shape.getCollection(), e);
+            }
+        }
+        final long deadline = System.currentTimeMillis() + uniqueIndexTimeout;
+        List<QueryShape> pending = missing;
+        while (true) {
+            pending = pending.stream().filter(shape -> !isSupported(shape)).collect(Collectors.toList());
+            if (pending.isEmpty()) {
+                break;
+            }
+            final QueryShape shape = pending.get(0);
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("The unique index of query shape " + shape.getName() + " on " + shape.getCollection() + " is still not built");
+            }
+            log.info("Waiting for the unique index of query shape " + shape.getName() + " on " + shape.getCollection());
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the unique index of query shape " + shape.getName() + " on " + shape.getCollection(), e);
+            }
+        }
+        missing.forEach(shape -> log.info("Built the unique index of query shape " + shape.getName() + " on " + shape.getCollection()));
+    }
+
+    /**
+     * Build the indexes missing for the declared query shapes in the background, the unique ones first.
+     *
+     * @return the query shapes still lacking an index
+     */
+    public List<QueryShape> ensureIndexes() {
+        final List<QueryShape> missing = getUnsupportedShapes();
+        missing.forEach(shape -> log.warn("Query shape " + shape.getName() + " on " + shape.getCollection() + " lacks index support"));
+        missing.stream()
+                .sorted(Comparator.comparing(shape -> !shape.isUnique()))
+                .forEach(shape -> {
+                    try {
+                        operations.indexOps(shape.getCollection()).ensureIndex(shape.getIndex().background());
+                        log.info("Built the index of query shape " + shape.getName() + " on " + shape.getCollection());
+                    } catch (RuntimeException e) {
+                        log.warn("Could not build the index of query shape " + shape.getName() + " on " + shape.getCollection(), e);
+                    }
+                });
+        unsupportedShapes = getUnsupportedShapes();
+        unsupportedShapes.forEach(shape -> log.warn("Query shape " + shape.getName() + " on " + shape.getCollection() + " still lacks index support"));
+        return unsupportedShapes;
+    }
+
+    /**
+     * The declared query shapes that no existing index serves. A shape is served by an index whose keys start with the
+     * keys of the shape, in the same order and directions, or by a unique index on exactly those keys if the shape
+     * requires uniqueness.
+     */
+    public List<QueryShape> getUnsupportedShapes() {
+        return queryShapes.stream()
+                .filter(shape -> !isSupported(shape))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<QueryShape> unsupported = unsupportedShapes;
+        final List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "shapes", queryShapes.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "unsupported", unsupported.size()));
+        unsupported.forEach(shape -> metrics.add(new Metric<>(
+                METRIC_PREFIX + "unsupported." + shape.getCollection() + "." + shape.getName(), 1
+        )));
+        return Collections.unmodifiableList(metrics);
+    }
+
+    private boolean isSupported(QueryShape shape) {
+        return operations.getCollection(shape.getCollection()).getIndexInfo().stream().anyMatch(index -> serves(index, shape));
+    }
+
+    private boolean serves(DBObject index, QueryShape shape) {
+        final DBObject existingKeys = (DBObject) index.get("key");
+        final DBObject declaredKeys = shape.getIndex().getIndexKeys();
+        final List<String> existingNames = new ArrayList<>(existingKeys.keySet());
+        final List<String> declaredNames = new ArrayList<>(declaredKeys.keySet());
+        if (shape.isUnique() && (!Boolean.TRUE.equals(index.get("unique")) || existingNames.size() != declaredNames.size())) {
+            return false;
+        }
+        if (existingNames.size() < declaredNames.size()) {
+            return false;
+        }
+        for (int i = 0; i < declaredNames.size(); i++) {
+            final String name = declaredNames.get(i);
+            if (!existingNames.get(i).equals(name) || !sameDirection(existingKeys.get(name), declaredKeys.get(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean sameDirection(Object existing, Object declared) {
+        return existing instanceof Number && declared instanceof Number
+                && ((Number) existing).intValue() == ((Number) declared).intValue();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.barracks.updateservice.model.UpdateRevision;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of the latest published update of each (user, segment), in front of the lookups polled by devices.
+ * The absence of a published update is cached as well, since it is what most devices of an empty segment get.
+ * Every entry remembers the generation of its user when it was loaded, so that a lookup racing with an invalidation
+ * can never serve what it read before the write. Generations are drawn from a single clock and only kept for as many
+ * users as there are entries: a forgotten user starts again from the current clock, which is never older than the
+ * entries loaded before its last invalidation.
+ * Concurrent misses on the same entry share a single load, and get the same result or the same failure.
+ * Invalidations only reach the node that handled the write, so entries also expire a bounded time after they were
+ * loaded, which is how long another node may keep answering with a replaced or newly published update.
+ */
+@Component
+public class LatestPublishedUpdateCache implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.latestPublishedUpdate.";
+
+    private final Cache<Key, Entry> cache;
+    private final ConcurrentMap<String, AtomicLong> generations;
+    private final AtomicLong clock = new AtomicLong();
+    private final ConcurrentMap<Key, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong totalLoadTime = new AtomicLong();
+
+    @Autowired
+    public LatestPublishedUpdateCache(
+            @Value("${io.barracks.updateservice.manager.LatestPublishedUpdateCache.maximumSize}") long maximumSize,
+            @Value("${io.barracks.updateservice.manager.LatestPublishedUpdateCache.expireAfterWrite}") long expireAfterWrite
+    ) {
+        this(maximumSize, expireAfterWrite, Ticker.systemTicker());
+    }
+
+    LatestPublishedUpdateCache(long maximumSize, long expireAfterWrite, Ticker ticker) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        this.generations = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .<String, AtomicLong>build()
+                .asMap();
+    }
+
+    public Optional<UpdateRevision> get(String userId, Optional<String> segmentId, Supplier<Optional<UpdateRevision>> loader) {
+        final Key key = new Key(userId, segmentId.orElse(null));
+        final long generation = getGeneration(userId).get();
+        final Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.generation == generation) {
+            hitCount.incrementAndGet();
+            return entry.update;
+        }
+
+        // Join the load of the same generation if there is one, otherwise start it
+        final Flight flight = new Flight(generation, new CompletableFuture<>());
+        final Flight current = flights.compute(key, (k, other) -> other != null && other.generation == generation ? other : flight);
+        if (current != flight) {
+            coalescedCount.incrementAndGet();
+            return join(current.update);
+        }
+
+        final long start = System.nanoTime();
+        try {
+            final Optional<UpdateRevision> update = loader.get();
+            cache.put(key, new Entry(generation, update));
+            flight.update.complete(update);
+            return update;
+        } catch (RuntimeException | Error e) {
+            flight.update.completeExceptionally(e);
+            throw e;
+        } finally {
+            totalLoadTime.addAndGet(System.nanoTime() - start);
+            loadCount.incrementAndGet();
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Outdate every entry of the user. Must be called once a write for that user is visible in the database.
+     */
+    public void invalidate(String userId) {
+        final long generation = clock.incrementAndGet();
+        getGeneration(userId).accumulateAndGet(generation, Math::max);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final long hits = hitCount.get();
+        final long loads = loadCount.get();
+        final long coalesced = coalescedCount.get();
+        final long requests = hits + loads + coalesced;
+        final double hitRatio = requests == 0 ? 1.0 : (double) hits / requests;
+        final List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "size", cache.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit.ratio", hitRatio));
+        metrics.add(new Metric<>(METRIC_PREFIX + "miss.ratio", 1.0 - hitRatio));
+        metrics.add(new Metric<>(METRIC_PREFIX + "evictions", cache.stats().evictionCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "load.count", loads));
+        metrics.add(new Metric<>(METRIC_PREFIX + "load.coalesced", coalesced));
+        metrics.add(new Metric<>(
+                METRIC_PREFIX + "load.averageTime",
+                loads == 0 ? 0.0 : (double) TimeUnit.NANOSECONDS.toMicros(totalLoadTime.get()) / loads / 1000
+        ));
+        return metrics;
+    }
+
+    private static Optional<UpdateRevision> join(CompletableFuture<Optional<UpdateRevision>> update) {
+        try {
+            return update.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private AtomicLong getGeneration(String userId) {
+        return generations.computeIfAbsent(userId, id -> new AtomicLong(clock.get()));
+    }
+
+    @RequiredArgsConstructor
+    @EqualsAndHashCode
+    private static class Key {
+        private final String userId;
+        private final String segmentId;
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+        private final long generation;
+        private final Optional<UpdateRevision> update;
+    }
+
+    @RequiredArgsConstructor
+    private static class Flight {
+        private final long generation;
+        private final CompletableFuture<Optional<UpdateRevision>> update;
+    }
+}
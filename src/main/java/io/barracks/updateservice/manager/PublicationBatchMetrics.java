@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size and latency of the bulk writes publishing scheduled updates, exposed through the metrics endpoint.
+ */
+@Component
+public class PublicationBatchMetrics implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "publication.batch.";
+
+    private long batchCount;
+    private long revisionCount;
+    private long conflictCount;
+    private long lastSize;
+    private long lastLatency;
+    private long maxLatency;
+    private long totalLatency;
+
+    public synchronized void record(int size, int conflicts, long latencyNanos) {
+        batchCount++;
+        revisionCount += size;
+        conflictCount += conflicts;
+        lastSize = size;
+        lastLatency = latencyNanos;
+        maxLatency = Math.max(maxLatency, latencyNanos);
+        totalLatency += latencyNanos;
+    }
+
+    @Override
+    public synchronized Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "count", batchCount));
+        metrics.add(new Metric<>(METRIC_PREFIX + "conflicts", conflictCount));
+        metrics.add(new Metric<>(METRIC_PREFIX + "size.last", lastSize));
+        metrics.add(new Metric<>(METRIC_PREFIX + "size.average", batchCount == 0 ? 0.0 : (double) revisionCount / batchCount));
+        metrics.add(new Metric<>(METRIC_PREFIX + "latency.last", toMillis(lastLatency)));
+        metrics.add(new Metric<>(METRIC_PREFIX + "latency.max", toMillis(maxLatency)));
+        metrics.add(new Metric<>(METRIC_PREFIX + "latency.average", batchCount == 0 ? 0.0 : toMillis(totalLatency) / batchCount));
+        return metrics;
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) TimeUnit.NANOSECONDS.toMicros(nanos) / 1000;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.manager;
+
+import io.barracks.updateservice.model.PublishedUpdate;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.repository.PublishedUpdateRepository;
+import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Compares the published update pointers of each user with the latest revisions and repairs the ones that disagree,
+ * e.g. after a revise that failed between the write of the revision and the one of the pointer.
+ */
+@Component
+public class PublishedUpdateReconciler {
+
+    private final UpdateRevisionRepository updateRevisionRepository;
+    private final PublishedUpdateRepository publishedUpdateRepository;
+    private final LatestPublishedUpdateCache latestPublishedUpdateCache;
+
+    @Autowired
+    public PublishedUpdateReconciler(
+            UpdateRevisionRepository updateRevisionRepository,
+            PublishedUpdateRepository publishedUpdateRepository,
+            LatestPublishedUpdateCache latestPublishedUpdateCache
+    ) {
+        this.updateRevisionRepository = updateRevisionRepository;
+        this.publishedUpdateRepository = publishedUpdateRepository;
+        this.latestPublishedUpdateCache = latestPublishedUpdateCache;
+    }
+
+    /**
+     * Repair the pointers of every user. A pointer moved by a concurrent publication is left to it.
+     *
+     * @param userFilter only the users matching the filter are handled
+     * @return the number of pointers repaired
+     */
+    public int reconcilePublishedUpdates(Predicate<String> userFilter) {
+        int count = 0;
+        for (String userId : updateRevisionRepository.getLatestUpdateInfoUserIds()) {
+            if (!userFilter.test(userId)) {
+                continue;
+            }
+            boolean repaired = false;
+            for (PublishedUpdate publishedUpdate : publishedUpdateRepository.findAll(userId)) {
+                final Optional<UpdateRevision> update = updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(
+                        userId, publishedUpdate.getSegmentId()
+                );
+                if (!pointsTo(publishedUpdate, update) && publishedUpdateRepository.repair(publishedUpdate, update)) {
+                    repaired = true;
+                    count++;
+                }
+            }
+            if (repaired) {
+                latestPublishedUpdateCache.invalidate(userId);
+            }
+        }
+        return count;
+    }
+
+    private static boolean pointsTo(PublishedUpdate publishedUpdate, Optional<UpdateRevision> update) {
+        return Objects.equals(publishedUpdate.getUuid(), update.map(UpdateRevision::getUuid).orElse(null))
+                && Objects.equals(publishedUpdate.getCreationDate(), update.map(UpdateRevision::getCreationDate).orElse(null));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import com.google.common.hash.Hashing;
+import io.barracks.updateservice.model.Lease;
+import io.barracks.updateservice.repository.LeaseRepository;
+import io.barracks.updateservice.repository.PublisherMemberRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Splits the publication of scheduled updates between the live nodes of the cluster. Users are hashed into a fixed
+ * number of partitions, and each node owns the partitions whose number modulo the number of live members is its rank
+ * among them. Ownership is backed by one lease per partition, so a partition only changes hands once its previous
+ * owner has released it or stopped renewing it, and a node can check it has not been fenced off before writing.
+ * <p>
+ * Members send a heartbeat every renewal interval and are considered gone after one lease duration without any, at
+ * which point the remaining members share their partitions.
+ * <p>
+ * The leases are renewed under a lock, and published as an immutable snapshot once renewed, so that checking who owns
+ * a user on the request path never waits for a heartbeat.
+ */
+@Component
+public class PublisherPartitionManager implements PublicMetrics {
+
+    static final String LEASE_PREFIX = "publisher-";
+
+    private static final String METRIC_PREFIX = "publication.partitions.";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final LeaseRepository leaseRepository;
+    private final PublisherMemberRepository publisherMemberRepository;
+    private final int partitions;
+    private final long duration;
+    private final long renewalInterval;
+    private final String owner = UUID.randomUUID().toString();
+
+    private final Map<Integer, Lease> leases = new HashMap<>();
+    private volatile Map<Integer, Lease> ownedLeases = Collections.emptyMap();
+    private volatile int memberCount = 0;
+    private long nextRenewal = 0;
+
+    @Autowired
+    public PublisherPartitionManager(
+            LeaseRepository leaseRepository,
+            PublisherMemberRepository publisherMemberRepository,
+            @Value("${io.barracks.updateservice.manager.PublisherPartitionManager.partitions}") int partitions,
+            @Value("${io.barracks.updateservice.manager.PublisherPartitionManager.duration}") long duration,
+            @Value("${io.barracks.updateservice.manager.PublisherPartitionManager.renewalInterval}") long renewalInterval
+    ) {
+        this.leaseRepository = leaseRepository;
+        this.publisherMemberRepository = publisherMemberRepository;
+        this.partitions = partitions;
+        this.duration = duration;
+        this.renewalInterval = renewalInterval;
+    }
+
+    public int getPartition(String userId) {
+        return Math.floorMod(Hashing.murmur3_32().hashString(userId, StandardCharsets.UTF_8).asInt(), partitions);
+    }
+
+    /**
+     * Send a heartbeat and rebalance when the renewal interval has elapsed: renew or acquire the leases of the
+     * partitions this node should own, and release the others.
+     *
+     * @return whether this node owns at least one partition, according to its own clock
+     */
+    public synchronized boolean holdPartitions() {
+        final Date now = new Date();
+        if (now.getTime() >= nextRenewal) {
+            nextRenewal = now.getTime() + renewalInterval;
+            publisherMemberRepository.heartbeat(owner, now);
+            final List<String> members = publisherMemberRepository.getLiveMemberIds(new Date(now.getTime() - duration));
+            final int rank = members.indexOf(owner);
+            final int previousCount = leases.size();
+            for (int partition = 0; partition < partitions; partition++) {
+                if (rank >= 0 && partition % members.size() == rank) {
+                    final Optional<Lease> lease = leaseRepository.acquire(LEASE_PREFIX + partition, owner, now, duration);
+                    if (lease.isPresent()) {
+                        leases.put(partition, lease.get());
+                    } else {
+                        leases.remove(partition);
+                    }
+                } else if (leases.containsKey(partition)) {
+                    leaseRepository.release(leases.remove(partition));
+                }
+            }
+            if (members.size() != memberCount || leases.size() != previousCount) {
+                log.info("Owning " + leases.size() + " of " + partitions + " publisher partitions among " + members.size() + " members");
+            }
+            memberCount = members.size();
+        }
+        leases.values().removeIf(lease -> !now.before(lease.getExpiresAt()));
+        ownedLeases = Collections.unmodifiableMap(new HashMap<>(leases));
+        return !leases.isEmpty();
+    }
+
+    /**
+     * Whether the user belongs to a partition this node owns, according to its own clock, without waiting for a
+     * heartbeat in progress.
+     */
+    public boolean owns(String userId) {
+        final Lease lease = ownedLeases.get(getPartition(userId));
+        return lease != null && new Date().before(lease.getExpiresAt());
+    }
+
+    /**
+     * Check against the database which partitions no other node has taken over, before writing.
+     *
+     * @return whether a user belongs to one of these partitions
+     */
+    public synchronized Predicate<String> checkOwnership() {
+        if (leases.isEmpty()) {
+            return userId -> false;
+        }
+        final Set<Integer> owned = leaseRepository.findHeld(leases.values(), owner, new Date()).stream()
+                .map(lease -> Integer.valueOf(lease.getName().substring(LEASE_PREFIX.length())))
+                .collect(Collectors.toSet());
+        return userId -> owned.contains(getPartition(userId));
+    }
+
+    @PreDestroy
+    public synchronized void leave() {
+        leases.values().forEach(leaseRepository::release);
+        leases.clear();
+        ownedLeases = Collections.emptyMap();
+        publisherMemberRepository.remove(owner);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "count", partitions));
+        metrics.add(new Metric<>(METRIC_PREFIX + "owned", ownedLeases.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "members", memberCount));
+        return metrics;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.manager;
+
+import io.barracks.updateservice.model.UpdateCursor;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the superseded revisions of the updates to the archive, keeping the latest ones in the history.
+ * The latest revision of an update is never archived, so lookups of the latest revision only ever read the history.
+ */
+@Component
+public class RevisionArchiver {
+
+    private final UpdateRevisionRepository updateRevisionRepository;
+    private final int keep;
+    private final long age;
+    private final int batchSize;
+
+    @Autowired
+    public RevisionArchiver(
+            UpdateRevisionRepository updateRevisionRepository,
+            @Value("${io.barracks.updateservice.manager.RevisionArchiver.keep}") int keep,
+            @Value("${io.barracks.updateservice.manager.RevisionArchiver.age}") long age,
+            @Value("${io.barracks.updateservice.manager.RevisionArchiver.batchSize}") int batchSize
+    ) {
+        Assert.isTrue(keep >= 1, "At least the latest revision of each update must be kept in the history");
+        this.updateRevisionRepository = updateRevisionRepository;
+        this.keep = keep;
+        this.age = age;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Archive the revisions superseded by more than the configured number of revisions and older than the configured
+     * age, one user at a time and one batch of updates at a time, so that each batch is read through the user prefix of
+     * the index of the latest revisions.
+     *
+     * @param userFilter only the updates of the users matching the filter are handled
+     * @return the number of revisions moved to the archive
+     */
+    public int archiveSupersededRevisions(Predicate<String> userFilter) {
+        final Date before = new Date(System.currentTimeMillis() - age);
+        int count = 0;
+        for (String userId : updateRevisionRepository.getLatestUpdateInfoUserIds()) {
+            if (userFilter.test(userId)) {
+                count += archiveSupersededRevisions(userId, before);
+            }
+        }
+        return count;
+    }
+
+    private int archiveSupersededRevisions(String userId, Date before) {
+        Optional<UpdateCursor> after = Optional.empty();
+        Slice<UpdateRevision> slice;
+        int count = 0;
+        do {
+            slice = updateRevisionRepository.getAllLatestUpdateInfo(
+                    after, batchSize, Optional.of(userId), Collections.emptyList(), Collections.emptyList()
+            );
+            final List<UpdateRevision> heads = slice.getContent().stream()
+                    .filter(head -> head.getRevisionId() > keep)
+                    .collect(Collectors.toList());
+            if (!heads.isEmpty()) {
+                count += updateRevisionRepository.archiveUpdateRevisions(heads, keep, before);
+            }
+            if (slice.hasContent()) {
+                after = Optional.of(UpdateCursor.of(slice.getContent().get(slice.getNumberOfElements() - 1)));
+            }
+        } while (slice.hasNext());
+        return count;
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.manager;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number of revisions and in place draft edits of updates, and of the attempts retried or given up because the same update was being revised
+ * concurrently, exposed through the metrics endpoint.
+ */
+@Component
+public class RevisionContentionMetrics implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "revision.";
+
+    private final AtomicLong revisionCount = new AtomicLong();
+    private final AtomicLong editCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    public void recordRevision() {
+        revisionCount.incrementAndGet();
+    }
+
+    public void recordEdit() {
+        editCount.incrementAndGet();
+    }
+
+    public void recordRetry() {
+        retryCount.incrementAndGet();
+    }
+
+    public void recordFailure() {
+        failureCount.incrementAndGet();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>(METRIC_PREFIX + "count", revisionCount.get()),
+                new Metric<>(METRIC_PREFIX + "edits", editCount.get()),
+                new Metric<>(METRIC_PREFIX + "contention.retries", retryCount.get()),
+                new Metric<>(METRIC_PREFIX + "contention.failures", failureCount.get())
+        );
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import io.barracks.updateservice.model.UpdateRevision;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Upcoming publications of scheduled updates, ordered by scheduled date, so that they can be fired on time
+ * without scanning the database. Rescheduling an update leaves its previous entry in the heap, where it is skipped
+ * once it reaches the top.
+ */
+@Component
+public class ScheduledPublicationQueue {
+
+    private final PriorityQueue<Entry> entries = new PriorityQueue<>(Comparator.comparingLong(entry -> entry.dueAt));
+    private final Map<Key, Long> dueDates = new HashMap<>();
+
+    public synchronized void schedule(UpdateRevision update) {
+        final Key key = new Key(update.getUserId(), update.getUuid());
+        final long dueAt = update.getScheduledDate().getTime();
+        final Long current = dueDates.put(key, dueAt);
+        if (current == null || current != dueAt) {
+            entries.add(new Entry(dueAt, key, update));
+        }
+    }
+
+    public synchronized List<UpdateRevision> pollDue(Date date) {
+        final List<UpdateRevision> due = new ArrayList<>();
+        while (!entries.isEmpty() && entries.peek().dueAt <= date.getTime()) {
+            final Entry entry = entries.poll();
+            if (dueDates.remove(entry.key, entry.dueAt)) {
+                due.add(entry.update);
+            }
+        }
+        return due;
+    }
+
+    public synchronized int size() {
+        return dueDates.size();
+    }
+
+    @RequiredArgsConstructor
+    @EqualsAndHashCode
+    private static class Key {
+        private final String userId;
+        private final UUID uuid;
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+        private final long dueAt;
+        private final Key key;
+        private final UpdateRevision update;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.manager;
+
+import io.barracks.updateservice.model.UpdateCount;
+import io.barracks.updateservice.repository.UpdateCountRepository;
+import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Recounts the updates of each user from their latest revisions and repairs the counters that drifted, e.g. after a
+ * transition that failed between the write of the revision and the one of the counters.
+ */
+@Component
+public class UpdateCountReconciler {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final UpdateRevisionRepository updateRevisionRepository;
+    private final UpdateCountRepository updateCountRepository;
+
+    @Autowired
+    public UpdateCountReconciler(UpdateRevisionRepository updateRevisionRepository, UpdateCountRepository updateCountRepository) {
+        this.updateRevisionRepository = updateRevisionRepository;
+        this.updateCountRepository = updateCountRepository;
+    }
+
+    /**
+     * Reconcile the counters of every user. The counters are read before the updates are counted, so that a move made
+     * in between changes their version and is not undone by the correction.
+     *
+     * @param userFilter only the users matching the filter are handled
+     * @return the number of users whose counters had drifted
+     */
+    public int reconcileCounts(Predicate<String> userFilter) {
+        int count = 0;
+        for (String userId : updateRevisionRepository.getLatestUpdateInfoUserIds()) {
+            if (!userFilter.test(userId)) {
+                continue;
+            }
+            final List<UpdateCount> counters = updateCountRepository.getCounts(userId);
+            final List<UpdateCount> counts = updateRevisionRepository.countLatestUpdateInfo(userId);
+            if (!toMap(counts).equals(toMap(counters))) {
+                count++;
+            }
+            final int moved = updateCountRepository.reconcile(userId, counters, counts);
+            if (moved > 0) {
+                log.debug(moved + " counters of user " + userId + " moved while being reconciled");
+            }
+        }
+        return count;
+    }
+
+    private static Map<String, Long> toMap(List<UpdateCount> counts) {
+        return counts.stream()
+                .filter(count -> count.getCount() != 0)
+                .collect(Collectors.toMap(UpdateCount::getId, UpdateCount::getCount, Long::sum));
+    }
+}
@@ -24,33 +24,85 @@
 
 package io.barracks.updateservice.manager;
 
+import io.barracks.updateservice.exception.ConcurrentRevisionException;
 import io.barracks.updateservice.exception.InvalidUpdateOperationException;
-import io.barracks.updateservice.exception.NoSuchUpdateException;
+import io.barracks.updateservice.exception.StaleRevisionException;
 import io.barracks.updateservice.exception.UpdateNotFoundException;
+import io.barracks.updateservice.model.BulkInsertResult;
+import io.barracks.updateservice.model.PublishedUpdate;
+import io.barracks.updateservice.model.RevisionTag;
+import io.barracks.updateservice.model.ScheduledTransition;
+import io.barracks.updateservice.model.UpdateCounts;
+import io.barracks.updateservice.model.UpdateCursor;
 import io.barracks.updateservice.model.UpdateRevision;
 import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.repository.PublishedUpdateRepository;
+import io.barracks.updateservice.repository.ScheduledTransitionRepository;
+import io.barracks.updateservice.repository.UpdateCountRepository;
 import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Service
 public class UpdateRevisionManager {
 
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
     private final UpdateRevisionRepository updateRevisionRepository;
+    private final ScheduledTransitionRepository scheduledTransitionRepository;
+    private final PublishedUpdateRepository publishedUpdateRepository;
+    private final UpdateCountRepository updateCountRepository;
     private final UpdateStatusManager updateStatusManager;
+    private final LatestPublishedUpdateCache latestPublishedUpdateCache;
+    private final ScheduledPublicationQueue scheduledPublicationQueue;
+    private final PublisherPartitionManager publisherPartitionManager;
+    private final PublicationBatchMetrics publicationBatchMetrics;
+    private final RevisionContentionMetrics revisionContentionMetrics;
+    private final int maxAttempts;
 
     @Autowired
-    public UpdateRevisionManager(UpdateRevisionRepository updateRevisionRepository, UpdateStatusManager updateStatusManager) {
+    public UpdateRevisionManager(
+            UpdateRevisionRepository updateRevisionRepository,
+            ScheduledTransitionRepository scheduledTransitionRepository,
+            PublishedUpdateRepository publishedUpdateRepository,
+            UpdateCountRepository updateCountRepository,
+            UpdateStatusManager updateStatusManager,
+            LatestPublishedUpdateCache latestPublishedUpdateCache,
+            ScheduledPublicationQueue scheduledPublicationQueue,
+            PublisherPartitionManager publisherPartitionManager,
+            PublicationBatchMetrics publicationBatchMetrics,
+            RevisionContentionMetrics revisionContentionMetrics,
+            @Value("${io.barracks.updateservice.manager.UpdateRevisionManager.maxAttempts}") int maxAttempts
+    ) {
         this.updateRevisionRepository = updateRevisionRepository;
+        this.scheduledTransitionRepository = scheduledTransitionRepository;
+        this.publishedUpdateRepository = publishedUpdateRepository;
+        this.updateCountRepository = updateCountRepository;
         this.updateStatusManager = updateStatusManager;
+        this.latestPublishedUpdateCache = latestPublishedUpdateCache;
+        this.scheduledPublicationQueue = scheduledPublicationQueue;
+        this.publisherPartitionManager = publisherPartitionManager;
+        this.publicationBatchMetrics = publicationBatchMetrics;
+        this.revisionContentionMetrics = revisionContentionMetrics;
+        this.maxAttempts = maxAttempts;
     }
 
     public UpdateRevision createUpdate(UpdateRevision updateRevision) {
@@ -59,64 +111,340 @@ public class UpdateRevisionManager {
                 .status(UpdateStatus.DRAFT)
                 .uuid(null)
                 .build();
-        return updateRevisionRepository.save(newUpdate);
+        final UpdateRevision savedUpdate = updateRevisionRepository.save(newUpdate);
+        updateRevisionRepository.saveLatestUpdateInfo(savedUpdate);
+        updateCountRepository.add(newUpdate);
+        latestPublishedUpdateCache.invalidate(newUpdate.getUserId());
+        return savedUpdate;
     }
 
+    /**
+     * Save a new revision of the update. Its revision id is allocated by an atomic write on the latest revision of the
+     * update, which also checks that the current status can be changed, so that concurrent revisions get distinct ids
+     * without reading the update first. A revise that loses a race against a revision written to the history directly,
+     * e.g. by the publisher, is retried a bounded number of times.
+     * A draft saved as a draft again is edited in place instead, so that auto-saves do not pile up revisions.
+     */
     public UpdateRevision reviseUpdate(UpdateRevision revision) {
-        final Optional<UpdateRevision> currentRevision = updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(revision.getUuid(), revision.getUserId());
-        final UpdateRevision update = currentRevision.orElseThrow(() ->
-                new UpdateNotFoundException("No update with id " + revision.getUuid().toString())
-        );
+        return reviseUpdate(revision, Optional.empty());
+    }
+
+    /**
+     * Save a new revision of the update, provided its latest revision is still the given one, e.g. the one the client
+     * has been editing, and has not been edited in place since. A revise that loses a race is not retried, the client
+     * has to start again from the latest revision.
+     *
+     * @throws StaleRevisionException if the update has been revised or edited since
+     */
+    public UpdateRevision reviseUpdate(UpdateRevision revision, RevisionTag tag) {
+        return reviseUpdate(revision, Optional.of(tag));
+    }
 
-        if (!updateStatusManager.areCompatible(update.getStatus(), revision.getStatus())) {
-            throw new InvalidUpdateOperationException("Cannot change status " + update.getStatus().getName() + " to status " + revision.getStatus().getName());
+    private UpdateRevision reviseUpdate(UpdateRevision revision, Optional<RevisionTag> expectedTag) {
+        if (revision.getStatus() == UpdateStatus.SCHEDULED && !updateStatusManager.canBeScheduled(revision.getTargetStatus())) {
+            throw new InvalidUpdateOperationException("Cannot schedule status " + revision.getTargetStatus().getName());
         }
+        final List<UpdateStatus> statuses = updateStatusManager.getStatusesCompatibleWith(revision.getStatus());
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (revision.getStatus() == UpdateStatus.DRAFT) {
+                final Optional<UpdateRevision> draft = updateRevisionRepository.editLatestUpdateInfo(revision, expectedTag);
+                if (draft.isPresent()) {
+                    return editDraft(revision, draft.get());
+                }
+            }
+            final Optional<UpdateRevision> previousRevision = expectedTag.isPresent()
+                    ? updateRevisionRepository.reviseLatestUpdateInfo(revision, statuses, expectedTag.get())
+                    : updateRevisionRepository.reviseLatestUpdateInfo(revision, statuses);
+            if (previousRevision.isPresent()) {
+                final UpdateRevision update = previousRevision.get();
+                final UpdateRevision newRevision = revision.toBuilder()
+                        .id(null)
+                        .revisionId(update.getRevisionId() + 1)
+                        .creationDate(null)
+                        .editVersion(null)
+                        .build();
+                try {
+                    final UpdateRevision savedRevision = saveRevision(update, newRevision);
+                    updateRevisionRepository.completeLatestUpdateInfo(savedRevision);
+                    movePublishedUpdate(update, newRevision, savedRevision);
+                    updateCountRepository.move(update, newRevision);
+                    onRevised(update, newRevision);
+                    return savedRevision;
+                } catch (DuplicateKeyException e) {
+                    log.debug("Revision " + newRevision.getRevisionId() + " of update " + revision.getUuid() + " was written concurrently");
+                }
+            }
+
+            // Either the status cannot be changed, or the revision is stale, or the latest revision stored is out of date
+            final UpdateRevision update = updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(revision.getUuid(), revision.getUserId())
+                    .orElseThrow(() -> new UpdateNotFoundException("No update with id " + revision.getUuid().toString()));
+            if (expectedTag.isPresent() && !expectedTag.get().equals(RevisionTag.of(update))) {
+                updateRevisionRepository.replaceLatestUpdateInfo(update);
+                throw new StaleRevisionException("Update " + revision.getUuid() + " is at revision " + RevisionTag.of(update) + ", not " + expectedTag.get());
+            }
+            if (!updateStatusManager.areCompatible(update.getStatus(), revision.getStatus())) {
+                throw new InvalidUpdateOperationException("Cannot change status " + update.getStatus().getName() + " to status " + revision.getStatus().getName());
+            }
+            updateRevisionRepository.replaceLatestUpdateInfo(update);
+            revisionContentionMetrics.recordRetry();
+        }
+        revisionContentionMetrics.recordFailure();
+        throw new ConcurrentRevisionException("Update " + revision.getUuid() + " is being revised concurrently");
+    }
 
-        return updateRevisionRepository.save(
-                revision.toBuilder()
+    /**
+     * Save in the history a revision whose id has just been allocated on the latest revision of the update. If the save
+     * fails for another reason than the id being taken by another writer, the latest revision is put back to the most
+     * recent revision of the history, so that nothing builds on a revision that does not exist.
+     */
+    private UpdateRevision saveRevision(UpdateRevision previousRevision, UpdateRevision newRevision) {
+        try {
+            return updateRevisionRepository.save(newRevision);
+        } catch (DuplicateKeyException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            try {
+                updateRevisionRepository.restoreLatestUpdateInfo(
+                        updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(newRevision.getUuid(), newRevision.getUserId())
+                                .orElse(previousRevision),
+                        newRevision.getRevisionId()
+                );
+            } catch (RuntimeException restoreException) {
+                log.warn("Could not restore the latest revision of update " + newRevision.getUuid() + " after a failed revise", restoreException);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Copy the edit of a draft, already saved in its latest revision with the next edit version, to the same revision of
+     * the history.
+     */
+    private UpdateRevision editDraft(UpdateRevision revision, UpdateRevision draft) {
+        final UpdateRevision editedDraft = revision.toBuilder()
                 .id(null)
-                .revisionId(update.getRevisionId() + 1)
-                .creationDate(null)
-                .build()
-        );
+                .revisionId(draft.getRevisionId())
+                .creationDate(draft.getCreationDate())
+                .editVersion(draft.getEditVersion() == null ? 1 : draft.getEditVersion() + 1)
+                .build();
+        revisionContentionMetrics.recordEdit();
+        updateCountRepository.move(draft, revision);
+        return updateRevisionRepository.editUpdateRevision(editedDraft).orElse(editedDraft);
     }
 
+    /**
+     * Must be called once every write of the revision is done, so that a lookup cannot cache what it read before.
+     */
+    private void onRevised(UpdateRevision previousRevision, UpdateRevision newRevision) {
+        revisionContentionMetrics.recordRevision();
+        latestPublishedUpdateCache.invalidate(newRevision.getUserId());
+        if (newRevision.getStatus() == UpdateStatus.SCHEDULED && newRevision.getScheduledDate() != null) {
+            scheduledTransitionRepository.save(ScheduledTransition.of(newRevision));
+            if (publisherPartitionManager.owns(newRevision.getUserId())) {
+                scheduledPublicationQueue.schedule(newRevision);
+            }
+        } else if (previousRevision.getStatus() == UpdateStatus.SCHEDULED) {
+            scheduledTransitionRepository.removeSupersededBy(Collections.singletonList(newRevision));
+        }
+    }
+
+    /**
+     * Point the segments of the update to its new revision if it is published, and the segment it was published in to
+     * the previous update published there if it left it.
+     */
+    private void movePublishedUpdate(UpdateRevision previousRevision, UpdateRevision newRevision, UpdateRevision savedRevision) {
+        if (newRevision.getStatus() == UpdateStatus.PUBLISHED) {
+            publishedUpdateRepository.publish(savedRevision);
+        }
+        if (previousRevision.getStatus() == UpdateStatus.PUBLISHED
+                && (newRevision.getStatus() != UpdateStatus.PUBLISHED || !Objects.equals(previousRevision.getSegmentId(), newRevision.getSegmentId()))) {
+            publishedUpdateRepository.unpublish(
+                    previousRevision,
+                    getLatestPublishedUpdateInfo(previousRevision.getUserId(), Optional.ofNullable(previousRevision.getSegmentId()))
+            );
+        }
+    }
+
+    /**
+     * A page of the latest revisions of the updates of the user. Its total is counted along with the page rather than
+     * summed from the counters, which can be off until their next reconciliation.
+     */
     public Page<UpdateRevision> getAllUpdates(Pageable pageable, String userId, List<String> statuses, List<String> segmentIds) {
         return updateRevisionRepository.getAllLatestUpdateInfo(pageable, Optional.of(userId), statuses, segmentIds);
     }
 
+    public UpdateCounts getUpdateCounts(String userId) {
+        return UpdateCounts.of(updateCountRepository.getCounts(userId));
+    }
+
+    public Slice<UpdateRevision> getAllUpdates(Optional<UpdateCursor> after, int size, String userId, List<String> statuses, List<String> segmentIds) {
+        return updateRevisionRepository.getAllLatestUpdateInfo(after, size, Optional.of(userId), statuses, segmentIds);
+    }
+
     public UpdateRevision getUpdateByUuid(UUID uuid, String userId) {
         final Optional<UpdateRevision> result = updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(uuid, userId);
         return result.orElseThrow(() -> new UpdateNotFoundException("No update with id " + uuid.toString()));
     }
 
-    public UpdateRevision getLatestPublishedUpdateForSegment(String userId, String segmentId) {
-        final Optional<UpdateRevision> latestUpdate = updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId);
-        return latestUpdate.orElseThrow(() -> new NoSuchUpdateException("No published update"));
+    public Page<UpdateRevision> getUpdateHistory(UUID uuid, String userId, Pageable pageable) {
+        final Page<UpdateRevision> result = updateRevisionRepository.getUpdateHistory(userId, uuid, pageable);
+        if (result.getTotalElements() == 0) {
+            throw new UpdateNotFoundException("No update with id " + uuid.toString());
+        }
+        return result;
     }
 
-    public UpdateRevision getLatestPublishedUpdateForOtherSegment(String userId) {
-        final Optional<UpdateRevision> latestUpdate = updateRevisionRepository.getLatestPublishedUpdateInfoWithoutSegmentId(userId);
-        return latestUpdate.orElseThrow(() -> new NoSuchUpdateException("No published update"));
+    public Optional<UpdateRevision> getLatestPublishedUpdateForSegment(String userId, String segmentId) {
+        return latestPublishedUpdateCache.get(
+                userId,
+                Optional.of(segmentId),
+                () -> getPublishedUpdate(userId, Optional.of(segmentId))
+        );
     }
 
-    public void publishDueScheduledUpdates() {
-        final Date now = new Date();
-        int pageNumber = 0;
-        Page<UpdateRevision> page;
+    public Optional<UpdateRevision> getLatestPublishedUpdateForOtherSegment(String userId) {
+        return latestPublishedUpdateCache.get(
+                userId,
+                Optional.empty(),
+                () -> getPublishedUpdate(userId, Optional.empty())
+        );
+    }
+
+    /**
+     * Read the update published in the segment from its pointer. A segment without pointer yet gets one from the
+     * latest revisions of the user, if an update is published in it. Otherwise the missing update is only cached in
+     * memory, so that any segment id asked for does not add a pointer.
+     */
+    private Optional<UpdateRevision> getPublishedUpdate(String userId, Optional<String> segmentId) {
+        final Optional<PublishedUpdate> publishedUpdate = publishedUpdateRepository.findOne(userId, segmentId.orElse(null));
+        if (publishedUpdate.isPresent()) {
+            return Optional.ofNullable(publishedUpdate.get().getRevision());
+        }
+        final Optional<UpdateRevision> update = getLatestPublishedUpdateInfo(userId, segmentId);
+        update.ifPresent(revision -> publishedUpdateRepository.save(userId, segmentId.orElse(null), revision));
+        return update;
+    }
+
+    private Optional<UpdateRevision> getLatestPublishedUpdateInfo(String userId, Optional<String> segmentId) {
+        return segmentId.isPresent()
+                ? updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId.get())
+                : updateRevisionRepository.getLatestPublishedUpdateInfoWithoutSegmentId(userId);
+    }
+
+    /**
+     * Queue the transition of every update of the users accepted by the filter and scheduled up to the given date,
+     * so that it fires on time.
+     */
+    public void scheduleUpcomingPublications(Date until, Predicate<String> userFilter) {
+        scheduleUpcomingPublications(Optional.empty(), until, userFilter);
+    }
+
+    /**
+     * Queue the transition of every update of the users accepted by the filter and scheduled after the first date and
+     * up to the second one, e.g. the ones scheduled on another node since the last call.
+     */
+    public void scheduleUpcomingPublications(Date from, Date until, Predicate<String> userFilter) {
+        scheduleUpcomingPublications(Optional.of(from), until, userFilter);
+    }
+
+    private void scheduleUpcomingPublications(Optional<Date> from, Date until, Predicate<String> userFilter) {
+        Optional<ScheduledTransition> last = Optional.empty();
+        Slice<ScheduledTransition> slice;
         do {
-            final Pageable pageable = new PageRequest(pageNumber, 100);
-            page = updateRevisionRepository.getAllLatestUpdateInfo(pageable, UpdateStatus.SCHEDULED);
-            page.getContent().stream()
-                    .filter(update -> now.after(update.getScheduledDate()))
-                    .forEach(update -> this.reviseUpdate(
-                            update.toBuilder()
-                                    .status(UpdateStatus.PUBLISHED)
-                                    .scheduledDate(null)
-                                    .build()
-                    ));
-            pageNumber++;
-        } while (page.hasNext());
+            slice = from.isPresent()
+                    ? scheduledTransitionRepository.getDueTransitions(from.get(), until, last, 100)
+                    : scheduledTransitionRepository.getDueTransitions(until, last, 100);
+            getScheduledUpdates(
+                    slice.getContent().stream()
+                            .filter(transition -> userFilter.test(transition.getUserId()))
+                            .collect(Collectors.toList())
+            ).forEach(scheduledPublicationQueue::schedule);
+            if (slice.hasContent()) {
+                last = Optional.of(slice.getContent().get(slice.getNumberOfElements() - 1));
+            }
+        } while (slice.hasNext());
+    }
+
+    /**
+     * Read the scheduled revisions of the given transitions, with one query per user, in the order of the transitions.
+     * Transitions whose update has been revised since they were scheduled are dropped.
+     */
+    public List<UpdateRevision> getScheduledUpdates(List<ScheduledTransition> transitions) {
+        final Map<String, List<ScheduledTransition>> transitionsByUser = transitions.stream()
+                .collect(Collectors.groupingBy(ScheduledTransition::getUserId, LinkedHashMap::new, Collectors.toList()));
+        final Map<String, UpdateRevision> updates = new LinkedHashMap<>();
+        transitionsByUser.forEach((userId, userTransitions) -> updateRevisionRepository.getLatestUpdateInfo(
+                userId,
+                userTransitions.stream().map(ScheduledTransition::getUuid).collect(Collectors.toList())
+        ).forEach(update -> updates.put(ScheduledTransition.getId(update.getUserId(), update.getUuid()), update)));
+
+        final List<UpdateRevision> scheduledUpdates = new ArrayList<>(transitions.size());
+        final List<UpdateRevision> revisedUpdates = new ArrayList<>();
+        for (ScheduledTransition transition : transitions) {
+            final UpdateRevision update = updates.get(transition.getId());
+            if (update == null) {
+                continue;
+            }
+            if (update.getRevisionId() == transition.getRevisionId() && update.getStatus() == UpdateStatus.SCHEDULED) {
+                scheduledUpdates.add(update);
+            } else if (update.getRevisionId() > transition.getRevisionId()) {
+                revisedUpdates.add(update);
+            }
+        }
+        scheduledTransitionRepository.removeSupersededBy(revisedUpdates);
+        return scheduledUpdates;
+    }
+
+    /**
+     * Make the due scheduled updates take their target status with a single bulk insert of their next revisions,
+     * without reading them again, then remove their pending transitions.
+     * An update revised since it was read already has a revision with the same number, so its transition is refused
+     * by the unique index and reported as a conflict, without failing the rest of the batch.
+     */
+    public BulkInsertResult publishScheduledUpdates(List<UpdateRevision> scheduledUpdates) {
+        final Date now = new Date();
+        final List<UpdateRevision> revisions = scheduledUpdates.stream()
+                .filter(update -> update.getStatus() == UpdateStatus.SCHEDULED)
+                .filter(update -> update.getScheduledDate() != null && !now.before(update.getScheduledDate()))
+                .map(update -> update.toBuilder()
+                        .id(null)
+                        .revisionId(update.getRevisionId() + 1)
+                        .status(update.getTargetStatus())
+                        .scheduledDate(null)
+                        .scheduledStatus(null)
+                        .creationDate(null)
+                        .build()
+                )
+                .collect(Collectors.toList());
+        if (revisions.isEmpty()) {
+            return BulkInsertResult.empty();
+        }
+
+        final long start = System.nanoTime();
+        final BulkInsertResult result = updateRevisionRepository.insertUpdateRevisions(revisions);
+        updateRevisionRepository.saveLatestUpdateInfo(result.getInserted());
+        scheduledTransitionRepository.removeSupersededBy(result.getInserted());
+        result.getInserted().stream()
+                .filter(revision -> revision.getStatus() == UpdateStatus.PUBLISHED)
+                .forEach(publishedUpdateRepository::publish);
+        result.getInserted().forEach(revision -> updateCountRepository.move(
+                revision.toBuilder().status(UpdateStatus.SCHEDULED).build(),
+                revision
+        ));
+        publicationBatchMetrics.record(revisions.size(), result.getConflicts().size(), System.nanoTime() - start);
+
+        result.getInserted().stream()
+                .map(UpdateRevision::getUserId)
+                .distinct()
+                .forEach(latestPublishedUpdateCache::invalidate);
+        for (BulkInsertResult.Conflict conflict : result.getConflicts()) {
+            if (conflict.isDuplicateKey()) {
+                log.info("Update " + conflict.getRevision().getUuid() + " was revised since it was scheduled, not publishing it");
+            } else {
+                log.warn("Could not publish scheduled update " + conflict.getRevision().getUuid() + ": " + conflict.getMessage());
+            }
+        }
+        return result;
     }
 
 }
@@ -52,6 +52,22 @@ public class UpdateStatusManager {
         return getCompatibleStatuses(from).contains(to);
     }
 
+    /**
+     * Return all the status from which an update can be set to the given status
+     */
+    List<UpdateStatus> getStatusesCompatibleWith(UpdateStatus status) {
+        return Arrays.stream(UpdateStatus.values())
+                .filter(from -> areCompatible(from, status))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Whether a scheduled update can be set to take the given status at its scheduled date
+     */
+    boolean canBeScheduled(UpdateStatus status) {
+        return status != UpdateStatus.DRAFT && status != UpdateStatus.SCHEDULED && areCompatible(UpdateStatus.SCHEDULED, status);
+    }
+
     /**
      * Return all the status compatible with the given status
      * Ex: if an updateInfo is a DRAFT, it cannot be ARCHIVED, it must be PUBLISHED before
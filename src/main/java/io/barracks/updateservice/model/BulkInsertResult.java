@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of an unordered bulk insert of revisions: the revisions written, and the ones the database refused.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class BulkInsertResult {
+
+    private static final int DUPLICATE_KEY_CODE = 11000;
+
+    private final List<UpdateRevision> inserted;
+    private final List<Conflict> conflicts;
+
+    public BulkInsertResult(List<UpdateRevision> inserted, List<Conflict> conflicts) {
+        this.inserted = new ArrayList<>(inserted);
+        this.conflicts = new ArrayList<>(conflicts);
+    }
+
+    public static BulkInsertResult empty() {
+        return new BulkInsertResult(Collections.emptyList(), Collections.emptyList());
+    }
+
+    public List<UpdateRevision> getInserted() {
+        return new ArrayList<>(inserted);
+    }
+
+    public List<Conflict> getConflicts() {
+        return new ArrayList<>(conflicts);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    @ToString
+    @EqualsAndHashCode
+    public static class Conflict {
+        private final UpdateRevision revision;
+        private final int code;
+        private final String message;
+
+        /**
+         * Whether a revision with the same number was saved first, i.e. the update was revised concurrently.
+         */
+        public boolean isDuplicateKey() {
+            return code == DUPLICATE_KEY_CODE;
+        }
+    }
+}
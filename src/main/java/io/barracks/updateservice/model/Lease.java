@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.model;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceConstructor;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Exclusive right of one node to run a job until the lease expires. The token is incremented every time the lease
+ * changes hands, so that a former holder can tell it has been fenced off.
+ */
+@Builder(toBuilder = true)
+@Getter
+@Document(collection = "leases")
+@ToString
+@EqualsAndHashCode
+public class Lease {
+
+    @Id
+    private final String name;
+    private final String owner;
+    private final long token;
+    private final Date expiresAt;
+
+    @PersistenceConstructor
+    public Lease(String name, String owner, long token, Date expiresAt) {
+        this.name = name;
+        this.owner = owner;
+        this.token = token;
+        this.expiresAt = (expiresAt == null ? null : new Date(expiresAt.getTime()));
+    }
+
+    public Date getExpiresAt() {
+        if (this.expiresAt == null) {
+            return null;
+        }
+        return new Date(expiresAt.getTime());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.model;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceConstructor;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Pointer to the update currently published in a segment of a user, with a copy of its revision, so that devices get
+ * it with a single read by id. A pointer without revision records that nothing is published in the segment.
+ */
+@Builder(toBuilder = true)
+@Getter
+@Document(collection = "published_updates")
+@ToString
+@EqualsAndHashCode
+public class PublishedUpdate {
+
+    @Id
+    private final String id;
+    private final String userId;
+    private final String segmentId;
+    private final UUID uuid;
+    private final Date creationDate;
+    private final UpdateRevision revision;
+
+    @PersistenceConstructor
+    public PublishedUpdate(String id, String userId, String segmentId, UUID uuid, Date creationDate, UpdateRevision revision) {
+        this.id = id == null ? getId(userId, segmentId) : id;
+        this.userId = userId;
+        this.segmentId = segmentId;
+        this.uuid = uuid;
+        this.creationDate = (creationDate == null ? null : new Date(creationDate.getTime()));
+        this.revision = revision;
+    }
+
+    public static String getId(String userId, String segmentId) {
+        return userId + "/" + segmentId;
+    }
+
+    public Date getCreationDate() {
+        if (this.creationDate == null) {
+            return null;
+        }
+        return new Date(creationDate.getTime());
+    }
+}
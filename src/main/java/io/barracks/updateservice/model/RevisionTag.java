@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Version of the latest revision of an update as seen by a client: its revision id, and the number of times it has
+ * been edited in place since, as a draft. It is what the entity tag of an update carries.
+ */
+@Getter
+@EqualsAndHashCode
+public class RevisionTag {
+
+    private static final String SEPARATOR = ".";
+
+    private final int revisionId;
+    private final int editVersion;
+
+    public RevisionTag(int revisionId, int editVersion) {
+        this.revisionId = revisionId;
+        this.editVersion = editVersion;
+    }
+
+    public static RevisionTag of(UpdateRevision revision) {
+        return new RevisionTag(revision.getRevisionId(), revision.getEditVersion() == null ? 0 : revision.getEditVersion());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is not a revision tag
+     */
+    public static RevisionTag fromString(String value) {
+        final int separator = value.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return new RevisionTag(Integer.parseInt(value), 0);
+        }
+        return new RevisionTag(Integer.parseInt(value.substring(0, separator)), Integer.parseInt(value.substring(separator + 1)));
+    }
+
+    /**
+     * The revision id alone until the revision is edited, so that tags handed out before edits were versioned still
+     * match.
+     */
+    @Override
+    public String toString() {
+        return editVersion == 0 ? Integer.toString(revisionId) : revisionId + SEPARATOR + editVersion;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.model;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceConstructor;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Pending change of status of a scheduled update, kept until the change is made or the update is revised.
+ * There is at most one per update, identified by its user and uuid.
+ */
+@Builder(toBuilder = true)
+@Getter
+@Document(collection = "scheduled_transitions")
+@ToString
+@EqualsAndHashCode
+public class ScheduledTransition {
+
+    @Id
+    private final String id;
+    private final UUID uuid;
+    private final String userId;
+    private final int revisionId;
+    private final UpdateStatus targetStatus;
+    private final Date dueAt;
+
+    @PersistenceConstructor
+    public ScheduledTransition(String id, UUID uuid, String userId, int revisionId, UpdateStatus targetStatus, Date dueAt) {
+        this.id = id == null ? getId(userId, uuid) : id;
+        this.uuid = uuid;
+        this.userId = userId;
+        this.revisionId = revisionId;
+        this.targetStatus = targetStatus;
+        this.dueAt = (dueAt == null ? null : new Date(dueAt.getTime()));
+    }
+
+    public static ScheduledTransition of(UpdateRevision revision) {
+        return ScheduledTransition.builder()
+                .uuid(revision.getUuid())
+                .userId(revision.getUserId())
+                .revisionId(revision.getRevisionId())
+                .targetStatus(revision.getTargetStatus())
+                .dueAt(revision.getScheduledDate())
+                .build();
+    }
+
+    public static String getId(String userId, UUID uuid) {
+        return userId + "/" + uuid;
+    }
+
+    public Date getDueAt() {
+        if (this.dueAt == null) {
+            return null;
+        }
+        return new Date(dueAt.getTime());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.model;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.annotation.PersistenceConstructor;
+
+import java.util.Date;
+
+/**
+ * Scheduled updates of a user that are due but not published yet.
+ */
+@Builder(toBuilder = true)
+@Getter
+@ToString
+@EqualsAndHashCode
+public class TenantBacklog {
+
+    private final String userId;
+    private final long count;
+    private final Date oldestDueDate;
+
+    @PersistenceConstructor
+    public TenantBacklog(String userId, long count, Date oldestDueDate) {
+        this.userId = userId;
+        this.count = count;
+        this.oldestDueDate = (oldestDueDate == null ? null : new Date(oldestDueDate.getTime()));
+    }
+
+    public Date getOldestDueDate() {
+        if (this.oldestDueDate == null) {
+            return null;
+        }
+        return new Date(oldestDueDate.getTime());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.model;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceConstructor;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Number of updates of a user whose latest revision has a status in a segment, incremented as the updates change
+ * status or segment. Its version is incremented along with it, so that a reconciliation only corrects a counter that
+ * did not move since it was read. The date of the last reconciliation that checked it is recorded.
+ */
+@Builder(toBuilder = true)
+@Getter
+@Document(collection = "update_counts")
+@ToString
+@EqualsAndHashCode
+public class UpdateCount {
+
+    @Id
+    private final String id;
+    private final String userId;
+    private final String segmentId;
+    private final UpdateStatus status;
+    private final long count;
+    private final long version;
+    private final Date reconciledAt;
+
+    @PersistenceConstructor
+    public UpdateCount(String id, String userId, String segmentId, UpdateStatus status, long count, Long version, Date reconciledAt) {
+        this.id = id == null ? getId(userId, segmentId, status) : id;
+        this.userId = userId;
+        this.segmentId = segmentId;
+        this.status = status;
+        this.count = count;
+        this.version = version == null ? 0 : version;
+        this.reconciledAt = (reconciledAt == null ? null : new Date(reconciledAt.getTime()));
+    }
+
+    public static String getId(String userId, String segmentId, UpdateStatus status) {
+        return userId + "/" + segmentId + "/" + status.name();
+    }
+
+    public Date getReconciledAt() {
+        if (this.reconciledAt == null) {
+            return null;
+        }
+        return new Date(reconciledAt.getTime());
+    }
+}
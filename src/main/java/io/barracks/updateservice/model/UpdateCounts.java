@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Number of updates of a user in each status, overall and per segment, keyed by status name.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class UpdateCounts {
+
+    @JsonProperty("total")
+    private final Map<String, Long> total;
+    @JsonProperty("segments")
+    private final Map<String, Map<String, Long>> segments;
+
+    private UpdateCounts(Map<String, Long> total, Map<String, Map<String, Long>> segments) {
+        this.total = Collections.unmodifiableMap(total);
+        this.segments = Collections.unmodifiableMap(segments);
+    }
+
+    public static UpdateCounts of(List<UpdateCount> counts) {
+        final Map<String, Long> total = getEmptyCounts();
+        final Map<String, Map<String, Long>> segments = new TreeMap<>();
+        for (UpdateCount count : counts) {
+            final String status = count.getStatus().getName();
+            total.merge(status, count.getCount(), Long::sum);
+            segments.computeIfAbsent(count.getSegmentId(), segmentId -> getEmptyCounts())
+                    .merge(status, count.getCount(), Long::sum);
+        }
+        return new UpdateCounts(total, segments);
+    }
+
+    private static Map<String, Long> getEmptyCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        Arrays.stream(UpdateStatus.values()).forEach(status -> counts.put(status.getName(), 0L));
+        return counts;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.model;
+
+import io.barracks.updateservice.exception.InvalidCursorException;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Position of an update in a listing ordered by creation date then uuid, both descending.
+ * Clients only see it as an opaque continuation token.
+ */
+@ToString
+@EqualsAndHashCode
+public class UpdateCursor {
+
+    private static final String SEPARATOR = ":";
+
+    private final Date creationDate;
+    private final UUID uuid;
+
+    public UpdateCursor(Date creationDate, UUID uuid) {
+        this.creationDate = new Date(creationDate.getTime());
+        this.uuid = uuid;
+    }
+
+    public static UpdateCursor of(UpdateRevision revision) {
+        return new UpdateCursor(revision.getCreationDate(), revision.getUuid());
+    }
+
+    public static UpdateCursor fromToken(String token) {
+        try {
+            final String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            final String[] parts = decoded.split(SEPARATOR, 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(decoded);
+            }
+            return new UpdateCursor(new Date(Long.parseLong(parts[0])), UUID.fromString(parts[1]));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor " + token);
+        }
+    }
+
+    public String toToken() {
+        final String decoded = creationDate.getTime() + SEPARATOR + uuid.toString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Date getCreationDate() {
+        return new Date(creationDate.getTime());
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+}
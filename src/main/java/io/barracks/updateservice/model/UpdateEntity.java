@@ -35,6 +35,7 @@ import org.mongodb.morphia.annotations.Embedded;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -56,6 +57,10 @@ public class UpdateEntity {
     private final String description;
     @NotBlank
     private final String packageId;
+    /**
+     * The "other" segment id designates the updates without a segment, it cannot be the id of a segment.
+     */
+    @Pattern(regexp = "(?!other$).*", message = "The other segment id is reserved for updates without a segment")
     private final String segmentId;
     @NotNull
     private final Map<String, Object> additionalProperties;
@@ -63,6 +68,8 @@ public class UpdateEntity {
     private final UpdateStatus status;
     @JsonFormat(pattern = DATE_FORMAT)
     private final Date scheduledDate;
+    @Embedded
+    private final UpdateStatus scheduledStatus;
 
     private UpdateEntity(
             String userId,
@@ -72,7 +79,8 @@ public class UpdateEntity {
             @Nullable String segmentId,
             Map<String, Object> additionalProperties,
             UpdateStatus status,
-            Date scheduledDate
+            Date scheduledDate,
+            @Nullable UpdateStatus scheduledStatus
     ) {
         this.userId = userId;
         this.name = name;
@@ -82,6 +90,7 @@ public class UpdateEntity {
         this.additionalProperties = additionalProperties == null ? new HashMap<>() : new HashMap<>(additionalProperties);
         this.status = status;
         this.scheduledDate = (scheduledDate == null || status != UpdateStatus.SCHEDULED ? null : new Date(scheduledDate.getTime()));
+        this.scheduledStatus = (status != UpdateStatus.SCHEDULED ? null : scheduledStatus);
     }
 
     @JsonCreator
@@ -93,9 +102,10 @@ public class UpdateEntity {
             @JsonProperty("segmentId") @Nullable String segmentId,
             @JsonProperty("additionalProperties") Map<String, Object> additionalProperties,
             @JsonProperty("status") UpdateStatus status,
-            @JsonProperty("scheduledDate") Date scheduledDate
+            @JsonProperty("scheduledDate") Date scheduledDate,
+            @JsonProperty("scheduledStatus") @Nullable UpdateStatus scheduledStatus
     ) {
-        return new UpdateEntity(userId, name, description, packageId, segmentId, additionalProperties, status, scheduledDate);
+        return new UpdateEntity(userId, name, description, packageId, segmentId, additionalProperties, status, scheduledDate, scheduledStatus);
     }
 
 
@@ -131,6 +141,7 @@ public class UpdateEntity {
                 .additionalProperties(this.getAdditionalProperties())
                 .status(this.getStatus())
                 .scheduledDate(this.getScheduledDate())
+                .scheduledStatus(this.getScheduledStatus())
                 .build();
     }
 }
@@ -34,7 +34,6 @@ import org.mongodb.morphia.annotations.Embedded;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.PersistenceConstructor;
-import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.annotation.Nullable;
@@ -47,7 +46,6 @@ import java.util.UUID;
 @Builder(toBuilder = true)
 @Getter
 @Document(collection = "updates")
-@CompoundIndex(name = "userId_revisionId_uuid_idx", def = "{'userId' : 1, 'revisionId' : 1, 'uuid' : 1}", unique = true)
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @ToString
@@ -82,11 +80,19 @@ public class UpdateRevision {
     private final UpdateStatus status;
     @JsonFormat(pattern = DATE_FORMAT)
     private final Date scheduledDate;
+    @Embedded
+    private final UpdateStatus scheduledStatus;
+    /**
+     * Number of times the revision has been edited in place as a draft, missing until it is first edited.
+     */
+    @JsonIgnore
+    private final Integer editVersion;
 
     @PersistenceConstructor
     public UpdateRevision(
             String id, UUID uuid, String userId, String name, String description, String packageId, @Nullable String segmentId,
-            Integer revisionId, Map<String, Object> additionalProperties, Date creationDate, UpdateStatus status, Date scheduledDate
+            Integer revisionId, Map<String, Object> additionalProperties, Date creationDate, UpdateStatus status, Date scheduledDate,
+            @Nullable UpdateStatus scheduledStatus, @Nullable Integer editVersion
     ) {
         this.id = id;
         this.uuid = uuid == null ? UUID.randomUUID() : uuid;
@@ -100,6 +106,8 @@ public class UpdateRevision {
         this.creationDate = (creationDate == null ? null : new Date(creationDate.getTime()));
         this.status = status;
         this.scheduledDate = (scheduledDate == null ? null : new Date(scheduledDate.getTime()));
+        this.scheduledStatus = scheduledStatus;
+        this.editVersion = editVersion;
     }
 
     @JsonProperty("revisionId")
@@ -125,6 +133,14 @@ public class UpdateRevision {
         return new Date(scheduledDate.getTime());
     }
 
+    /**
+     * The status a scheduled update takes once its scheduled date is reached, published unless stated otherwise.
+     */
+    @JsonIgnore
+    public UpdateStatus getTargetStatus() {
+        return scheduledStatus == null ? UpdateStatus.PUBLISHED : scheduledStatus;
+    }
+
     public Map<String, Object> getAdditionalProperties() {
         return new HashMap<>(additionalProperties);
     }
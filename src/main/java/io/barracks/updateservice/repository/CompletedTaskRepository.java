@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Records the one-shot tasks which have completed on the database, so that they are not run again on the next start.
+ */
+@Repository
+public class CompletedTaskRepository {
+
+    static final String COMPLETED_TASK_COLLECTION = "completed_tasks";
+
+    private static final String NAME_KEY = "_id";
+    private static final String COMPLETED_AT_KEY = "completedAt";
+
+    private final MongoOperations operations;
+
+    @Autowired
+    public CompletedTaskRepository(MongoOperations operations) {
+        this.operations = operations;
+    }
+
+    public boolean isCompleted(String name) {
+        return operations.exists(query(where(NAME_KEY).is(name)), COMPLETED_TASK_COLLECTION);
+    }
+
+    /**
+     * Record that the task has completed, keeping the date it first did if it is recorded already.
+     */
+    public void complete(String name, Date completedAt) {
+        operations.upsert(
+                query(where(NAME_KEY).is(name)),
+                new Update().setOnInsert(COMPLETED_AT_KEY, completedAt),
+                COMPLETED_TASK_COLLECTION
+        );
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.repository;
+
+import io.barracks.updateservice.model.Lease;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@Repository
+public class LeaseRepository {
+
+    private static final String NAME_KEY = "_id";
+    private static final String OWNER_KEY = "owner";
+    private static final String TOKEN_KEY = "token";
+    private static final String EXPIRES_AT_KEY = "expiresAt";
+
+    private final MongoOperations operations;
+
+    @Autowired
+    public LeaseRepository(MongoOperations operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * Renew the lease if the owner holds it, otherwise take it over if it is missing or expired.
+     *
+     * @return the lease held by the owner, or nothing if another node holds it
+     */
+    public Optional<Lease> acquire(String name, String owner, Date now, long duration) {
+        final Date expiresAt = new Date(now.getTime() + duration);
+        final Lease renewed = operations.findAndModify(
+                query(where(NAME_KEY).is(name).and(OWNER_KEY).is(owner)),
+                new Update().set(EXPIRES_AT_KEY, expiresAt),
+                options().returnNew(true),
+                Lease.class
+        );
+        if (renewed != null) {
+            return Optional.of(renewed);
+        }
+
+        try {
+            return Optional.ofNullable(operations.findAndModify(
+                    query(where(NAME_KEY).is(name).and(EXPIRES_AT_KEY).lt(now)),
+                    new Update().set(OWNER_KEY, owner).set(EXPIRES_AT_KEY, expiresAt).inc(TOKEN_KEY, 1),
+                    options().returnNew(true).upsert(true),
+                    Lease.class
+            ));
+        } catch (DuplicateKeyException e) {
+            // The lease exists and has not expired, the upsert could not insert another one
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Check against the database which of the leases of the owner are still held with the same token, in a single
+     * query.
+     *
+     * @return the leases among the given ones that are still held with the same token
+     */
+    public List<Lease> findHeld(Collection<Lease> leases, String owner, Date now) {
+        final List<String> names = leases.stream().map(Lease::getName).collect(Collectors.toList());
+        final List<Lease> current = operations.find(
+                query(where(NAME_KEY).in(names).and(OWNER_KEY).is(owner).and(EXPIRES_AT_KEY).gt(now)),
+                Lease.class
+        );
+        final Map<String, Long> tokens = current.stream().collect(Collectors.toMap(Lease::getName, Lease::getToken));
+        return leases.stream()
+                .filter(lease -> Long.valueOf(lease.getToken()).equals(tokens.get(lease.getName())))
+                .collect(Collectors.toList());
+    }
+
+    public void release(Lease lease) {
+        operations.updateFirst(
+                query(where(NAME_KEY).is(lease.getName())
+                        .and(OWNER_KEY).is(lease.getOwner())
+                        .and(TOKEN_KEY).is(lease.getToken())),
+                new Update().set(EXPIRES_AT_KEY, new Date(0)),
+                Lease.class
+        );
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import com.mongodb.DBObject;
+
+/**
+ * Updates without a segment belong to the "other" segment. It is stored as a segment id of its own rather than as a
+ * missing one, so that every segment filter is an equality or {@code $in} predicate an index can serve, and it is
+ * exposed as a missing segment id again when read.
+ */
+final class OtherSegment {
+
+    static final String ID = "other";
+
+    static final String SEGMENT_ID_KEY = "segmentId";
+
+    private OtherSegment() {
+    }
+
+    static void toStored(DBObject document) {
+        if (document.get(SEGMENT_ID_KEY) == null) {
+            document.put(SEGMENT_ID_KEY, ID);
+        }
+    }
+
+    static void fromStored(DBObject document) {
+        if (ID.equals(document.get(SEGMENT_ID_KEY))) {
+            document.removeField(SEGMENT_ID_KEY);
+        }
+    }
+}
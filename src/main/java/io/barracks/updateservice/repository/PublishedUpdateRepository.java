@@ -0,0 +1,180 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import io.barracks.updateservice.model.PublishedUpdate;
+import io.barracks.updateservice.model.UpdateRevision;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps one {@link PublishedUpdate} per segment of each user, moved with single document writes so that concurrent
+ * publications settle on the most recent one. Updates without segment are pointed to from the other segment.
+ */
+@Repository
+public class PublishedUpdateRepository implements IndexedRepository {
+
+    private static final String ID_KEY = "_id";
+    private static final String USER_ID_KEY = "userId";
+    private static final String SEGMENT_ID_KEY = "segmentId";
+    private static final String UUID_KEY = "uuid";
+    private static final String DATE_KEY = "creationDate";
+    private static final String REVISION_KEY = "revision";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final MongoOperations operations;
+
+    @Autowired
+    public PublishedUpdateRepository(MongoOperations operations) {
+        this.operations = operations;
+    }
+
+    @Override
+    public List<QueryShape> getQueryShapes() {
+        return Collections.singletonList(
+                new QueryShape(
+                        "findAll",
+                        operations.getCollectionName(PublishedUpdate.class),
+                        new Index().on(USER_ID_KEY, Sort.Direction.ASC).named("userId_idx")
+                )
+        );
+    }
+
+    public List<PublishedUpdate> findAll(String userId) {
+        return operations.find(query(where(USER_ID_KEY).is(userId)), PublishedUpdate.class);
+    }
+
+    public Optional<PublishedUpdate> findOne(String userId, String segmentId) {
+        return Optional.ofNullable(operations.findById(PublishedUpdate.getId(userId, toStored(segmentId)), PublishedUpdate.class));
+    }
+
+    /**
+     * Record the update published in the segment, unless the segment already has a pointer, e.g. written by a
+     * concurrent publication. Segments without a published update get no pointer, so that the segment ids devices
+     * ask for do not add documents.
+     */
+    public void save(String userId, String segmentId, UpdateRevision revision) {
+        final PublishedUpdate publishedUpdate = PublishedUpdate.builder()
+                .userId(userId)
+                .segmentId(toStored(segmentId))
+                .uuid(revision.getUuid())
+                .creationDate(revision.getCreationDate())
+                .revision(revision)
+                .build();
+        try {
+            operations.insert(publishedUpdate);
+        } catch (DuplicateKeyException e) {
+            log.debug("The published update of segment " + publishedUpdate.getId() + " is already stored");
+        }
+    }
+
+    /**
+     * Point the segment of the revision to it, unless it already points to a more recent revision.
+     *
+     * @param revision a published revision that has just been saved in the history
+     */
+    public void publish(UpdateRevision revision) {
+        final String segmentId = toStored(revision.getSegmentId());
+        final Query query = query(
+                where(ID_KEY).is(PublishedUpdate.getId(revision.getUserId(), segmentId))
+                        .orOperator(where(DATE_KEY).lt(revision.getCreationDate()), where(DATE_KEY).exists(false))
+        );
+        try {
+            operations.upsert(query, getPublishUpdate(revision.getUserId(), segmentId, revision), PublishedUpdate.class);
+        } catch (DuplicateKeyException e) {
+            log.debug("A more recent update than " + revision.getUuid() + " is already published in segment " + segmentId);
+        }
+    }
+
+    /**
+     * Point the segment of a revision that is no longer published to the given fallback, or to nothing, provided it
+     * still points to the update of this revision.
+     *
+     * @param revision the revision that was published in the segment
+     * @param fallback the most recent revision still published in the segment, if any
+     */
+    public void unpublish(UpdateRevision revision, Optional<UpdateRevision> fallback) {
+        final String segmentId = toStored(revision.getSegmentId());
+        final Query query = query(
+                where(ID_KEY).is(PublishedUpdate.getId(revision.getUserId(), segmentId)).and(UUID_KEY).is(revision.getUuid())
+        );
+        final Update update = fallback.isPresent()
+                ? getPublishUpdate(revision.getUserId(), segmentId, fallback.get())
+                : new Update().set(USER_ID_KEY, revision.getUserId()).set(SEGMENT_ID_KEY, segmentId)
+                .unset(UUID_KEY).unset(DATE_KEY).unset(REVISION_KEY);
+        try {
+            operations.upsert(query, update, PublishedUpdate.class);
+        } catch (DuplicateKeyException e) {
+            log.debug("Segment " + segmentId + " no longer points to update " + revision.getUuid());
+        }
+    }
+
+    /**
+     * Point the segment to the given revision, or to nothing, provided the pointer has not moved since it was read.
+     *
+     * @param publishedUpdate the pointer as it was read
+     * @param revision        the most recent revision published in the segment, if any
+     * @return whether the pointer was replaced
+     */
+    public boolean repair(PublishedUpdate publishedUpdate, Optional<UpdateRevision> revision) {
+        final Query query = query(where(ID_KEY).is(publishedUpdate.getId()).and(DATE_KEY).is(publishedUpdate.getCreationDate()));
+        final Update update = revision.isPresent()
+                ? getPublishUpdate(publishedUpdate.getUserId(), publishedUpdate.getSegmentId(), revision.get())
+                : new Update().unset(UUID_KEY).unset(DATE_KEY).unset(REVISION_KEY);
+        return operations.updateFirst(query, update, PublishedUpdate.class).getN() > 0;
+    }
+
+    private Update getPublishUpdate(String userId, String segmentId, UpdateRevision revision) {
+        final DBObject document = new BasicDBObject();
+        operations.getConverter().write(revision, document);
+        return new Update()
+                .set(USER_ID_KEY, userId)
+                .set(SEGMENT_ID_KEY, segmentId)
+                .set(UUID_KEY, revision.getUuid())
+                .set(DATE_KEY, revision.getCreationDate())
+                .set(REVISION_KEY, document);
+    }
+
+    private static String toStored(String segmentId) {
+        return segmentId == null ? OtherSegment.ID : segmentId;
+    }
+}
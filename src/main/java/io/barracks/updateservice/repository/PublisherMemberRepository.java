@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.repository;
+
+import io.barracks.updateservice.model.PublisherMember;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@Repository
+public class PublisherMemberRepository {
+
+    private static final String ID_KEY = "_id";
+    private static final String HEARTBEAT_KEY = "heartbeat";
+
+    private final MongoOperations operations;
+
+    @Autowired
+    public PublisherMemberRepository(MongoOperations operations) {
+        this.operations = operations;
+    }
+
+    public void heartbeat(String id, Date now) {
+        operations.upsert(query(where(ID_KEY).is(id)), new Update().set(HEARTBEAT_KEY, now), PublisherMember.class);
+    }
+
+    /**
+     * @return the ids of the members with a heartbeat after the given date, in a stable order
+     */
+    public List<String> getLiveMemberIds(Date since) {
+        return operations.find(
+                query(where(HEARTBEAT_KEY).gt(since)).with(new Sort(Sort.Direction.ASC, ID_KEY)),
+                PublisherMember.class
+        ).stream().map(PublisherMember::getId).collect(Collectors.toList());
+    }
+
+    public void remove(String id) {
+        operations.remove(query(where(ID_KEY).is(id)), PublisherMember.class);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import io.barracks.updateservice.model.ScheduledTransition;
+import io.barracks.updateservice.model.TenantBacklog;
+import io.barracks.updateservice.model.UpdateRevision;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@Repository
+public class ScheduledTransitionRepository implements IndexedRepository {
+
+    private static final String ID_KEY = "_id";
+    private static final String USER_ID_KEY = "userId";
+    private static final String REVISION_ID_KEY = "revisionId";
+    private static final String DUE_AT_KEY = "dueAt";
+    private static final String COUNT_KEY = "count";
+    private static final String OLDEST_DUE_DATE_KEY = "oldestDueDate";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final MongoOperations operations;
+
+    @Autowired
+    public ScheduledTransitionRepository(MongoOperations operations) {
+        this.operations = operations;
+    }
+
+    @Override
+    public List<QueryShape> getQueryShapes() {
+        final String collection = operations.getCollectionName(ScheduledTransition.class);
+        return Arrays.asList(
+                new QueryShape(
+                        "getDueTransitions",
+                        collection,
+                        new Index().on(DUE_AT_KEY, Sort.Direction.ASC).on(ID_KEY, Sort.Direction.ASC).named("dueAt_id_idx")
+                ),
+                new QueryShape(
+                        "getDueTransitionsByUserId",
+                        collection,
+                        new Index().on(USER_ID_KEY, Sort.Direction.ASC)
+                                .on(DUE_AT_KEY, Sort.Direction.ASC)
+                                .on(ID_KEY, Sort.Direction.ASC)
+                                .named("userId_dueAt_id_idx")
+                )
+        );
+    }
+
+    /**
+     * Replace the pending transition of the update, unless one was scheduled by a more recent revision.
+     */
+    public void save(ScheduledTransition transition) {
+        operations.remove(
+                query(where(ID_KEY).is(transition.getId()).and(REVISION_ID_KEY).lt(transition.getRevisionId())),
+                ScheduledTransition.class
+        );
+        try {
+            operations.insert(transition);
+        } catch (DuplicateKeyException e) {
+            log.debug("A more recent transition of update " + transition.getUuid() + " is already scheduled");
+        }
+    }
+
+    /**
+     * Remove the pending transitions scheduled by revisions older than the given ones, with a single bulk write.
+     * A transition is superseded once its update has been revised, whether by the transition itself or by a user.
+     */
+    public void removeSupersededBy(List<UpdateRevision> revisions) {
+        if (revisions.isEmpty()) {
+            return;
+        }
+        final BulkWriteOperation bulk = operations.getCollection(operations.getCollectionName(ScheduledTransition.class))
+                .initializeUnorderedBulkOperation();
+        for (UpdateRevision revision : revisions) {
+            bulk.find(
+                    new BasicDBObject(ID_KEY, ScheduledTransition.getId(revision.getUserId(), revision.getUuid()))
+                            .append(REVISION_ID_KEY, new BasicDBObject("$lt", revision.getRevisionId()))
+            ).remove();
+        }
+        bulk.execute();
+    }
+
+    public Slice<ScheduledTransition> getDueTransitions(Date date, Optional<ScheduledTransition> after, int size) {
+        return getDueTransitions(Optional.empty(), date, Optional.empty(), after, size);
+    }
+
+    /**
+     * Transitions due after the first date, and at the second one.
+     */
+    public Slice<ScheduledTransition> getDueTransitions(Date from, Date date, Optional<ScheduledTransition> after, int size) {
+        return getDueTransitions(Optional.of(from), date, Optional.empty(), after, size);
+    }
+
+    public Slice<ScheduledTransition> getDueTransitions(Date date, String userId, Optional<ScheduledTransition> after, int size) {
+        return getDueTransitions(Optional.empty(), date, Optional.of(userId), after, size);
+    }
+
+    /**
+     * Count the due transitions of each user, with the due date of the oldest one.
+     */
+    public List<TenantBacklog> getBacklogs(Date date) {
+        final TypedAggregation<ScheduledTransition> aggregation = Aggregation.newAggregation(
+                ScheduledTransition.class,
+                match(where(DUE_AT_KEY).lte(date)),
+                Aggregation.group(USER_ID_KEY).count().as(COUNT_KEY).min(DUE_AT_KEY).as(OLDEST_DUE_DATE_KEY),
+                Aggregation.project(COUNT_KEY, OLDEST_DUE_DATE_KEY).and(USER_ID_KEY).previousOperation()
+        );
+        return operations.aggregate(aggregation, TenantBacklog.class).getMappedResults();
+    }
+
+    /**
+     * Transitions due at the given date, in due date order, then id order so that the slice after a given transition
+     * is well defined.
+     */
+    private Slice<ScheduledTransition> getDueTransitions(
+            Optional<Date> from, Date date, Optional<String> userId, Optional<ScheduledTransition> after, int size
+    ) {
+        final List<Criteria> criteria = new ArrayList<>();
+        userId.ifPresent(id -> criteria.add(where(USER_ID_KEY).is(id)));
+        from.ifPresent(fromDate -> criteria.add(where(DUE_AT_KEY).gt(fromDate)));
+        criteria.add(where(DUE_AT_KEY).lte(date));
+        after.ifPresent(transition -> criteria.add(new Criteria().orOperator(
+                where(DUE_AT_KEY).gt(transition.getDueAt()),
+                where(DUE_AT_KEY).is(transition.getDueAt()).and(ID_KEY).gt(transition.getId())
+        )));
+
+        final Query query = query(new Criteria().andOperator(criteria.toArray(new Criteria[]{})))
+                .with(new Sort(Sort.Direction.ASC, DUE_AT_KEY, ID_KEY))
+                .limit(size + 1);
+        final List<ScheduledTransition> results = operations.find(query, ScheduledTransition.class);
+        final boolean hasNext = results.size() > size;
+
+        return new SliceImpl<>(hasNext ? results.subList(0, size) : results, new PageRequest(0, size), hasNext);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import com.mongodb.DBObject;
+import io.barracks.updateservice.model.UpdateRevision;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the content of the revisions written to the history to the {@link UpdateContentRepository}, and resolves it
+ * back whenever a revision is read, whatever the collection.
+ * The latest revision of each update keeps its content inline, since it is only stored once, next to its hash so that
+ * the lookups answered from an index can resolve it.
+ */
+@Component
+public class UpdateContentEventListener extends AbstractMongoEventListener<UpdateRevision> {
+
+    private static final String HISTORY_COLLECTION = UpdateRevision.class.getDeclaredAnnotation(Document.class).collection();
+
+    private final UpdateContentRepository updateContentRepository;
+
+    @Autowired
+    public UpdateContentEventListener(@Lazy UpdateContentRepository updateContentRepository) {
+        this.updateContentRepository = updateContentRepository;
+    }
+
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<UpdateRevision> event) {
+        if (HISTORY_COLLECTION.equals(event.getCollectionName())) {
+            updateContentRepository.externalize(event.getDBObject());
+        } else {
+            updateContentRepository.reference(event.getDBObject());
+        }
+    }
+
+    @Override
+    public void onAfterLoad(DBObject dbo) {
+        updateContentRepository.resolve(dbo);
+    }
+}
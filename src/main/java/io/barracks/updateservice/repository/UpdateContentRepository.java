@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Stores the description and additional properties of the revisions once per distinct content, addressed by the hash
+ * of that content. A revision that does not change them, e.g. a publication, only carries the hash.
+ * The latest revisions also reference their name and package id, which are too long to be part of an index key, so
+ * that the lookups answered from an index can resolve them.
+ * Contents are immutable, so the ones already stored or read are kept in memory and never looked up again.
+ */
+@Repository
+public class UpdateContentRepository {
+
+    public static final String CONTENT_HASH_KEY = "contentHash";
+
+    static final String CONTENT_COLLECTION = "update_contents";
+
+    static final List<String> CONTENT_KEYS = Arrays.asList("description", "additionalProperties");
+
+    static final List<String> REFERENCED_KEYS = Arrays.asList("name", "packageId", "description", "additionalProperties");
+
+    private static final String ID_KEY = "_id";
+
+    private static final long CACHE_SIZE = 10000;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final MongoOperations operations;
+    private final Cache<String, DBObject> contents = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+    @Autowired
+    public UpdateContentRepository(MongoOperations operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * Store the content fields of the document if they are not already, and replace them with the hash of their
+     * content. Documents without any content field are left as is.
+     */
+    public void externalize(DBObject document) {
+        if (store(document, CONTENT_KEYS)) {
+            CONTENT_KEYS.forEach(document::removeField);
+        }
+    }
+
+    /**
+     * Store the content fields of the document, its name and package id included, if they are not already, and add the
+     * hash of their content next to them, so that they can be resolved without reading the document. Documents without
+     * any of these fields are left as is.
+     *
+     * @return true if the document has content
+     */
+    public boolean reference(DBObject document) {
+        return store(document, REFERENCED_KEYS);
+    }
+
+    private boolean store(DBObject document, List<String> keys) {
+        final DBObject content = new BasicDBObject();
+        keys.stream().filter(document::containsField).forEach(key -> content.put(key, document.get(key)));
+        if (content.keySet().isEmpty()) {
+            return false;
+        }
+        final String hash = Hashing.sha256().hashString(JSON.serialize(canonical(content)), StandardCharsets.UTF_8).toString();
+        if (contents.getIfPresent(hash) == null) {
+            final Update update = new Update();
+            content.keySet().forEach(key -> update.setOnInsert(key, content.get(key)));
+            operations.upsert(query(where(ID_KEY).is(hash)), update, CONTENT_COLLECTION);
+            contents.put(hash, content);
+        }
+        document.put(CONTENT_HASH_KEY, hash);
+        return true;
+    }
+
+    /**
+     * Put back the content fields referenced by the hash of the document, unless they are already there. Documents
+     * without a hash are left as is.
+     */
+    public void resolve(DBObject document) {
+        final Object hash = document.get(CONTENT_HASH_KEY);
+        if (hash == null) {
+            return;
+        }
+        if (CONTENT_KEYS.stream().anyMatch(document::containsField)) {
+            document.removeField(CONTENT_HASH_KEY);
+            return;
+        }
+        DBObject content = contents.getIfPresent(hash.toString());
+        if (content == null) {
+            content = operations.getCollection(CONTENT_COLLECTION).findOne(new BasicDBObject(ID_KEY, hash));
+            if (content == null) {
+                log.warn("No content stored for hash " + hash);
+                return;
+            }
+            content.removeField(ID_KEY);
+            contents.put(hash.toString(), content);
+        }
+        document.removeField(CONTENT_HASH_KEY);
+        document.putAll(content);
+    }
+
+    /**
+     * Copy of the value with the keys of every nested document sorted, so that equal contents hash the same whatever
+     * the order their keys were written in.
+     */
+    private Object canonical(Object value) {
+        if (value instanceof List) {
+            final BasicDBList list = new BasicDBList();
+            ((List<?>) value).forEach(item -> list.add(canonical(item)));
+            return list;
+        }
+        if (value instanceof Map) {
+            final TreeMap<String, Object> sorted = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((key, item) -> sorted.put(key.toString(), canonical(item)));
+            return new BasicDBObject(sorted);
+        }
+        if (value instanceof DBObject) {
+            return canonical(((DBObject) value).toMap());
+        }
+        return value;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import com.mongodb.WriteResult;
+import io.barracks.updateservice.model.UpdateCount;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps one {@link UpdateCount} per user, segment and status, moved with {@code $inc} as the latest revisions of the
+ * updates change, reconciliations included. Updates without segment are counted in the other segment.
+ */
+@Repository
+public class UpdateCountRepository implements IndexedRepository {
+
+    private static final String ID_KEY = "_id";
+    private static final String USER_ID_KEY = "userId";
+    private static final String SEGMENT_ID_KEY = "segmentId";
+    private static final String STATUS_KEY = "status";
+    private static final String COUNT_KEY = "count";
+    private static final String VERSION_KEY = "version";
+    private static final String RECONCILED_AT_KEY = "reconciledAt";
+
+    private final MongoOperations operations;
+
+    @Autowired
+    public UpdateCountRepository(MongoOperations operations) {
+        this.operations = operations;
+    }
+
+    @Override
+    public List<QueryShape> getQueryShapes() {
+        return Collections.singletonList(
+                new QueryShape(
+                        "getCounts",
+                        operations.getCollectionName(UpdateCount.class),
+                        new Index().on(USER_ID_KEY, Sort.Direction.ASC).named("userId_idx")
+                )
+        );
+    }
+
+    /**
+     * Count a new update in the segment and status of its first revision.
+     */
+    public void add(UpdateRevision revision) {
+        increment(revision.getUserId(), revision.getSegmentId(), revision.getStatus(), 1);
+    }
+
+    /**
+     * Move an update from the segment and status of its previous latest revision to the ones of its new latest
+     * revision, if they differ.
+     */
+    public void move(UpdateRevision previousRevision, UpdateRevision revision) {
+        if (previousRevision.getStatus() == revision.getStatus()
+                && Objects.equals(previousRevision.getSegmentId(), revision.getSegmentId())) {
+            return;
+        }
+        increment(revision.getUserId(), revision.getSegmentId(), revision.getStatus(), 1);
+        increment(previousRevision.getUserId(), previousRevision.getSegmentId(), previousRevision.getStatus(), -1);
+    }
+
+    public List<UpdateCount> getCounts(String userId) {
+        return operations.find(query(where(USER_ID_KEY).is(userId)), UpdateCount.class);
+    }
+
+    /**
+     * Correct the counters of the user, as read before the given counts were counted from the latest revisions, by the
+     * difference with these counts. Each correction is an increment conditioned on the version read, so that a counter
+     * moved since is left for the next reconciliation rather than losing the move. A count without a counter is
+     * inserted as a new one, unless a move created it meanwhile.
+     *
+     * @return the number of counters that moved since they were read
+     */
+    public int reconcile(String userId, List<UpdateCount> counters, List<UpdateCount> counts) {
+        final Date now = new Date();
+        final Map<String, UpdateCount> countsById = counts.stream()
+                .map(count -> getCount(userId, toStored(count.getSegmentId()), count.getStatus(), count.getCount()))
+                .collect(Collectors.toMap(
+                        UpdateCount::getId,
+                        Function.identity(),
+                        (count1, count2) -> count1.toBuilder().count(count1.getCount() + count2.getCount()).build()
+                ));
+        int moved = 0;
+        for (UpdateCount counter : counters) {
+            final UpdateCount count = countsById.remove(counter.getId());
+            final long delta = (count == null ? 0 : count.getCount()) - counter.getCount();
+            final WriteResult result = operations.updateFirst(
+                    query(where(ID_KEY).is(counter.getId()).and(VERSION_KEY).in(getStoredVersions(counter.getVersion()))),
+                    new Update().inc(COUNT_KEY, delta).inc(VERSION_KEY, 1).set(RECONCILED_AT_KEY, now),
+                    UpdateCount.class
+            );
+            if (result.getN() == 0) {
+                moved++;
+            }
+        }
+        for (UpdateCount count : countsById.values()) {
+            try {
+                operations.insert(count.toBuilder().reconciledAt(now).build());
+            } catch (DuplicateKeyException e) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * The counters written before they were versioned have no version, which reads as 0.
+     */
+    private static List<Long> getStoredVersions(long version) {
+        return version == 0 ? Arrays.asList(null, 0L) : Collections.singletonList(version);
+    }
+
+    private static UpdateCount getCount(String userId, String segmentId, UpdateStatus status, long count) {
+        return UpdateCount.builder().userId(userId).segmentId(segmentId).status(status).count(count).build();
+    }
+
+    private void increment(String userId, String segmentId, UpdateStatus status, long delta) {
+        final String storedSegmentId = toStored(segmentId);
+        operations.upsert(
+                query(where(ID_KEY).is(UpdateCount.getId(userId, storedSegmentId, status))),
+                new Update()
+                        .setOnInsert(USER_ID_KEY, userId)
+                        .setOnInsert(SEGMENT_ID_KEY, storedSegmentId)
+                        .setOnInsert(STATUS_KEY, status)
+                        .inc(COUNT_KEY, delta)
+                        .inc(VERSION_KEY, 1),
+                UpdateCount.class
+        );
+    }
+
+    private static String toStored(String segmentId) {
+        return segmentId == null ? OtherSegment.ID : segmentId;
+    }
+}
@@ -24,22 +24,66 @@
 
 package io.barracks.updateservice.repository;
 
+import io.barracks.updateservice.model.BulkInsertResult;
+import io.barracks.updateservice.model.RevisionTag;
+import io.barracks.updateservice.model.UpdateCount;
+import io.barracks.updateservice.model.UpdateCursor;
 import io.barracks.updateservice.model.UpdateRevision;
 import io.barracks.updateservice.model.UpdateStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 public interface UpdateRevisionRepositoryCustom {
 
-    Page<UpdateRevision> getAllLatestUpdateInfo(Pageable pageable, UpdateStatus status);
-
     Page<UpdateRevision> getAllLatestUpdateInfo(Pageable pageable, Optional<String> userId, List<String> statuses, List<String> segmentIds);
 
+    List<UpdateCount> countLatestUpdateInfo(String userId);
+
+    List<String> getLatestUpdateInfoUserIds();
+
+    Slice<UpdateRevision> getAllDueScheduledUpdateInfo(Date date, Optional<UpdateRevision> after, int size);
+
+    List<UpdateRevision> getLatestUpdateInfo(String userId, List<UUID> uuids);
+
+    Slice<UpdateRevision> getAllLatestUpdateInfo(Optional<UpdateCursor> after, int size, Optional<String> userId, List<String> statuses, List<String> segmentIds);
+
     Optional<UpdateRevision> getLatestPublishedUpdateInfoBySegment(String userId, String segmentId);
 
     Optional<UpdateRevision> getLatestPublishedUpdateInfoWithoutSegmentId(String userId);
+
+    BulkInsertResult insertUpdateRevisions(List<UpdateRevision> revisions);
+
+    void saveLatestUpdateInfo(UpdateRevision revision);
+
+    Optional<UpdateRevision> reviseLatestUpdateInfo(UpdateRevision revision, Collection<UpdateStatus> statuses);
+
+    Optional<UpdateRevision> reviseLatestUpdateInfo(UpdateRevision revision, Collection<UpdateStatus> statuses, RevisionTag tag);
+
+    Optional<UpdateRevision> editLatestUpdateInfo(UpdateRevision revision, Optional<RevisionTag> tag);
+
+    Optional<UpdateRevision> editUpdateRevision(UpdateRevision revision);
+
+    void completeLatestUpdateInfo(UpdateRevision revision);
+
+    void replaceLatestUpdateInfo(UpdateRevision revision);
+
+    void restoreLatestUpdateInfo(UpdateRevision revision, int revisionId);
+
+    void saveLatestUpdateInfo(List<UpdateRevision> revisions);
+
+    int rebuildLatestUpdateInfo();
+
+    int migrateOtherSegment(int batchSize);
+
+    int archiveUpdateRevisions(List<UpdateRevision> heads, int keep, Date before);
+
+    Page<UpdateRevision> getUpdateHistory(String userId, UUID uuid, Pageable pageable);
 }
 
@@ -24,182 +24,900 @@
 
 package io.barracks.updateservice.repository;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteResult;
+import io.barracks.updateservice.model.BulkInsertResult;
+import io.barracks.updateservice.model.RevisionTag;
+import io.barracks.updateservice.model.UpdateCount;
+import io.barracks.updateservice.model.UpdateCursor;
 import io.barracks.updateservice.model.UpdateRevision;
 import io.barracks.updateservice.model.UpdateStatus;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
-import org.springframework.data.mongodb.core.aggregation.AggregationResults;
 import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
 import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
-public class UpdateRevisionRepositoryImpl implements UpdateRevisionRepositoryCustom {
+public class UpdateRevisionRepositoryImpl implements UpdateRevisionRepositoryCustom, IndexedRepository {
+
+    /**
+     * Holds a copy of the latest revision of each update, so that listings do not have to group the whole history.
+     */
+    static final String LATEST_UPDATE_INFO_COLLECTION = "updates_head";
+
+    static final String ARCHIVE_COLLECTION = "updates_archive";
 
     private static final String UUID_KEY = "uuid";
     private static final String SEGMENT_ID_KEY = "segmentId";
     private static final String DATE_KEY = "creationDate";
     private static final String USER_ID_KEY = "userId";
     private static final String UPDATE_STATUS_KEY = "status";
+    private static final String REVISION_ID_KEY = "revisionId";
+    private static final String SCHEDULED_DATE_KEY = "scheduledDate";
+    private static final String SCHEDULED_STATUS_KEY = "scheduledStatus";
+    private static final String NAME_KEY = "name";
+    private static final String PACKAGE_ID_KEY = "packageId";
+    private static final String EDIT_VERSION_KEY = "editVersion";
+    private static final String ID_KEY = "_id";
+
+    private static final String TOTAL_KEY = "total";
+    private static final String COUNT_KEY = "count";
+    private static final String CONTENT_KEY = "content";
+    private static final String LATEST_ID_KEY = "latestId";
+
+    /**
+     * Fields carried through the sort and paging stages of the listings, the others being loaded for the final page
+     * only.
+     */
+    private static final List<String> SLIM_KEYS = Arrays.asList(
+            USER_ID_KEY, UUID_KEY, UPDATE_STATUS_KEY, SEGMENT_ID_KEY, DATE_KEY, SCHEDULED_DATE_KEY
+    );
+
+    /**
+     * Fields returned by the lookup of the latest published update, after the fields it filters and sorts on. They are
+     * all part of its index, so that it is answered from the index alone. They are all bounded, an index key being
+     * limited to 1024 bytes: the name, the package id and the content are resolved from the content hash.
+     */
+    private static final List<String> PUBLISHED_KEYS = Arrays.asList(
+            UUID_KEY, REVISION_ID_KEY, SCHEDULED_DATE_KEY, SCHEDULED_STATUS_KEY, UpdateContentRepository.CONTENT_HASH_KEY
+    );
+
+    /**
+     * Former covering index of the lookup of the latest published update, which had the name and package id in its key.
+     */
+    private static final String UNBOUNDED_PUBLISHED_INDEX = "userId_segmentId_status_creationDate_covering_idx";
 
-    private static final String OTHER_SEGMENT_KEY = "other";
+    private static final int DUPLICATE_KEY_CODE = 11000;
+
+    private static final Set<String> REVISED_KEYS_EXCLUSIONS = new HashSet<>(Arrays.asList(
+            USER_ID_KEY, UUID_KEY, REVISION_ID_KEY, DATE_KEY, EDIT_VERSION_KEY
+    ));
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
     private final MongoOperations operations;
+    private final UpdateContentRepository updateContentRepository;
 
     @Autowired
-    public UpdateRevisionRepositoryImpl(MongoOperations operations) {
+    public UpdateRevisionRepositoryImpl(MongoOperations operations, UpdateContentRepository updateContentRepository) {
         this.operations = operations;
+        this.updateContentRepository = updateContentRepository;
     }
 
     @Override
-    public Page<UpdateRevision> getAllLatestUpdateInfo(Pageable pageable, UpdateStatus status) {
-        return getAllLatestUpdateInfo(pageable, Optional.empty(), Collections.singletonList(status.getName()), Collections.emptyList());
+    public List<QueryShape> getQueryShapes() {
+        final String historyCollection = operations.getCollectionName(UpdateRevision.class);
+        return Arrays.asList(
+                new QueryShape(
+                        "findTopByUuidAndUserIdOrderByRevisionIdDesc",
+                        historyCollection,
+                        new Index().on(USER_ID_KEY, Sort.Direction.ASC)
+                                .on(UUID_KEY, Sort.Direction.ASC)
+                                .on(REVISION_ID_KEY, Sort.Direction.DESC)
+                                .unique()
+                                .named("userId_uuid_revisionId_idx")
+                ),
+                new QueryShape(
+                        "rebuildLatestUpdateInfo",
+                        historyCollection,
+                        new Index().on(USER_ID_KEY, Sort.Direction.ASC)
+                                .on(DATE_KEY, Sort.Direction.DESC)
+                                .named("userId_creationDate_idx")
+                ),
+                new QueryShape(
+                        "reviseLatestUpdateInfo",
+                        LATEST_UPDATE_INFO_COLLECTION,
+                        new Index().on(USER_ID_KEY, Sort.Direction.ASC)
+                                .on(UUID_KEY, Sort.Direction.ASC)
+                                .unique()
+                                .named("userId_uuid_idx")
+                ),
+                new QueryShape(
+                        "getAllLatestUpdateInfo",
+                        LATEST_UPDATE_INFO_COLLECTION,
+                        new Index().on(USER_ID_KEY, Sort.Direction.ASC)
+                                .on(DATE_KEY, Sort.Direction.DESC)
+                                .on(UUID_KEY, Sort.Direction.DESC)
+                                .named("userId_creationDate_uuid_idx")
+                ),
+                new QueryShape(
+                        "getLatestPublishedUpdateInfoBySegment",
+                        LATEST_UPDATE_INFO_COLLECTION,
+                        getPublishedIndex()
+                ),
+                new QueryShape(
+                        "getAllDueScheduledUpdateInfo",
+                        LATEST_UPDATE_INFO_COLLECTION,
+                        new Index().on(UPDATE_STATUS_KEY, Sort.Direction.ASC)
+                                .on(SCHEDULED_DATE_KEY, Sort.Direction.ASC)
+                                .on(ID_KEY, Sort.Direction.ASC)
+                                .named("status_scheduledDate_id_idx")
+                ),
+                new QueryShape(
+                        "getUpdateHistory",
+                        ARCHIVE_COLLECTION,
+                        new Index().on(USER_ID_KEY, Sort.Direction.ASC)
+                                .on(UUID_KEY, Sort.Direction.ASC)
+                                .on(REVISION_ID_KEY, Sort.Direction.DESC)
+                                .unique()
+                                .named("userId_uuid_revisionId_idx")
+                )
+        );
+    }
+
+    @Override
+    public Map<String, List<String>> getObsoleteIndexes() {
+        return Collections.singletonMap(LATEST_UPDATE_INFO_COLLECTION, Collections.singletonList(UNBOUNDED_PUBLISHED_INDEX));
     }
 
     @Override
     public Page<UpdateRevision> getAllLatestUpdateInfo(Pageable pageable, Optional<String> userId, List<String> statuses, List<String> segmentIds) {
-        // Basic operations
-        final ArrayList<AggregationOperation> aggregationOperations = new ArrayList<>();
-        userId.ifPresent(content -> aggregationOperations.add(match(where(USER_ID_KEY).is(content))));
-        aggregationOperations.addAll(
-                Arrays.asList(
-                        Aggregation.sort(Sort.Direction.DESC, DATE_KEY),
-                        Aggregation.group(UUID_KEY).first("$$ROOT").as("updateInfo"),
-                        this.getProjectOperation()
-                )
+        // Count, skip and size in a single round trip, on the slim fields and the sorted ones only
+        final List<AggregationOperation> stages = getSortedSlimStages(pageable, userId, statuses, segmentIds);
+        stages.add(
+                new FacetOperation()
+                        .and(TOTAL_KEY, Aggregation.group(new String[]{}).count().as(COUNT_KEY))
+                        .and(
+                                CONTENT_KEY,
+                                Aggregation.skip(pageable.getPageNumber() * pageable.getPageSize()),
+                                Aggregation.limit(pageable.getPageSize())
+                        )
         );
+        final TypedAggregation<UpdateRevision> aggregation = Aggregation.newAggregation(UpdateRevision.class, stages);
+        final UpdateRevisionPage result = operations.aggregate(aggregation, LATEST_UPDATE_INFO_COLLECTION, UpdateRevisionPage.class)
+                .getUniqueMappedResult();
+        final List<UpdateRevision> results = result != null ? getFullRevisions(result.content) : Collections.emptyList();
+        final int updateCount = result != null && !result.total.isEmpty() ? result.total.get(0).count : 0;
+
+        return new PageImpl<>(results, pageable, updateCount);
+    }
+
+    /**
+     * Count the updates of the user whose latest revision has each status in each segment.
+     */
+    @Override
+    public List<UpdateCount> countLatestUpdateInfo(String userId) {
+        final TypedAggregation<UpdateRevision> aggregation = Aggregation.newAggregation(
+                UpdateRevision.class,
+                match(where(USER_ID_KEY).is(userId)),
+                Aggregation.group(SEGMENT_ID_KEY, UPDATE_STATUS_KEY).count().as(COUNT_KEY),
+                Aggregation.project(SEGMENT_ID_KEY, UPDATE_STATUS_KEY, COUNT_KEY)
+        );
+        return operations.aggregate(aggregation, LATEST_UPDATE_INFO_COLLECTION, DBObject.class).getMappedResults().stream()
+                .map(result -> {
+                    final Object segmentId = result.get(SEGMENT_ID_KEY);
+                    return UpdateCount.builder()
+                            .userId(userId)
+                            .segmentId(segmentId == null ? OtherSegment.ID : segmentId.toString())
+                            .status(UpdateStatus.valueOf(result.get(UPDATE_STATUS_KEY).toString()))
+                            .count(((Number) result.get(COUNT_KEY)).longValue())
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Every user with at least one update, through the user and uuid index.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> getLatestUpdateInfoUserIds() {
+        return (List<String>) operations.getCollection(LATEST_UPDATE_INFO_COLLECTION).distinct(USER_ID_KEY);
+    }
+
+    /**
+     * Filter the latest revisions, sort them, and keep the slim fields and the sorted ones only.
+     */
+    private List<AggregationOperation> getSortedSlimStages(Pageable pageable, Optional<String> userId, List<String> statuses, List<String> segmentIds) {
+        final List<Criteria> criteria = getLatestUpdateInfoCriteria(userId, statuses, segmentIds);
 
         // Handle sorting
-        ArrayList<AggregationOperation> sorts = new ArrayList<>();
+        final List<Sort.Order> orders = new ArrayList<>();
         if (pageable.getSort() != null) {
             for (Sort.Order order : pageable.getSort()) {
                 try {
                     UpdateRevision.class.getDeclaredField(order.getProperty());
-                    sorts.add(Aggregation.sort(order.getDirection(), order.getProperty()));
+                    orders.add(order);
                 } catch (NoSuchFieldException e) {
                     log.warn("You can't sort updates using " + order.getProperty());
                 }
             }
         }
-        if (sorts.isEmpty()) {
-            aggregationOperations.add(Aggregation.sort(Sort.Direction.DESC, DATE_KEY));
-        } else {
-            aggregationOperations.addAll(sorts);
+        if (orders.isEmpty()) {
+            orders.add(new Sort.Order(Sort.Direction.DESC, DATE_KEY));
         }
 
-        // Handle statuses
-        if (!statuses.isEmpty()) {
-            final List<UpdateStatus> statusList = statuses.stream().map(UpdateStatus::fromName).collect(Collectors.toList());
-            aggregationOperations.add(match(where(UPDATE_STATUS_KEY).in(statusList)));
-        }
+        final Set<String> slimKeys = new LinkedHashSet<>(SLIM_KEYS);
+        orders.forEach(order -> slimKeys.add(order.getProperty()));
+        return new ArrayList<>(Arrays.asList(
+                match(andOperator(criteria)),
+                Aggregation.sort(new Sort(orders)),
+                Aggregation.project(slimKeys.toArray(new String[]{}))
+        ));
+    }
 
-        // Handle segments
-        if(!segmentIds.isEmpty()) {
-            final List<Criteria> segmentMatch = new ArrayList<>(3);
-            final List<String> realIds = segmentIds.stream().filter(id -> !OTHER_SEGMENT_KEY.equals(id)).collect(Collectors.toList());
-            if(!realIds.isEmpty()) {
-                segmentMatch.add(where(SEGMENT_ID_KEY).in(realIds));
-            }
-            boolean includeOther = segmentIds.stream().anyMatch(OTHER_SEGMENT_KEY::equals);
-            if(includeOther) {
-                segmentMatch.add(where(SEGMENT_ID_KEY).exists(false));
-                segmentMatch.add(where(SEGMENT_ID_KEY).is(null));
-            }
-            aggregationOperations.add(match(new Criteria().orOperator(segmentMatch.toArray(new Criteria[]{}))));
-        }
+    /**
+     * Seek past the given cursor instead of skipping the previous pages, so that the cost of a page
+     * does not depend on how deep it is. Updates are ordered by creation date then uuid, both descending.
+     */
+    @Override
+    public Slice<UpdateRevision> getAllLatestUpdateInfo(Optional<UpdateCursor> after, int size, Optional<String> userId, List<String> statuses, List<String> segmentIds) {
+        final List<Criteria> criteria = getLatestUpdateInfoCriteria(userId, statuses, segmentIds);
+        after.ifPresent(cursor -> criteria.add(new Criteria().orOperator(
+                where(DATE_KEY).lt(cursor.getCreationDate()),
+                where(DATE_KEY).is(cursor.getCreationDate()).and(UUID_KEY).lt(cursor.getUuid())
+        )));
 
-        // Count
-        List<AggregationOperation> countAggregation = new ArrayList<>(aggregationOperations);
-        countAggregation.add(Aggregation.group(new String[]{}).count().as("count"));
-        Count result = operations.aggregate(Aggregation.newAggregation(UpdateRevision.class, countAggregation), Count.class).getUniqueMappedResult();
-        int updateCount = result != null ? result.count : 0;
+        // Fetch one more update to know whether there is a next slice
+        final Query query = query(andOperator(criteria))
+                .with(new Sort(Sort.Direction.DESC, DATE_KEY, UUID_KEY))
+                .limit(size + 1);
+        final List<UpdateRevision> results = operations.find(query, UpdateRevision.class, LATEST_UPDATE_INFO_COLLECTION);
+        final boolean hasNext = results.size() > size;
 
-        // Skip and size
-        aggregationOperations.addAll(
-                Arrays.asList(
-                        Aggregation.skip(pageable.getPageNumber() * pageable.getPageSize()),
-                        Aggregation.limit(pageable.getPageSize()))
-        );
+        return new SliceImpl<>(hasNext ? results.subList(0, size) : results, new PageRequest(0, size), hasNext);
+    }
 
-        TypedAggregation<UpdateRevision> aggregation = Aggregation.newAggregation(
+    /**
+     * Latest revisions of the given updates of a user, through the user and uuid index.
+     */
+    @Override
+    public List<UpdateRevision> getLatestUpdateInfo(String userId, List<UUID> uuids) {
+        return operations.find(
+                query(where(USER_ID_KEY).is(userId).and(UUID_KEY).in(uuids)),
                 UpdateRevision.class,
-                aggregationOperations
+                LATEST_UPDATE_INFO_COLLECTION
         );
-        AggregationResults<UpdateRevision> groupResult = operations.aggregate(aggregation, UpdateRevision.class);
-        List<UpdateRevision> results = groupResult.getMappedResults();
+    }
 
-        return new PageImpl<>(results, pageable, updateCount);
+    /**
+     * Scheduled updates due at the given date, in scheduled date order, through the status and scheduled date index.
+     * Updates with the same scheduled date are ordered by id, so that the slice after a given update is well defined.
+     */
+    @Override
+    public Slice<UpdateRevision> getAllDueScheduledUpdateInfo(Date date, Optional<UpdateRevision> after, int size) {
+        final List<Criteria> criteria = new ArrayList<>();
+        criteria.add(where(UPDATE_STATUS_KEY).is(UpdateStatus.SCHEDULED));
+        criteria.add(where(SCHEDULED_DATE_KEY).lte(date));
+        after.ifPresent(update -> criteria.add(new Criteria().orOperator(
+                where(SCHEDULED_DATE_KEY).gt(update.getScheduledDate()),
+                where(SCHEDULED_DATE_KEY).is(update.getScheduledDate()).and(ID_KEY).gt(new ObjectId(update.getId()))
+        )));
+
+        final Query query = query(andOperator(criteria))
+                .with(new Sort(Sort.Direction.ASC, SCHEDULED_DATE_KEY, ID_KEY))
+                .limit(size + 1);
+        final List<UpdateRevision> results = operations.find(query, UpdateRevision.class, LATEST_UPDATE_INFO_COLLECTION);
+        final boolean hasNext = results.size() > size;
+
+        return new SliceImpl<>(hasNext ? results.subList(0, size) : results, new PageRequest(0, size), hasNext);
     }
 
+    /**
+     * Look up the latest published revision of the segment from the index of the lookup alone, without fetching the
+     * document. The name, package id and content are resolved from its hash. A revision stored before the hash
+     * referenced them is read as a whole.
+     */
     @Override
     public Optional<UpdateRevision> getLatestPublishedUpdateInfoBySegment(String userId, String segmentId) {
-        TypedAggregation<UpdateRevision> aggregation = Aggregation.newAggregation(
-                UpdateRevision.class,
-                match(where(USER_ID_KEY).is(userId)),
-                Aggregation.sort(Sort.Direction.DESC, DATE_KEY),
-                Aggregation.group(UUID_KEY).first("$$ROOT").as("updateInfo"),
-                this.getProjectOperation(),
-                match(
-                        new Criteria().andOperator(
-                                where(SEGMENT_ID_KEY).is(segmentId),
-                                where(UPDATE_STATUS_KEY).is(UpdateStatus.PUBLISHED.name())
-                        )
-                ),
-                Aggregation.sort(Sort.Direction.DESC, DATE_KEY),
-                Aggregation.limit(1)
+        final DBObject document = operations.getCollection(LATEST_UPDATE_INFO_COLLECTION).findOne(
+                getPublishedQuery(userId, segmentId),
+                getPublishedProjection(),
+                new BasicDBObject(DATE_KEY, -1)
         );
+        if (document == null) {
+            return Optional.empty();
+        }
+        updateContentRepository.resolve(document);
+        if (!document.containsField(NAME_KEY)) {
+            final Query query = query(
+                    where(USER_ID_KEY).is(userId)
+                            .and(SEGMENT_ID_KEY).is(segmentId)
+                            .and(UPDATE_STATUS_KEY).is(UpdateStatus.PUBLISHED)
+            ).with(new Sort(Sort.Direction.DESC, DATE_KEY));
+            return Optional.ofNullable(operations.findOne(query, UpdateRevision.class, LATEST_UPDATE_INFO_COLLECTION));
+        }
+        OtherSegment.fromStored(document);
+        return Optional.of(operations.getConverter().read(UpdateRevision.class, document));
+    }
+
+    /**
+     * The query and projection of {@link #getLatestPublishedUpdateInfoBySegment(String, String)}, sorted by descending
+     * creation date, so that its plan can be explained.
+     */
+    public static DBObject getPublishedQuery(String userId, String segmentId) {
+        return new BasicDBObject(USER_ID_KEY, userId)
+                .append(SEGMENT_ID_KEY, segmentId)
+                .append(UPDATE_STATUS_KEY, UpdateStatus.PUBLISHED.name());
+    }
 
-        return Optional.ofNullable(operations.aggregate(aggregation, UpdateRevision.class).getUniqueMappedResult());
+    public static DBObject getPublishedProjection() {
+        final DBObject projection = new BasicDBObject(ID_KEY, 0)
+                .append(USER_ID_KEY, 1)
+                .append(SEGMENT_ID_KEY, 1)
+                .append(UPDATE_STATUS_KEY, 1)
+                .append(DATE_KEY, 1);
+        PUBLISHED_KEYS.forEach(key -> projection.put(key, 1));
+        return projection;
+    }
+
+    private static Index getPublishedIndex() {
+        final Index index = new Index().on(USER_ID_KEY, Sort.Direction.ASC)
+                .on(SEGMENT_ID_KEY, Sort.Direction.ASC)
+                .on(UPDATE_STATUS_KEY, Sort.Direction.ASC)
+                .on(DATE_KEY, Sort.Direction.DESC);
+        PUBLISHED_KEYS.forEach(key -> index.on(key, Sort.Direction.ASC));
+        return index.named("userId_segmentId_status_creationDate_uuid_covering_idx");
     }
 
     @Override
     public Optional<UpdateRevision> getLatestPublishedUpdateInfoWithoutSegmentId(String userId) {
-        TypedAggregation<UpdateRevision> aggregation = Aggregation.newAggregation(
+        return getLatestPublishedUpdateInfoBySegment(userId, OtherSegment.ID);
+    }
+
+    /**
+     * Replace the latest revision stored for the update, unless a more recent revision is already stored.
+     * The head document keeps the id of the revision it copies.
+     *
+     * @param revision a revision that has just been saved in the history
+     */
+    @Override
+    public void saveLatestUpdateInfo(UpdateRevision revision) {
+        operations.remove(
+                query(
+                        where(USER_ID_KEY).is(revision.getUserId())
+                                .and(UUID_KEY).is(revision.getUuid())
+                                .and(REVISION_ID_KEY).lt(revision.getRevisionId())
+                ),
+                LATEST_UPDATE_INFO_COLLECTION
+        );
+        try {
+            operations.insert(revision, LATEST_UPDATE_INFO_COLLECTION);
+        } catch (DuplicateKeyException e) {
+            log.debug("A more recent revision of update " + revision.getUuid() + " is already stored");
+        }
+    }
+
+    /**
+     * Give the latest revision stored for the update the content of the given revision and the next revision id, in a
+     * single atomic write, provided its status is one of the given ones. This allocates the id of the new revision
+     * without reading the update first. The creation date is left as is until the revision is saved in the history,
+     * and the edit version is reset since the new revision has not been edited yet.
+     *
+     * @return the latest revision as it was before, or nothing if none is stored with one of the given statuses
+     */
+    @Override
+    public Optional<UpdateRevision> reviseLatestUpdateInfo(UpdateRevision revision, Collection<UpdateStatus> statuses) {
+        return reviseLatestUpdateInfo(revision, statuses, Optional.empty());
+    }
+
+    /**
+     * Same as {@link #reviseLatestUpdateInfo(UpdateRevision, Collection)}, provided the latest revision stored is also
+     * the given one, edits included.
+     */
+    @Override
+    public Optional<UpdateRevision> reviseLatestUpdateInfo(UpdateRevision revision, Collection<UpdateStatus> statuses, RevisionTag tag) {
+        return reviseLatestUpdateInfo(revision, statuses, Optional.of(tag));
+    }
+
+    private Optional<UpdateRevision> reviseLatestUpdateInfo(UpdateRevision revision, Collection<UpdateStatus> statuses, Optional<RevisionTag> tag) {
+        final Criteria criteria = where(USER_ID_KEY).is(revision.getUserId())
+                .and(UUID_KEY).is(revision.getUuid())
+                .and(UPDATE_STATUS_KEY).in(statuses);
+        tag.ifPresent(expected -> andRevisionTag(criteria, expected));
+        return Optional.ofNullable(operations.findAndModify(
+                query(criteria),
+                getContentUpdate(toDBObject(revision)).inc(REVISION_ID_KEY, 1).unset(EDIT_VERSION_KEY),
+                FindAndModifyOptions.options().returnNew(false),
                 UpdateRevision.class,
-                match(where(USER_ID_KEY).is(userId)),
-                Aggregation.sort(Sort.Direction.DESC, DATE_KEY),
-                Aggregation.group(UUID_KEY).first("$$ROOT").as("updateInfo"),
-                this.getProjectOperation(),
-                match(
-                        new Criteria().andOperator(
-                                new Criteria().orOperator(where(SEGMENT_ID_KEY).is(null), where(SEGMENT_ID_KEY).exists(false)),
-                                where(UPDATE_STATUS_KEY).is(UpdateStatus.PUBLISHED.name())
-                        )
+                LATEST_UPDATE_INFO_COLLECTION
+        ));
+    }
+
+    /**
+     * Give the latest revision stored for the update the content of the given revision in place, keeping its revision
+     * id but bumping its edit version, provided it has the same status, and the given revision tag if any. Every edit
+     * is then seen by the clients holding the tag of the revision before it.
+     *
+     * @return the latest revision as it was before, or nothing if none is stored with this status and revision tag
+     */
+    @Override
+    public Optional<UpdateRevision> editLatestUpdateInfo(UpdateRevision revision, Optional<RevisionTag> tag) {
+        final Criteria criteria = where(USER_ID_KEY).is(revision.getUserId())
+                .and(UUID_KEY).is(revision.getUuid())
+                .and(UPDATE_STATUS_KEY).is(revision.getStatus());
+        tag.ifPresent(expected -> andRevisionTag(criteria, expected));
+        return Optional.ofNullable(operations.findAndModify(
+                query(criteria),
+                getContentUpdate(toDBObject(revision)).inc(EDIT_VERSION_KEY, 1),
+                FindAndModifyOptions.options().returnNew(false),
+                UpdateRevision.class,
+                LATEST_UPDATE_INFO_COLLECTION
+        ));
+    }
+
+    /**
+     * Give the revision of the history with the same revision id the content of the given revision in place. An edit
+     * carrying an edit version is only applied over an older one, so that concurrent edits copied out of order keep
+     * the history in line with the latest revision.
+     *
+     * @return the revision as edited, or nothing if the history has no such revision older than the edit
+     */
+    @Override
+    public Optional<UpdateRevision> editUpdateRevision(UpdateRevision revision) {
+        final Criteria criteria = where(USER_ID_KEY).is(revision.getUserId())
+                .and(UUID_KEY).is(revision.getUuid())
+                .and(REVISION_ID_KEY).is(revision.getRevisionId());
+        final Update update = getContentUpdate(toHistoryDBObject(revision));
+        if (revision.getEditVersion() != null) {
+            criteria.orOperator(where(EDIT_VERSION_KEY).exists(false), where(EDIT_VERSION_KEY).lt(revision.getEditVersion()));
+            update.set(EDIT_VERSION_KEY, revision.getEditVersion());
+        }
+        return Optional.ofNullable(operations.findAndModify(
+                query(criteria),
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                UpdateRevision.class
+        ));
+    }
+
+    /**
+     * A revision that has never been edited has no edit version stored.
+     */
+    private static void andRevisionTag(Criteria criteria, RevisionTag tag) {
+        criteria.and(REVISION_ID_KEY).is(tag.getRevisionId())
+                .and(EDIT_VERSION_KEY).is(tag.getEditVersion() == 0 ? null : tag.getEditVersion());
+    }
+
+    /**
+     * Copy the creation date of a revision just saved in the history to the latest revision stored for the update,
+     * if it is still this one.
+     */
+    @Override
+    public void completeLatestUpdateInfo(UpdateRevision revision) {
+        operations.updateFirst(
+                query(
+                        where(USER_ID_KEY).is(revision.getUserId())
+                                .and(UUID_KEY).is(revision.getUuid())
+                                .and(REVISION_ID_KEY).is(revision.getRevisionId())
+                ),
+                Update.update(DATE_KEY, revision.getCreationDate()),
+                LATEST_UPDATE_INFO_COLLECTION
+        );
+    }
+
+    /**
+     * Same as {@link #saveLatestUpdateInfo(UpdateRevision)}, but also replaces a latest revision with the same id,
+     * which a revise that lost a race against another writer may have left behind.
+     *
+     * @param revision the most recent revision of the update in the history
+     */
+    @Override
+    public void replaceLatestUpdateInfo(UpdateRevision revision) {
+        operations.remove(
+                query(
+                        where(USER_ID_KEY).is(revision.getUserId())
+                                .and(UUID_KEY).is(revision.getUuid())
+                                .and(REVISION_ID_KEY).lte(revision.getRevisionId())
+                ),
+                LATEST_UPDATE_INFO_COLLECTION
+        );
+        try {
+            operations.insert(revision, LATEST_UPDATE_INFO_COLLECTION);
+        } catch (DuplicateKeyException e) {
+            log.debug("A more recent revision of update " + revision.getUuid() + " is already stored");
+        }
+    }
+
+    /**
+     * Put back the given revision as the latest one of the update, provided the latest revision stored is still the
+     * given revision id, e.g. one allocated by a revise whose history save failed.
+     *
+     * @param revision   the most recent revision of the update in the history
+     * @param revisionId the revision id the latest revision was moved to
+     */
+    @Override
+    public void restoreLatestUpdateInfo(UpdateRevision revision, int revisionId) {
+        final WriteResult result = operations.remove(
+                query(
+                        where(USER_ID_KEY).is(revision.getUserId())
+                                .and(UUID_KEY).is(revision.getUuid())
+                                .and(REVISION_ID_KEY).is(revisionId)
                 ),
-                Aggregation.sort(Sort.Direction.DESC, DATE_KEY),
-                Aggregation.limit(1)
+                LATEST_UPDATE_INFO_COLLECTION
+        );
+        if (result.getN() == 0) {
+            return;
+        }
+        try {
+            operations.insert(revision, LATEST_UPDATE_INFO_COLLECTION);
+        } catch (DuplicateKeyException e) {
+            log.debug("A more recent revision of update " + revision.getUuid() + " is already stored");
+        }
+    }
+
+    /**
+     * Insert the revisions in the history with a single unordered bulk write, so that one refused revision does not
+     * prevent the others from being written. The creation date is set here, the bulk write bypassing auditing.
+     */
+    @Override
+    public BulkInsertResult insertUpdateRevisions(List<UpdateRevision> revisions) {
+        if (revisions.isEmpty()) {
+            return BulkInsertResult.empty();
+        }
+        final Date now = new Date();
+        final List<UpdateRevision> documents = revisions.stream()
+                .map(revision -> revision.toBuilder().id(new ObjectId().toString()).creationDate(now).build())
+                .collect(Collectors.toList());
+        final BulkWriteOperation bulk = operations.getCollection(operations.getCollectionName(UpdateRevision.class))
+                .initializeUnorderedBulkOperation();
+        documents.forEach(document -> bulk.insert(toHistoryDBObject(document)));
+
+        final Map<Integer, BulkWriteError> errors = new HashMap<>();
+        try {
+            bulk.execute();
+        } catch (BulkWriteException e) {
+            if (e.getWriteConcernError() != null) {
+                throw e;
+            }
+            e.getWriteErrors().forEach(error -> errors.put(error.getIndex(), error));
+        }
+
+        final List<UpdateRevision> inserted = new ArrayList<>(documents.size());
+        final List<BulkInsertResult.Conflict> conflicts = new ArrayList<>(errors.size());
+        for (int i = 0; i < documents.size(); i++) {
+            final BulkWriteError error = errors.get(i);
+            if (error == null) {
+                inserted.add(documents.get(i));
+            } else {
+                conflicts.add(new BulkInsertResult.Conflict(revisions.get(i), error.getCode(), error.getMessage()));
+            }
+        }
+        return new BulkInsertResult(inserted, conflicts);
+    }
+
+    /**
+     * Same as {@link #saveLatestUpdateInfo(UpdateRevision)} for a batch of revisions, with one bulk write for the
+     * removals and one for the insertions.
+     *
+     * @param revisions revisions that have just been saved in the history, at most one per update
+     */
+    @Override
+    public void saveLatestUpdateInfo(List<UpdateRevision> revisions) {
+        if (revisions.isEmpty()) {
+            return;
+        }
+        final BulkWriteOperation removals = operations.getCollection(LATEST_UPDATE_INFO_COLLECTION).initializeUnorderedBulkOperation();
+        final BulkWriteOperation insertions = operations.getCollection(LATEST_UPDATE_INFO_COLLECTION).initializeUnorderedBulkOperation();
+        for (UpdateRevision revision : revisions) {
+            removals.find(
+                    new BasicDBObject(USER_ID_KEY, revision.getUserId())
+                            .append(UUID_KEY, revision.getUuid())
+                            .append(REVISION_ID_KEY, new BasicDBObject("$lt", revision.getRevisionId()))
+            ).remove();
+            insertions.insert(toDBObject(revision));
+        }
+        removals.execute();
+        try {
+            insertions.execute();
+        } catch (BulkWriteException e) {
+            if (e.getWriteConcernError() != null) {
+                throw e;
+            }
+            for (BulkWriteError error : e.getWriteErrors()) {
+                final UUID uuid = revisions.get(error.getIndex()).getUuid();
+                if (error.getCode() == DUPLICATE_KEY_CODE) {
+                    log.debug("A more recent revision of update " + uuid + " is already stored");
+                } else {
+                    log.warn("Could not store the latest revision of update " + uuid + ": " + error.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the latest revision of every update from the history, one user at a time. The grouping only keeps the
+     * identifier of each latest revision, which are then loaded with a single lookup.
+     *
+     * @return the number of updates processed
+     */
+    @Override
+    public int rebuildLatestUpdateInfo() {
+        int count = 0;
+        final List<?> userIds = operations.getCollection(operations.getCollectionName(UpdateRevision.class)).distinct(USER_ID_KEY);
+        for (Object userId : userIds) {
+            final TypedAggregation<UpdateRevision> aggregation = Aggregation.newAggregation(
+                    UpdateRevision.class,
+                    match(where(USER_ID_KEY).is(userId)),
+                    Aggregation.sort(Sort.Direction.DESC, DATE_KEY),
+                    Aggregation.group(UUID_KEY).first("id").as(LATEST_ID_KEY)
+            );
+            final List<Object> latestIds = operations.aggregate(aggregation, DBObject.class).getMappedResults().stream()
+                    .map(latest -> latest.get(LATEST_ID_KEY))
+                    .collect(Collectors.toList());
+            for (UpdateRevision revision : operations.find(query(where(ID_KEY).in(latestIds)), UpdateRevision.class)) {
+                saveLatestUpdateInfo(revision);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Store the other segment as a segment id of its own in the documents written before it was, one batch at a time.
+     * The latest revisions are migrated first, since they are the only ones filtered by segment.
+     *
+     * @return the number of documents migrated
+     */
+    @Override
+    public int migrateOtherSegment(int batchSize) {
+        final DBObject withoutSegment = new BasicDBObject(SEGMENT_ID_KEY, null);
+        final DBObject toOtherSegment = new BasicDBObject("$set", new BasicDBObject(SEGMENT_ID_KEY, OtherSegment.ID));
+        int count = 0;
+        for (String collectionName : Arrays.asList(
+                LATEST_UPDATE_INFO_COLLECTION, operations.getCollectionName(UpdateRevision.class), ARCHIVE_COLLECTION
+        )) {
+            final DBCollection collection = operations.getCollection(collectionName);
+            List<Object> ids;
+            do {
+                ids = collection.find(withoutSegment, new BasicDBObject(ID_KEY, 1)).limit(batchSize).toArray().stream()
+                        .map(document -> document.get(ID_KEY))
+                        .collect(Collectors.toList());
+                if (!ids.isEmpty()) {
+                    final DBObject batch = new BasicDBObject(ID_KEY, new BasicDBObject("$in", ids)).append(SEGMENT_ID_KEY, null);
+                    count += collection.update(batch, toOtherSegment, false, true).getN();
+                }
+            } while (ids.size() == batchSize);
+        }
+        return count;
+    }
+
+    /**
+     * Move the revisions superseded by more than {@code keep} revisions of the given updates from the history to the
+     * archive. Documents are copied as is, identifier included, before being removed from the history, so that an
+     * interrupted run only leaves duplicates that the next run ignores.
+     *
+     * @param heads  the latest revision of each update to archive
+     * @param keep   the number of revisions to keep in the history for each update, the latest one included
+     * @param before only revisions created before this date are archived
+     * @return the number of revisions moved to the archive
+     */
+    @Override
+    public int archiveUpdateRevisions(List<UpdateRevision> heads, int keep, Date before) {
+        final List<Criteria> superseded = heads.stream()
+                .filter(head -> head.getRevisionId() > keep)
+                .map(head -> where(USER_ID_KEY).is(head.getUserId())
+                        .and(UUID_KEY).is(head.getUuid())
+                        .and(REVISION_ID_KEY).lte(head.getRevisionId() - keep))
+                .collect(Collectors.toList());
+        if (superseded.isEmpty()) {
+            return 0;
+        }
+        final Query query = query(new Criteria().andOperator(
+                new Criteria().orOperator(superseded.toArray(new Criteria[]{})),
+                where(DATE_KEY).lt(before)
+        ));
+        final List<DBObject> documents = operations.getCollection(operations.getCollectionName(UpdateRevision.class))
+                .find(query.getQueryObject())
+                .toArray();
+        if (documents.isEmpty()) {
+            return 0;
+        }
+
+        final BulkWriteOperation insertions = operations.getCollection(ARCHIVE_COLLECTION).initializeUnorderedBulkOperation();
+        documents.forEach(insertions::insert);
+        try {
+            insertions.execute();
+        } catch (BulkWriteException e) {
+            if (e.getWriteConcernError() != null) {
+                throw e;
+            }
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCode() != DUPLICATE_KEY_CODE) {
+                    throw e;
+                }
+            }
+        }
+
+        final List<Object> ids = documents.stream().map(document -> document.get(ID_KEY)).collect(Collectors.toList());
+        operations.getCollection(operations.getCollectionName(UpdateRevision.class))
+                .remove(new BasicDBObject(ID_KEY, new BasicDBObject("$in", ids)));
+        return documents.size();
+    }
+
+    /**
+     * Get the revisions of an update, the most recent first, from the history then from the archive.
+     */
+    @Override
+    public Page<UpdateRevision> getUpdateHistory(String userId, UUID uuid, Pageable pageable) {
+        final Criteria criteria = where(USER_ID_KEY).is(userId).and(UUID_KEY).is(uuid);
+        final String historyCollection = operations.getCollectionName(UpdateRevision.class);
+        final long historyCount = operations.count(query(criteria), historyCollection);
+        final long archiveCount = operations.count(query(criteria), ARCHIVE_COLLECTION);
+
+        final List<UpdateRevision> content = new ArrayList<>(pageable.getPageSize());
+        if (pageable.getOffset() < historyCount) {
+            content.addAll(operations.find(
+                    query(criteria).with(new Sort(Sort.Direction.DESC, REVISION_ID_KEY))
+                            .skip(pageable.getOffset())
+                            .limit(pageable.getPageSize()),
+                    UpdateRevision.class,
+                    historyCollection
+            ));
+        }
+        final int remaining = pageable.getPageSize() - content.size();
+        if (remaining > 0 && archiveCount > 0) {
+            content.addAll(operations.find(
+                    query(criteria).with(new Sort(Sort.Direction.DESC, REVISION_ID_KEY))
+                            .skip((int) Math.max(0, pageable.getOffset() - historyCount))
+                            .limit(remaining),
+                    UpdateRevision.class,
+                    ARCHIVE_COLLECTION
+            ));
+        }
+        return new PageImpl<>(content, pageable, historyCount + archiveCount);
+    }
+
+    private List<Criteria> getLatestUpdateInfoCriteria(Optional<String> userId, List<String> statuses, List<String> segmentIds) {
+        // Basic criteria
+        final List<Criteria> criteria = new ArrayList<>();
+        userId.ifPresent(content -> criteria.add(where(USER_ID_KEY).is(content)));
+
+        // Handle statuses
+        if (!statuses.isEmpty()) {
+            final List<UpdateStatus> statusList = statuses.stream().map(UpdateStatus::fromName).collect(Collectors.toList());
+            criteria.add(where(UPDATE_STATUS_KEY).in(statusList));
+        }
+
+        // Handle segments, the other segment being stored as a segment id of its own
+        if (!segmentIds.isEmpty()) {
+            criteria.add(where(SEGMENT_ID_KEY).in(segmentIds));
+        }
+        return criteria;
+    }
+
+    private Criteria andOperator(List<Criteria> criteria) {
+        return criteria.isEmpty() ? new Criteria() : new Criteria().andOperator(criteria.toArray(new Criteria[]{}));
+    }
+
+    /**
+     * Set every field of the revision document but its identity, revision id and creation date, and unset the missing
+     * ones, the content hash included.
+     */
+    private Update getContentUpdate(DBObject content) {
+        final Update update = new Update();
+        operations.getConverter().getMappingContext().getPersistentEntity(UpdateRevision.class).doWithProperties(
+                (PropertyHandler<MongoPersistentProperty>) property -> {
+                    final String field = property.getFieldName();
+                    if (property.isIdProperty() || REVISED_KEYS_EXCLUSIONS.contains(field)) {
+                        return;
+                    }
+                    if (content.containsField(field)) {
+                        update.set(field, content.get(field));
+                    } else {
+                        update.unset(field);
+                    }
+                }
         );
+        if (content.containsField(UpdateContentRepository.CONTENT_HASH_KEY)) {
+            update.set(UpdateContentRepository.CONTENT_HASH_KEY, content.get(UpdateContentRepository.CONTENT_HASH_KEY));
+        } else {
+            update.unset(UpdateContentRepository.CONTENT_HASH_KEY);
+        }
+        return update;
+    }
+
+    /**
+     * Map the revision as the latest revisions are stored, with their content inline next to its hash.
+     */
+    private DBObject toDBObject(UpdateRevision revision) {
+        final DBObject document = toStoredDBObject(revision);
+        updateContentRepository.reference(document);
+        return document;
+    }
+
+    /**
+     * Map the revision as the revisions of the history are stored, with their content stored aside.
+     */
+    private DBObject toHistoryDBObject(UpdateRevision revision) {
+        final DBObject document = toStoredDBObject(revision);
+        updateContentRepository.externalize(document);
+        return document;
+    }
 
-        return Optional.ofNullable(operations.aggregate(aggregation, UpdateRevision.class).getUniqueMappedResult());
-    }
-
-    private AggregationOperation getProjectOperation() {
-        return Aggregation.project("updateInfo")
-                .and("updateInfo._id").as("_id")
-                .and("updateInfo.uuid").as("uuid")
-                .and("updateInfo.packageId").as("packageId")
-                .and("updateInfo.segmentId").as("segmentId")
-                .and("updateInfo.name").as("name")
-                .and("updateInfo.additionalProperties").as("additionalProperties")
-                .and("updateInfo.userId").as("userId")
-                .and("updateInfo.description").as("description")
-                .and("updateInfo.revisionId").as("revisionId")
-                .and("updateInfo.creationDate").as("creationDate")
-                .and("updateInfo.scheduledDate").as("scheduledDate")
-                .and("updateInfo.status").as("status");
+    private DBObject toStoredDBObject(UpdateRevision revision) {
+        final DBObject document = new BasicDBObject();
+        operations.getConverter().write(revision, document);
+        OtherSegment.toStored(document);
+        return document;
+    }
+
+    /**
+     * Load the whole latest revisions of the given slim ones with a single lookup, in the same order. A revision
+     * superseded in the meantime is replaced with the one superseding it.
+     */
+    private List<UpdateRevision> getFullRevisions(List<UpdateRevision> slimRevisions) {
+        if (slimRevisions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<Object> ids = slimRevisions.stream()
+                .map(revision -> ObjectId.isValid(revision.getId()) ? new ObjectId(revision.getId()) : revision.getId())
+                .collect(Collectors.toList());
+        final Map<UUID, UpdateRevision> revisions = new HashMap<>();
+        operations.find(query(where(ID_KEY).in(ids)), UpdateRevision.class, LATEST_UPDATE_INFO_COLLECTION)
+                .forEach(revision -> revisions.put(revision.getUuid(), revision));
+        // Look the revisions superseded since up by user and uuid, so that the unique index of the latest revisions serves it
+        final Map<String, List<UUID>> superseded = slimRevisions.stream()
+                .filter(revision -> !revisions.containsKey(revision.getUuid()))
+                .collect(Collectors.groupingBy(UpdateRevision::getUserId, Collectors.mapping(UpdateRevision::getUuid, Collectors.toList())));
+        superseded.forEach((userId, uuids) -> operations.find(
+                query(where(USER_ID_KEY).is(userId).and(UUID_KEY).in(uuids)),
+                UpdateRevision.class,
+                LATEST_UPDATE_INFO_COLLECTION
+        ).forEach(revision -> revisions.put(revision.getUuid(), revision)));
+        return slimRevisions.stream()
+                .map(revision -> revisions.get(revision.getUuid()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private static class UpdateRevisionPage {
+        private final List<Count> total;
+        private final List<UpdateRevision> content;
+
+        public UpdateRevisionPage(List<Count> total, List<UpdateRevision> content) {
+            this.total = total == null ? Collections.emptyList() : total;
+            this.content = content == null ? Collections.emptyList() : content;
+        }
     }
 
     private static class Count {
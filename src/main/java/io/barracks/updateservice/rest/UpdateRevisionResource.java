@@ -24,30 +24,45 @@
 
 package io.barracks.updateservice.rest;
 
+import io.barracks.updateservice.exception.StaleRevisionException;
 import io.barracks.updateservice.manager.UpdateRevisionManager;
+import io.barracks.updateservice.model.RevisionTag;
+import io.barracks.updateservice.model.UpdateCounts;
+import io.barracks.updateservice.model.UpdateCursor;
 import io.barracks.updateservice.model.UpdateEntity;
 import io.barracks.updateservice.model.UpdateRevision;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.web.PagedResourcesAssembler;
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.PagedResources;
 import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/updates")
 @SuppressWarnings("unused")
 public class UpdateRevisionResource {
 
+    private static final String ANY_ENTITY_TAG = "*";
+    private static final ResponseEntity<UpdateRevision> NO_PUBLISHED_UPDATE = new ResponseEntity<>(HttpStatus.NO_CONTENT);
+
     private final UpdateRevisionManager manager;
     private final PagedResourcesAssembler<UpdateRevision> assembler;
 
@@ -64,31 +79,51 @@ public class UpdateRevisionResource {
         return manager.createUpdate(entity.toUpdateRevision());
     }
 
-    @ResponseBody
-    @ResponseStatus(HttpStatus.OK)
+    /**
+     * Revise the update. With an {@code If-Match} header carrying the entity tag of the revision being edited, the
+     * revision is only saved if no other one was saved since, otherwise 412 Precondition Failed is returned.
+     * The entity tag of an update is its revision id, followed by its edit version once it has been edited in place as a
+     * draft, returned in the {@code ETag} header.
+     */
     @RequestMapping(method = RequestMethod.PUT, value = "/{updateUuid}")
-    public UpdateRevision reviseUpdate(
+    public ResponseEntity<UpdateRevision> reviseUpdate(
             @Validated() @RequestBody UpdateEntity entity,
+            @PathVariable("updateUuid") String updateUuid,
+            @RequestParam(value = "userId") String userId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    ) {
+        final UpdateRevision revision = entity.toUpdateRevision()
+                .toBuilder()
+                .uuid(UUID.fromString(updateUuid))
+                .userId(userId)
+                .build();
+        if (StringUtils.isEmpty(ifMatch) || ANY_ENTITY_TAG.equals(ifMatch.trim())) {
+            return withEntityTag(manager.reviseUpdate(revision));
+        }
+        return withEntityTag(manager.reviseUpdate(revision, parseEntityTag(ifMatch)));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/{updateUuid}")
+    public ResponseEntity<UpdateRevision> getUpdateByUuid(
             @PathVariable("updateUuid") String updateUuid,
             @RequestParam(value = "userId") String userId
     ) {
-        return manager.reviseUpdate(
-                entity.toUpdateRevision()
-                        .toBuilder()
-                        .uuid(UUID.fromString(updateUuid))
-                        .userId(userId)
-                        .build()
-        );
+        return withEntityTag(manager.getUpdateByUuid(UUID.fromString(updateUuid), userId));
     }
 
+    /**
+     * Every revision of an update, the most recent first, archived revisions included.
+     */
     @ResponseBody
     @ResponseStatus(HttpStatus.OK)
-    @RequestMapping(method = RequestMethod.GET, value = "/{updateUuid}")
-    public UpdateRevision getUpdateByUuid(
+    @RequestMapping(method = RequestMethod.GET, value = "/{updateUuid}/revisions")
+    public PagedResources<Resource<UpdateRevision>> getUpdateHistory(
+            Pageable pageable,
             @PathVariable("updateUuid") String updateUuid,
             @RequestParam(value = "userId") String userId
     ) {
-        return manager.getUpdateByUuid(UUID.fromString(updateUuid), userId);
+        Page<UpdateRevision> page = manager.getUpdateHistory(UUID.fromString(updateUuid), userId, pageable);
+        return assembler.toResource(page);
     }
 
     @ResponseBody
@@ -104,17 +139,84 @@ public class UpdateRevisionResource {
         return assembler.toResource(page);
     }
 
+    /**
+     * Cursor mode of the update list, selected by the {@code cursor} parameter: an empty cursor starts from
+     * the most recent update, and the {@code next} link carries the cursor of the following slice.
+     * Only the page size is read from the pageable.
+     */
     @ResponseBody
     @ResponseStatus(HttpStatus.OK)
+    @RequestMapping(method = RequestMethod.GET, params = "cursor")
+    public Resources<Resource<UpdateRevision>> getAllUpdatesAfterCursor(
+            Pageable pageable,
+            @RequestParam(value = "cursor") String cursor,
+            @RequestParam(value = "userId") String userId,
+            @RequestParam(value = "status", required = false, defaultValue = "") List<String> statuses,
+            @RequestParam(value = "segmentId", required = false, defaultValue = "") List<String> segmentIds
+    ) {
+        final Optional<UpdateCursor> after = StringUtils.isEmpty(cursor) ? Optional.empty() : Optional.of(UpdateCursor.fromToken(cursor));
+        final Slice<UpdateRevision> slice = manager.getAllUpdates(after, pageable.getPageSize(), userId, statuses, segmentIds);
+        final List<Link> links = new ArrayList<>();
+        if (slice.hasNext()) {
+            final UpdateCursor next = UpdateCursor.of(slice.getContent().get(slice.getNumberOfElements() - 1));
+            links.add(new Link(
+                    ServletUriComponentsBuilder.fromCurrentRequest()
+                            .replaceQueryParam("cursor", next.toToken())
+                            .replaceQueryParam("page")
+                            .build()
+                            .toUriString(),
+                    Link.REL_NEXT
+            ));
+        }
+        return new Resources<>(slice.getContent().stream().map(Resource::new).collect(Collectors.toList()), links);
+    }
+
+    private static ResponseEntity<UpdateRevision> withEntityTag(UpdateRevision revision) {
+        if (revision.getRevisionId() == null) {
+            return ResponseEntity.ok(revision);
+        }
+        return ResponseEntity.ok().eTag("\"" + RevisionTag.of(revision) + "\"").body(revision);
+    }
+
+    /**
+     * Read the revision tag from an entity tag sent back by a client. A tag that is not one of ours cannot match the
+     * current revision.
+     */
+    private static RevisionTag parseEntityTag(String tag) {
+        final String value = tag.trim().replaceFirst("^W/", "").replace("\"", "");
+        try {
+            return RevisionTag.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new StaleRevisionException("Entity tag " + tag + " does not match any revision");
+        }
+    }
+
+    /**
+     * Answer 204 No Content when nothing is published, without going through the exception resolvers:
+     * this is what every device of an empty segment gets on each poll.
+     */
     @RequestMapping(method = RequestMethod.GET, value = "/latest")
-    public UpdateRevision getLatestPublishedUpdateForSegment(
+    public ResponseEntity<UpdateRevision> getLatestPublishedUpdateForSegment(
             @RequestParam(value = "userId") String userId,
             @RequestParam(value = "segmentId") Optional<String> segmentId
     ) {
+        final Optional<UpdateRevision> update;
         if (segmentId.isPresent() && !StringUtils.isEmpty(segmentId.get())) {
-            return manager.getLatestPublishedUpdateForSegment(userId, segmentId.get());
+            update = manager.getLatestPublishedUpdateForSegment(userId, segmentId.get());
         } else {
-            return manager.getLatestPublishedUpdateForOtherSegment(userId);
+            update = manager.getLatestPublishedUpdateForOtherSegment(userId);
         }
+        return update.map(ResponseEntity::ok).orElse(NO_PUBLISHED_UPDATE);
+    }
+
+    /**
+     * Number of updates of the user in each status, overall and per segment, from the counters maintained as the
+     * updates change.
+     */
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @RequestMapping(method = RequestMethod.GET, value = "/counts")
+    public UpdateCounts getUpdateCounts(@RequestParam(value = "userId") String userId) {
+        return manager.getUpdateCounts(userId);
     }
 }
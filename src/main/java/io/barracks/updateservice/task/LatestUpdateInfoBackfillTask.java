@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.task;
+
+import io.barracks.updateservice.repository.CompletedTaskRepository;
+import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+
+/**
+ * One-shot task building the latest revision of every update from the existing history, for a database which was
+ * populated before the latest revisions were stored. It runs before the other backfills since they read the latest
+ * revisions. Its completion is recorded in the database and it is skipped on the next starts, since rebuilding reads
+ * the whole history. Nodes starting together may all run it, which is harmless as it never replaces a latest
+ * revision already stored.
+ */
+@Component
+@Order(LatestUpdateInfoBackfillTask.ORDER)
+@ConditionalOnProperty("io.barracks.updateservice.task.LatestUpdateInfoBackfillTask.enabled")
+public class LatestUpdateInfoBackfillTask implements CommandLineRunner {
+
+    static final int ORDER = 0;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private UpdateRevisionRepository updateRevisionRepository;
+
+    @Autowired
+    private CompletedTaskRepository completedTaskRepository;
+
+    @Override
+    public void run(String... args) {
+        final String name = this.getClass().getSimpleName();
+        if (completedTaskRepository.isCompleted(name)) {
+            log.debug("The latest revisions have already been rebuilt, skipping " + name);
+            return;
+        }
+        final int count = updateRevisionRepository.rebuildLatestUpdateInfo();
+        completedTaskRepository.complete(name, new Date());
+        log.info("Rebuilt the latest revision of " + count + " updates");
+    }
+
+}
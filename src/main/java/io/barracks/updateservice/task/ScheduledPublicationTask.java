@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.task;
+
+import io.barracks.updateservice.manager.PublisherPartitionManager;
+import io.barracks.updateservice.manager.ScheduledPublicationQueue;
+import io.barracks.updateservice.manager.UpdateRevisionManager;
+import io.barracks.updateservice.model.UpdateRevision;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Fires the publications of the in-memory queue, at most one tolerance period after they are due.
+ * Only the publications of the partitions owned by this node are fired. The node that scheduled an update only queues
+ * it if it owns its partition, so every run first queues the transitions due within the next tolerance period that
+ * were not swept yet, which is how the owner learns on time about updates scheduled on other nodes.
+ */
+@Component
+public class ScheduledPublicationTask {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ScheduledPublicationQueue scheduledPublicationQueue;
+
+    @Autowired
+    private UpdateRevisionManager updateRevisionManager;
+
+    @Autowired
+    private PublisherPartitionManager publisherPartitionManager;
+
+    @Value("${io.barracks.updateservice.task.ScheduledPublicationTask.tolerance}")
+    private long tolerance;
+
+    private Date sweptUntil;
+
+    @Scheduled(fixedDelayString = "${io.barracks.updateservice.task.ScheduledPublicationTask.tolerance}")
+    public synchronized void run() {
+        if (!publisherPartitionManager.holdPartitions()) {
+            sweptUntil = null;
+            return;
+        }
+        final Date now = new Date();
+        final Date until = new Date(now.getTime() + tolerance);
+        try {
+            updateRevisionManager.scheduleUpcomingPublications(sweptUntil == null ? now : sweptUntil, until, publisherPartitionManager::owns);
+            sweptUntil = until;
+        } catch (RuntimeException e) {
+            log.warn("Could not queue the publications scheduled until " + until, e);
+        }
+        final List<UpdateRevision> polledUpdates = scheduledPublicationQueue.pollDue(now);
+        if (polledUpdates.isEmpty()) {
+            return;
+        }
+        final Predicate<String> owned = publisherPartitionManager.checkOwnership();
+        final List<UpdateRevision> dueUpdates = polledUpdates.stream()
+                .filter(update -> owned.test(update.getUserId()))
+                .collect(Collectors.toList());
+        if (dueUpdates.isEmpty()) {
+            return;
+        }
+        try {
+            updateRevisionManager.publishScheduledUpdates(dueUpdates);
+        } catch (RuntimeException e) {
+            log.warn("Could not publish " + dueUpdates.size() + " scheduled updates, leaving them to the reconciliation", e);
+        }
+    }
+
+}
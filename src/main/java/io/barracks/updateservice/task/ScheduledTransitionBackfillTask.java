@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.task;
+
+import io.barracks.updateservice.model.ScheduledTransition;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.repository.ScheduledTransitionRepository;
+import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * One-shot task recording the pending transition of every update currently scheduled, for a database which was
+ * populated before the transitions were stored. It runs on every start since a transition already recorded is kept
+ * as is, once the latest revisions it reads from have been backfilled.
+ */
+@Component
+@Order(LatestUpdateInfoBackfillTask.ORDER + 1)
+@ConditionalOnProperty("io.barracks.updateservice.task.ScheduledTransitionBackfillTask.enabled")
+public class ScheduledTransitionBackfillTask implements CommandLineRunner {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private UpdateRevisionRepository updateRevisionRepository;
+
+    @Autowired
+    private ScheduledTransitionRepository scheduledTransitionRepository;
+
+    @Override
+    public void run(String... args) {
+        final Date until = new Date(Long.MAX_VALUE);
+        Optional<UpdateRevision> last = Optional.empty();
+        Slice<UpdateRevision> slice;
+        int count = 0;
+        do {
+            slice = updateRevisionRepository.getAllDueScheduledUpdateInfo(until, last, 100);
+            for (UpdateRevision update : slice.getContent()) {
+                scheduledTransitionRepository.save(ScheduledTransition.of(update));
+                count++;
+            }
+            if (slice.hasContent()) {
+                last = Optional.of(slice.getContent().get(slice.getNumberOfElements() - 1));
+            }
+        } while (slice.hasNext());
+        log.info("Recorded the pending transition of " + count + " scheduled updates");
+    }
+
+}
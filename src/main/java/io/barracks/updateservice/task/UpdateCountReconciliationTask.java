@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.task;
+
+import io.barracks.updateservice.manager.PublisherPartitionManager;
+import io.barracks.updateservice.manager.UpdateCountReconciler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically repairs the update counters that drifted from the latest revisions.
+ * Each node only reconciles the users of the partitions it owns.
+ */
+@Component
+public class UpdateCountReconciliationTask {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private UpdateCountReconciler updateCountReconciler;
+
+    @Autowired
+    private PublisherPartitionManager publisherPartitionManager;
+
+    @Scheduled(fixedDelayString = "${io.barracks.updateservice.task.UpdateCountReconciliationTask.fixedDelay}")
+    public synchronized void run() {
+        if (!publisherPartitionManager.holdPartitions()) {
+            return;
+        }
+        try {
+            final int count = updateCountReconciler.reconcileCounts(publisherPartitionManager.checkOwnership());
+            if (count > 0) {
+                log.warn("Repaired the drifted update counters of " + count + " users");
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not reconcile the update counters", e);
+        }
+    }
+
+}
@@ -24,20 +24,46 @@
 
 package io.barracks.updateservice.task;
 
+import io.barracks.updateservice.manager.FairScheduledPublisher;
+import io.barracks.updateservice.manager.PublisherPartitionManager;
 import io.barracks.updateservice.manager.UpdateRevisionManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.Date;
+
+/**
+ * Reconciliation with the database: publishes the updates the in-memory queue missed, and queues the ones due
+ * before the next run. The horizon must be longer than the delay between two runs.
+ * Every node runs it for the users of the partitions it owns.
+ */
 @Component
 public class UpdatePublisherTask {
 
     @Autowired
     private UpdateRevisionManager updateRevisionManager;
 
+    @Autowired
+    private FairScheduledPublisher fairScheduledPublisher;
+
+    @Autowired
+    private PublisherPartitionManager publisherPartitionManager;
+
+    @Value("${io.barracks.updateservice.task.UpdatePublisherTask.horizon}")
+    private long horizon;
+
     @Scheduled(fixedDelayString = "${io.barracks.updateservice.task.UpdatePublisherTask.fixedDelay}")
     public synchronized void run() {
-        updateRevisionManager.publishDueScheduledUpdates();
+        if (!publisherPartitionManager.holdPartitions()) {
+            return;
+        }
+        fairScheduledPublisher.publishDueScheduledUpdates();
+        updateRevisionManager.scheduleUpcomingPublications(
+                new Date(System.currentTimeMillis() + horizon),
+                publisherPartitionManager::owns
+        );
     }
 
 }
@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CatchUpThrottleTest {
+
+    @Test
+    public void acquire_whenNothingRecorded_shouldStartWithATenthOfTheMaximumBatchSize() {
+        // Given
+        final CatchUpThrottle throttle = new CatchUpThrottle(1000.0, 100L, 50);
+
+        // When
+        final int size = throttle.acquire();
+
+        // Then
+        assertThat(size).isEqualTo(5);
+    }
+
+    @Test
+    public void record_whenLatencyIsBelowTarget_shouldGrowTheBatchSizeUpToTheMaximum() {
+        // Given
+        final CatchUpThrottle throttle = new CatchUpThrottle(1000.0, 100L, 50);
+
+        // When
+        throttle.record(5, 10L);
+        final int grown = throttle.getBatchSize();
+        throttle.record(48, 10L);
+
+        // Then
+        assertThat(grown).isEqualTo(10);
+        assertThat(throttle.getBatchSize()).isEqualTo(50);
+    }
+
+    @Test
+    public void record_whenLatencyIsAboveTarget_shouldHalveTheBatchSize() {
+        // Given
+        final CatchUpThrottle throttle = new CatchUpThrottle(1000.0, 100L, 50);
+
+        // When
+        throttle.record(40, 200L);
+        final int halved = throttle.getBatchSize();
+        throttle.record(1, 200L);
+
+        // Then
+        assertThat(halved).isEqualTo(20);
+        assertThat(throttle.getBatchSize()).isEqualTo(1);
+    }
+}
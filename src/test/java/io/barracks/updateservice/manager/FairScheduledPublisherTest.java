@@ -0,0 +1,392 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import io.barracks.updateservice.model.ScheduledTransition;
+import io.barracks.updateservice.model.TenantBacklog;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.repository.ScheduledTransitionRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static io.barracks.updateservice.utils.UpdateRevisionUtils.getCreatedUpdateRevisionBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FairScheduledPublisherTest {
+
+    private static final int QUOTA = 2;
+    private static final long CATCH_UP_THRESHOLD = 60000L;
+
+    @Mock
+    private ScheduledTransitionRepository scheduledTransitionRepository;
+    @Mock
+    private UpdateRevisionManager updateRevisionManager;
+    @Mock
+    private PublisherPartitionManager publisherPartitionManager;
+    private FairScheduledPublisher publisher;
+    private final Map<String, UpdateRevision> scheduledUpdates = new HashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        publisher = new FairScheduledPublisher(
+                scheduledTransitionRepository,
+                updateRevisionManager,
+                publisherPartitionManager,
+                2,
+                QUOTA,
+                CATCH_UP_THRESHOLD,
+                1000.0,
+                1000L
+        );
+        when(publisherPartitionManager.holdPartitions()).thenReturn(true);
+        when(publisherPartitionManager.owns(anyString())).thenReturn(true);
+        when(publisherPartitionManager.checkOwnership()).thenReturn(userId -> true);
+        when(updateRevisionManager.getScheduledUpdates(anyListOf(ScheduledTransition.class))).thenAnswer(invocation ->
+                ((List<ScheduledTransition>) invocation.getArguments()[0]).stream()
+                        .map(transition -> scheduledUpdates.get(transition.getId()))
+                        .collect(Collectors.toList())
+        );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        publisher.shutdown();
+    }
+
+    @Test
+    public void publishDueScheduledUpdates_whenCalled_shouldOnlyAskForUpdatesDueNow() {
+        // Given
+        final Date before = new Date();
+        final ArgumentCaptor<Date> date = ArgumentCaptor.forClass(Date.class);
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Collections.emptyList());
+
+        // When
+        publisher.publishDueScheduledUpdates();
+
+        // Then
+        verify(scheduledTransitionRepository).getBacklogs(date.capture());
+        assertThat(date.getValue()).isBetween(before, new Date(), true, true);
+    }
+
+    @Test
+    public void publishDueScheduledUpdates_whenNoScheduledUpdateIsDue_shouldPublishNone() {
+        // Given
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Collections.emptyList());
+
+        // When
+        publisher.publishDueScheduledUpdates();
+
+        // Then
+        verify(scheduledTransitionRepository, never()).getDueTransitions(any(Date.class), anyString(), any(Optional.class), anyInt());
+        verify(updateRevisionManager, never()).publishScheduledUpdates(anyListOf(UpdateRevision.class));
+    }
+
+    @Test
+    public void publishDueScheduledUpdates_whenSeveralUsersHaveDueUpdates_shouldPublishOneQuotaPerUserAndPerRound() {
+        // Given
+        final String bigUserId = UUID.randomUUID().toString();
+        final String smallUserId = UUID.randomUUID().toString();
+        final UpdateRevision big1 = buildDueUpdate(bigUserId);
+        final UpdateRevision big2 = buildDueUpdate(bigUserId);
+        final UpdateRevision big3 = buildDueUpdate(bigUserId);
+        final UpdateRevision small1 = buildDueUpdate(smallUserId);
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Arrays.asList(
+                new TenantBacklog(bigUserId, 3, big1.getScheduledDate()),
+                new TenantBacklog(smallUserId, 1, small1.getScheduledDate())
+        ));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(bigUserId), eq(Optional.empty()), eq(QUOTA)))
+                .thenReturn(slice(true, big1, big2));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(bigUserId), eq(Optional.of(ScheduledTransition.of(big2))), eq(QUOTA)))
+                .thenReturn(slice(false, big3));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(smallUserId), eq(Optional.empty()), eq(QUOTA)))
+                .thenReturn(slice(false, small1));
+
+        // When
+        publisher.publishDueScheduledUpdates();
+
+        // Then
+        verify(updateRevisionManager).publishScheduledUpdates(Arrays.asList(big1, big2));
+        verify(updateRevisionManager).publishScheduledUpdates(Collections.singletonList(big3));
+        verify(updateRevisionManager).publishScheduledUpdates(Collections.singletonList(small1));
+        verify(scheduledTransitionRepository, times(1)).getDueTransitions(any(Date.class), eq(smallUserId), any(Optional.class), anyInt());
+    }
+
+    @Test
+    public void publishDueScheduledUpdates_whenAUserBatchFails_shouldStillPublishTheOtherUsers() {
+        // Given
+        final String failingUserId = UUID.randomUUID().toString();
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision update = buildDueUpdate(userId);
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Arrays.asList(
+                new TenantBacklog(failingUserId, 1, update.getScheduledDate()),
+                new TenantBacklog(userId, 1, update.getScheduledDate())
+        ));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(failingUserId), any(Optional.class), anyInt()))
+                .thenThrow(new IllegalStateException());
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(userId), any(Optional.class), anyInt()))
+                .thenReturn(slice(false, update));
+
+        // When
+        publisher.publishDueScheduledUpdates();
+
+        // Then
+        verify(updateRevisionManager).publishScheduledUpdates(Collections.singletonList(update));
+    }
+
+    @Test
+    public void metrics_whenUsersHaveBeenPublished_shouldExposeTheirBacklogAndLagAsAggregates() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String pendingUserId = UUID.randomUUID().toString();
+        final UpdateRevision update = buildDueUpdate(userId);
+        final UpdateRevision pending1 = buildDueUpdate(pendingUserId);
+        final UpdateRevision pending2 = buildDueUpdate(pendingUserId);
+        when(publisherPartitionManager.checkOwnership()).thenReturn(id -> true, id -> !id.equals(pendingUserId));
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Arrays.asList(
+                new TenantBacklog(userId, 1, update.getScheduledDate()),
+                new TenantBacklog(pendingUserId, 5, pending1.getScheduledDate())
+        ));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(userId), any(Optional.class), anyInt()))
+                .thenReturn(slice(false, update));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(pendingUserId), any(Optional.class), anyInt()))
+                .thenReturn(slice(true, pending1, pending2));
+        publisher.publishDueScheduledUpdates();
+
+        // When
+        final Collection<Metric<?>> metrics = publisher.metrics();
+
+        // Then
+        assertThat(metrics).extracting(Metric::getName).allMatch(name -> !name.contains(userId) && !name.contains(pendingUserId));
+        assertThat(metrics)
+                .filteredOn(metric -> metric.getName().equals("publication.tenants.pending") || metric.getName().equals("publication.tenants.backlog"))
+                .extracting(Metric::getName, metric -> metric.getValue().longValue())
+                .containsOnly(tuple("publication.tenants.pending", 1L), tuple("publication.tenants.backlog", 3L));
+        assertThat(metrics).filteredOn(metric -> metric.getName().equals("publication.tenants.maxLag"))
+                .extracting(metric -> metric.getValue().longValue())
+                .allMatch(lag -> lag >= 1000L);
+    }
+
+    @Test
+    public void publishDueScheduledUpdates_whenPartitionsAreLost_shouldStopPublishing() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision update = buildDueUpdate(userId);
+        when(publisherPartitionManager.holdPartitions()).thenReturn(false);
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Collections.singletonList(
+                new TenantBacklog(userId, 1, update.getScheduledDate())
+        ));
+
+        // When
+        publisher.publishDueScheduledUpdates();
+
+        // Then
+        verify(scheduledTransitionRepository, never()).getDueTransitions(any(Date.class), anyString(), any(Optional.class), anyInt());
+        verify(updateRevisionManager, never()).publishScheduledUpdates(anyListOf(UpdateRevision.class));
+    }
+
+    @Test
+    public void publishDueScheduledUpdates_whenUsersBelongToOtherNodes_shouldOnlyPublishTheOwnedOnes() {
+        // Given
+        final String ownedUserId = UUID.randomUUID().toString();
+        final String otherUserId = UUID.randomUUID().toString();
+        final UpdateRevision update = buildDueUpdate(ownedUserId);
+        when(publisherPartitionManager.owns(otherUserId)).thenReturn(false);
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Arrays.asList(
+                new TenantBacklog(ownedUserId, 1, update.getScheduledDate()),
+                new TenantBacklog(otherUserId, 1, update.getScheduledDate())
+        ));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(ownedUserId), any(Optional.class), anyInt()))
+                .thenReturn(slice(false, update));
+
+        // When
+        publisher.publishDueScheduledUpdates();
+
+        // Then
+        verify(updateRevisionManager).publishScheduledUpdates(Collections.singletonList(update));
+        verify(scheduledTransitionRepository, never()).getDueTransitions(any(Date.class), eq(otherUserId), any(Optional.class), anyInt());
+    }
+
+    @Test
+    public void publishDueScheduledUpdates_whenAPartitionIsTakenOverBetweenRounds_shouldStopPublishingItsUsers() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision update1 = buildDueUpdate(userId);
+        final UpdateRevision update2 = buildDueUpdate(userId);
+        when(publisherPartitionManager.checkOwnership()).thenReturn(id -> true, id -> false);
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Collections.singletonList(
+                new TenantBacklog(userId, 3, update1.getScheduledDate())
+        ));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(userId), eq(Optional.empty()), anyInt()))
+                .thenReturn(slice(true, update1, update2));
+
+        // When
+        publisher.publishDueScheduledUpdates();
+
+        // Then
+        verify(updateRevisionManager).publishScheduledUpdates(Arrays.asList(update1, update2));
+        verify(scheduledTransitionRepository, times(1)).getDueTransitions(any(Date.class), eq(userId), any(Optional.class), anyInt());
+    }
+
+    @Test
+    public void publishDueScheduledUpdates_whenUpdatesAreLate_shouldCatchUpWithSmallerBatchesFirst() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision lateUpdate = buildDueUpdate(userId, new Date(System.currentTimeMillis() - 2 * CATCH_UP_THRESHOLD));
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Collections.singletonList(
+                new TenantBacklog(userId, 1, lateUpdate.getScheduledDate())
+        ));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(userId), any(Optional.class), anyInt()))
+                .thenReturn(slice(false, lateUpdate));
+
+        // When
+        publisher.publishDueScheduledUpdates();
+
+        // Then
+        verify(scheduledTransitionRepository).getDueTransitions(any(Date.class), eq(userId), eq(Optional.empty()), eq(1));
+        verify(updateRevisionManager).publishScheduledUpdates(Collections.singletonList(lateUpdate));
+        assertThat(publisher.metrics())
+                .filteredOn(metric -> metric.getName().startsWith("publication.catchUp."))
+                .extracting(Metric::getName, metric -> metric.getValue().doubleValue())
+                .contains(
+                        tuple("publication.catchUp.active", 0.0),
+                        tuple("publication.catchUp.total", 1.0),
+                        tuple("publication.catchUp.remaining", 0.0),
+                        tuple("publication.catchUp.progress", 1.0)
+                );
+    }
+
+    @Test
+    public void publishDueScheduledUpdates_whenUpdatesAreLate_shouldPublishTheOldestOfTheOwnedUsersFirst() {
+        // Given
+        final String userId1 = UUID.randomUUID().toString();
+        final String userId2 = UUID.randomUUID().toString();
+        final String otherUserId = UUID.randomUUID().toString();
+        final long now = System.currentTimeMillis();
+        final UpdateRevision oldest = buildDueUpdate(userId1, new Date(now - 5 * CATCH_UP_THRESHOLD));
+        final UpdateRevision other = buildDueUpdate(otherUserId, new Date(now - 4 * CATCH_UP_THRESHOLD));
+        final UpdateRevision second = buildDueUpdate(userId1, new Date(now - 4 * CATCH_UP_THRESHOLD));
+        final UpdateRevision older = buildDueUpdate(userId2, new Date(now - 3 * CATCH_UP_THRESHOLD));
+        final UpdateRevision recent = buildDueUpdate(userId1, new Date(now - 1000L));
+        when(publisherPartitionManager.owns(otherUserId)).thenReturn(false);
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Arrays.asList(
+                new TenantBacklog(userId1, 3, oldest.getScheduledDate()),
+                new TenantBacklog(otherUserId, 1, other.getScheduledDate()),
+                new TenantBacklog(userId2, 1, older.getScheduledDate())
+        ));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(userId1), eq(Optional.empty()), anyInt()))
+                .thenReturn(slice(true, oldest));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(userId1), eq(Optional.of(ScheduledTransition.of(oldest))), anyInt()))
+                .thenReturn(slice(true, second));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(userId1), eq(Optional.of(ScheduledTransition.of(second))), anyInt()))
+                .thenReturn(slice(false, recent));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(userId2), eq(Optional.empty()), anyInt()))
+                .thenReturn(slice(false, older));
+
+        // When
+        publisher.publishDueScheduledUpdates();
+
+        // Then
+        final InOrder inOrder = inOrder(updateRevisionManager);
+        inOrder.verify(updateRevisionManager).publishScheduledUpdates(Collections.singletonList(oldest));
+        inOrder.verify(updateRevisionManager).publishScheduledUpdates(Collections.singletonList(older));
+        inOrder.verify(updateRevisionManager).publishScheduledUpdates(Collections.singletonList(recent));
+        verify(updateRevisionManager).publishScheduledUpdates(Collections.singletonList(second));
+        verify(updateRevisionManager, never()).publishScheduledUpdates(Collections.singletonList(other));
+        verify(scheduledTransitionRepository, never()).getDueTransitions(any(Date.class), eq(otherUserId), any(Optional.class), anyInt());
+        verify(scheduledTransitionRepository, never()).getDueTransitions(any(Date.class), any(Optional.class), anyInt());
+    }
+
+    @Test
+    public void publishDueScheduledUpdates_whenUpdatesAreNotLate_shouldUseTheWholeQuota() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision update = buildDueUpdate(userId);
+        when(scheduledTransitionRepository.getBacklogs(any(Date.class))).thenReturn(Collections.singletonList(
+                new TenantBacklog(userId, 1, update.getScheduledDate())
+        ));
+        when(scheduledTransitionRepository.getDueTransitions(any(Date.class), eq(userId), any(Optional.class), anyInt()))
+                .thenReturn(slice(false, update));
+
+        // When
+        publisher.publishDueScheduledUpdates();
+
+        // Then
+        verify(scheduledTransitionRepository).getDueTransitions(any(Date.class), eq(userId), eq(Optional.empty()), eq(QUOTA));
+        assertThat(publisher.metrics())
+                .filteredOn(metric -> metric.getName().equals("publication.catchUp.total"))
+                .extracting(metric -> metric.getValue().longValue())
+                .containsExactly(0L);
+    }
+
+    private UpdateRevision buildDueUpdate(String userId) {
+        return buildDueUpdate(userId, new Date(System.currentTimeMillis() - 1000L));
+    }
+
+    private UpdateRevision buildDueUpdate(String userId, Date scheduledDate) {
+        final UpdateRevision update = getCreatedUpdateRevisionBuilder(userId)
+                .status(UpdateStatus.SCHEDULED)
+                .scheduledDate(scheduledDate)
+                .build();
+        scheduledUpdates.put(ScheduledTransition.getId(userId, update.getUuid()), update);
+        return update;
+    }
+
+    private Slice<ScheduledTransition> slice(boolean hasNext, UpdateRevision... updates) {
+        return new SliceImpl<>(
+                Arrays.stream(updates).map(ScheduledTransition::of).collect(Collectors.toList()),
+                new PageRequest(0, QUOTA),
+                hasNext
+        );
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.manager;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import io.barracks.updateservice.repository.IndexedRepository;
+import io.barracks.updateservice.repository.QueryShape;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IndexManagerTest {
+
+    private static final String COLLECTION = "collection";
+
+    @Mock
+    private MongoOperations operations;
+    @Mock
+    private DBCollection collection;
+    @Mock
+    private IndexOperations indexOperations;
+    @Mock
+    private IndexedRepository repository;
+    private final List<DBObject> existingIndexes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        doReturn(collection).when(operations).getCollection(COLLECTION);
+        doReturn(indexOperations).when(operations).indexOps(COLLECTION);
+        doReturn(existingIndexes).when(collection).getIndexInfo();
+    }
+
+    @Test
+    public void getUnsupportedShapes_whenAnIndexStartsWithTheKeysOfTheShape_shouldNotReportIt() {
+        // Given
+        final QueryShape shape = getShape("shape", false);
+        existingIndexes.add(getIndexInfo(new BasicDBObject("userId", 1).append("creationDate", -1).append("uuid", 1), false));
+
+        // When
+        final List<QueryShape> result = getManager(shape).getUnsupportedShapes();
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void getUnsupportedShapes_whenTheIndexHasAnotherDirection_shouldReportIt() {
+        // Given
+        final QueryShape shape = getShape("shape", false);
+        existingIndexes.add(getIndexInfo(new BasicDBObject("userId", 1).append("creationDate", 1), false));
+
+        // When
+        final List<QueryShape> result = getManager(shape).getUnsupportedShapes();
+
+        // Then
+        assertThat(result).containsExactly(shape);
+    }
+
+    @Test
+    public void getUnsupportedShapes_whenUniqueShapeAndTheIndexIsNotUnique_shouldReportIt() {
+        // Given
+        final QueryShape shape = getShape("shape", true);
+        existingIndexes.add(getIndexInfo(new BasicDBObject("userId", 1).append("creationDate", -1), false));
+
+        // When
+        final List<QueryShape> result = getManager(shape).getUnsupportedShapes();
+
+        // Then
+        assertThat(result).containsExactly(shape);
+    }
+
+    @Test
+    public void ensureIndexes_shouldBuildTheMissingIndexesInTheBackgroundUniqueOnesFirst() {
+        // Given
+        final QueryShape plain = getShape("plain", false);
+        final QueryShape unique = getShape("unique", true);
+        final IndexManager manager = getManager(plain, unique);
+
+        // When
+        manager.ensureIndexes();
+
+        // Then
+        final InOrder inOrder = inOrder(indexOperations);
+        inOrder.verify(indexOperations).ensureIndex(unique.getIndex());
+        inOrder.verify(indexOperations).ensureIndex(plain.getIndex());
+        assertThat(plain.getIndex().getIndexOptions().get("background")).isEqualTo(true);
+        assertThat(unique.getIndex().getIndexOptions().get("background")).isEqualTo(true);
+    }
+
+    @Test
+    public void ensureIndexes_whenABuildFails_shouldBuildTheOthersAndReportIt() {
+        // Given
+        final QueryShape failing = getShape("failing", true);
+        final QueryShape plain = getShape("plain", false);
+        doThrow(RuntimeException.class).when(indexOperations).ensureIndex(failing.getIndex());
+        doAnswer(invocation -> existingIndexes.add(getIndexInfo(plain.getIndex().getIndexKeys(), false)))
+                .when(indexOperations).ensureIndex(plain.getIndex());
+        final IndexManager manager = getManager(failing, plain);
+
+        // When
+        final List<QueryShape> result = manager.ensureIndexes();
+
+        // Then
+        verify(indexOperations).ensureIndex(plain.getIndex());
+        assertThat(result).containsExactly(failing);
+        assertThat(manager.metrics())
+                .extracting(Metric::getName, Metric::getValue)
+                .containsExactly(
+                        tuple("indexes.shapes", 2),
+                        tuple("indexes.unsupported", 1),
+                        tuple("indexes.unsupported." + COLLECTION + ".failing", 1)
+                );
+    }
+
+    @Test
+    public void ensureUniqueIndexes_shouldOnlyBuildTheMissingUniqueIndexesInTheBackground() {
+        // Given
+        final QueryShape plain = getShape("plain", false);
+        final QueryShape unique = getShape("unique", true);
+        doAnswer(invocation -> existingIndexes.add(getIndexInfo(unique.getIndex().getIndexKeys(), true)))
+                .when(indexOperations).ensureIndex(unique.getIndex());
+        final IndexManager manager = getManager(plain, unique);
+
+        // When
+        manager.ensureUniqueIndexes();
+
+        // Then
+        verify(indexOperations).ensureIndex(unique.getIndex());
+        verify(indexOperations, never()).ensureIndex(plain.getIndex());
+        assertThat(unique.getIndex().getIndexOptions().get("background")).isEqualTo(true);
+    }
+
+    @Test
+    public void ensureUniqueIndexes_whenTheIndexIsReportedLater_shouldWaitForIt() {
+        // Given
+        final QueryShape unique = getShape("unique", true);
+        final List<DBObject> builtIndexes = Collections.singletonList(getIndexInfo(unique.getIndex().getIndexKeys(), true));
+        doReturn(existingIndexes).doReturn(existingIndexes).doReturn(builtIndexes).when(collection).getIndexInfo();
+        doReturn(Collections.singletonList(unique)).when(repository).getQueryShapes();
+        final IndexManager manager = new IndexManager(operations, Collections.singletonList(repository), 5000L);
+
+        // When
+        manager.ensureUniqueIndexes();
+
+        // Then
+        verify(collection, times(3)).getIndexInfo();
+    }
+
+    @Test
+    public void ensureUniqueIndexes_whenTheIndexIsNotReportedInTime_shouldThrowIllegalStateException() {
+        // Given
+        final QueryShape unique = getShape("unique", true);
+        final IndexManager manager = getManager(unique);
+
+        // When - Then
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(manager::ensureUniqueIndexes)
+                .withMessage("The unique index of query shape unique on " + COLLECTION + " is still not built");
+    }
+
+    @Test
+    public void ensureUniqueIndexes_whenABuildFails_shouldThrowIllegalStateException() {
+        // Given
+        final QueryShape failing = getShape("failing", true);
+        doThrow(RuntimeException.class).when(indexOperations).ensureIndex(failing.getIndex());
+        final IndexManager manager = getManager(failing);
+
+        // When - Then
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(manager::ensureUniqueIndexes)
+                .withMessage("Could not build the unique index of query shape failing on " + COLLECTION);
+    }
+
+    @Test
+    public void dropObsoleteIndexes_shouldOnlyDropTheExistingObsoleteIndexes() {
+        // Given
+        final DBObject obsolete = getIndexInfo(new BasicDBObject("userId", 1).append("name", 1), false);
+        obsolete.put("name", "obsolete");
+        existingIndexes.add(obsolete);
+        doReturn(Collections.singletonMap(COLLECTION, Arrays.asList("obsolete", "dropped"))).when(repository).getObsoleteIndexes();
+        final IndexManager manager = getManager();
+
+        // When
+        manager.dropObsoleteIndexes();
+
+        // Then
+        verify(indexOperations).dropIndex("obsolete");
+        verify(indexOperations, never()).dropIndex("dropped");
+    }
+
+    private IndexManager getManager(QueryShape... shapes) {
+        doReturn(Arrays.asList(shapes)).when(repository).getQueryShapes();
+        return new IndexManager(operations, Collections.singletonList(repository), 0L);
+    }
+
+    private QueryShape getShape(String name, boolean unique) {
+        final Index index = new Index().on("userId", Sort.Direction.ASC).on("creationDate", Sort.Direction.DESC).named(name);
+        return new QueryShape(name, COLLECTION, unique ? index.unique() : index);
+    }
+
+    private DBObject getIndexInfo(DBObject keys, boolean unique) {
+        final DBObject index = new BasicDBObject("key", keys);
+        if (unique) {
+            index.put("unique", true);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import com.google.common.base.Ticker;
+import io.barracks.updateservice.model.UpdateRevision;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static io.barracks.updateservice.utils.UpdateRevisionUtils.getCreatedUpdateRevisionBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class LatestPublishedUpdateCacheTest {
+
+    private static final int THREADS = 8;
+    private static final long EXPIRE_AFTER_WRITE = 1000;
+
+    private LatestPublishedUpdateCache cache;
+    private AtomicInteger loads;
+    private AtomicLong time;
+
+    @Before
+    public void setUp() throws Exception {
+        time = new AtomicLong();
+        cache = new LatestPublishedUpdateCache(2, EXPIRE_AFTER_WRITE, new Ticker() {
+            @Override
+            public long read() {
+                return time.get();
+            }
+        });
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void get_whenSameKeyRequestedTwice_shouldLoadOnce() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Optional<UpdateRevision> update = Optional.of(getCreatedUpdateRevisionBuilder(userId).build());
+
+        // When
+        cache.get(userId, Optional.of("segment"), loader(update));
+        final Optional<UpdateRevision> result = cache.get(userId, Optional.of("segment"), loader(update));
+
+        // Then
+        assertThat(result).isEqualTo(update);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_whenEntryIsOlderThanExpireAfterWrite_shouldLoadItAgain() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Optional<UpdateRevision> update = Optional.of(getCreatedUpdateRevisionBuilder(userId).build());
+        cache.get(userId, Optional.of("segment"), loader(Optional.empty()));
+
+        // When
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(EXPIRE_AFTER_WRITE));
+        final Optional<UpdateRevision> result = cache.get(userId, Optional.of("segment"), loader(update));
+
+        // Then
+        assertThat(result).isEqualTo(update);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_whenOtherSegmentRequested_shouldNotShareTheEntryOfASegment() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Optional<UpdateRevision> update = Optional.of(getCreatedUpdateRevisionBuilder(userId).build());
+
+        // When
+        cache.get(userId, Optional.of("segment"), loader(update));
+        cache.get(userId, Optional.empty(), loader(update));
+
+        // Then
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void invalidate_whenCalled_shouldOnlyDropTheEntriesOfThatUser() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String otherUserId = UUID.randomUUID().toString();
+        final Optional<UpdateRevision> update = Optional.of(getCreatedUpdateRevisionBuilder(userId).build());
+        cache.get(userId, Optional.empty(), loader(update));
+        cache.get(otherUserId, Optional.empty(), loader(update));
+
+        // When
+        cache.invalidate(userId);
+        cache.get(userId, Optional.empty(), loader(update));
+        cache.get(otherUserId, Optional.empty(), loader(update));
+
+        // Then
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void get_whenGenerationOfTheUserWasForgotten_shouldNotServeTheEntryLoadedBeforeTheInvalidation() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Optional<UpdateRevision> stale = Optional.of(getCreatedUpdateRevisionBuilder(userId).build());
+        final Optional<UpdateRevision> fresh = Optional.of(getCreatedUpdateRevisionBuilder(userId).build());
+        cache.get(userId, Optional.empty(), loader(stale));
+        cache.invalidate(userId);
+
+        // When
+        for (int i = 0; i < THREADS; i++) {
+            cache.invalidate(UUID.randomUUID().toString());
+        }
+        final Optional<UpdateRevision> result = cache.get(userId, Optional.empty(), loader(fresh));
+
+        // Then
+        assertThat(result).isEqualTo(fresh);
+    }
+
+    @Test
+    public void get_whenInvalidatedWhileLoading_shouldNotServeTheLoadedValueAfterwards() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Optional<UpdateRevision> stale = Optional.of(getCreatedUpdateRevisionBuilder(userId).build());
+        final Optional<UpdateRevision> fresh = Optional.of(getCreatedUpdateRevisionBuilder(userId).build());
+
+        // When
+        cache.get(userId, Optional.empty(), () -> {
+            cache.invalidate(userId);
+            return stale;
+        });
+        final Optional<UpdateRevision> result = cache.get(userId, Optional.empty(), loader(fresh));
+
+        // Then
+        assertThat(result).isEqualTo(fresh);
+    }
+
+    @Test
+    public void get_whenNothingIsPublished_shouldCacheTheAbsence() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+
+        // When
+        cache.get(userId, Optional.empty(), loader(Optional.empty()));
+        final Optional<UpdateRevision> result = cache.get(userId, Optional.empty(), loader(Optional.empty()));
+
+        // Then
+        assertThat(result).isEmpty();
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_whenSameEntryRequestedConcurrently_shouldShareOneLoad() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Optional<UpdateRevision> update = Optional.of(getCreatedUpdateRevisionBuilder(userId).build());
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // When
+        final List<Future<Optional<UpdateRevision>>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> cache.get(userId, Optional.empty(), blockingLoader(release, () -> update))));
+        }
+        waitForCoalescedRequests(THREADS - 1);
+        release.countDown();
+
+        // Then
+        for (Future<Optional<UpdateRevision>> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(update);
+        }
+        assertThat(loads.get()).isEqualTo(1);
+        executor.shutdown();
+    }
+
+    @Test
+    public void get_whenSharedLoadFails_shouldGiveTheSameFailureToEveryRequest() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final IllegalStateException failure = new IllegalStateException("Database unavailable");
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // When
+        final List<Future<Optional<UpdateRevision>>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> cache.get(userId, Optional.empty(), blockingLoader(release, () -> {
+                throw failure;
+            }))));
+        }
+        waitForCoalescedRequests(THREADS - 1);
+        release.countDown();
+
+        // Then
+        for (Future<Optional<UpdateRevision>> result : results) {
+            assertThatExceptionOfType(ExecutionException.class)
+                    .isThrownBy(() -> result.get(10, TimeUnit.SECONDS))
+                    .matches(e -> e.getCause() == failure);
+        }
+        assertThat(loads.get()).isEqualTo(1);
+        executor.shutdown();
+    }
+
+    @Test
+    public void metrics_whenCacheIsUsed_shouldReportHitRatioEvictionsAndLoads() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Optional<UpdateRevision> update = Optional.of(getCreatedUpdateRevisionBuilder(userId).build());
+        cache.get(userId, Optional.of("segment1"), loader(update));
+        cache.get(userId, Optional.of("segment1"), loader(update));
+        cache.get(userId, Optional.of("segment2"), loader(update));
+        cache.get(userId, Optional.of("segment3"), loader(update));
+
+        // When
+        final Map<String, Number> metrics = getMetrics();
+
+        // Then
+        assertThat(metrics.get("cache.latestPublishedUpdate.size")).isEqualTo(2L);
+        assertThat(metrics.get("cache.latestPublishedUpdate.hit.ratio")).isEqualTo(0.25);
+        assertThat(metrics.get("cache.latestPublishedUpdate.miss.ratio")).isEqualTo(0.75);
+        assertThat(metrics.get("cache.latestPublishedUpdate.evictions")).isEqualTo(1L);
+        assertThat(metrics.get("cache.latestPublishedUpdate.load.count")).isEqualTo(3L);
+        assertThat(metrics.get("cache.latestPublishedUpdate.load.coalesced")).isEqualTo(0L);
+        assertThat(metrics).containsKey("cache.latestPublishedUpdate.load.averageTime");
+    }
+
+    private Supplier<Optional<UpdateRevision>> blockingLoader(CountDownLatch release, Supplier<Optional<UpdateRevision>> result) {
+        return () -> {
+            loads.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return result.get();
+        };
+    }
+
+    private void waitForCoalescedRequests(long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (getMetrics().get("cache.latestPublishedUpdate.load.coalesced").longValue() < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private Map<String, Number> getMetrics() {
+        return cache.metrics().stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+    }
+
+    private Supplier<Optional<UpdateRevision>> loader(Optional<UpdateRevision> update) {
+        return () -> {
+            loads.incrementAndGet();
+            return update;
+        };
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.manager;
+
+import io.barracks.updateservice.model.PublishedUpdate;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.repository.PublishedUpdateRepository;
+import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+import static io.barracks.updateservice.utils.UpdateRevisionUtils.getCreatedUpdateRevisionBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PublishedUpdateReconcilerTest {
+
+    @Mock
+    private UpdateRevisionRepository updateRevisionRepository;
+    @Mock
+    private PublishedUpdateRepository publishedUpdateRepository;
+    private PublishedUpdateReconciler reconciler;
+
+    @Before
+    public void setUp() {
+        reconciler = new PublishedUpdateReconciler(updateRevisionRepository, publishedUpdateRepository, new LatestPublishedUpdateCache(100, 60000));
+    }
+
+    @Test
+    public void reconcilePublishedUpdates_whenPointerIsBehindTheLatestRevisions_shouldRepairIt() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision previous = getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.PUBLISHED).build();
+        final UpdateRevision latest = getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.PUBLISHED).build();
+        final PublishedUpdate pointer = getPointer(previous);
+        when(updateRevisionRepository.getLatestUpdateInfoUserIds()).thenReturn(Collections.singletonList(userId));
+        when(publishedUpdateRepository.findAll(userId)).thenReturn(Collections.singletonList(pointer));
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, "segment")).thenReturn(Optional.of(latest));
+        when(publishedUpdateRepository.repair(pointer, Optional.of(latest))).thenReturn(true);
+
+        // When
+        final int result = reconciler.reconcilePublishedUpdates(user -> true);
+
+        // Then
+        assertThat(result).isEqualTo(1);
+        verify(publishedUpdateRepository).repair(pointer, Optional.of(latest));
+    }
+
+    @Test
+    public void reconcilePublishedUpdates_whenPointerAgreesWithTheLatestRevisions_shouldLeaveIt() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision latest = getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.PUBLISHED).build();
+        when(updateRevisionRepository.getLatestUpdateInfoUserIds()).thenReturn(Collections.singletonList(userId));
+        when(publishedUpdateRepository.findAll(userId)).thenReturn(Collections.singletonList(getPointer(latest)));
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, "segment")).thenReturn(Optional.of(latest));
+
+        // When
+        final int result = reconciler.reconcilePublishedUpdates(user -> true);
+
+        // Then
+        assertThat(result).isEqualTo(0);
+        verify(publishedUpdateRepository, never()).repair(any(PublishedUpdate.class), any(Optional.class));
+    }
+
+    @Test
+    public void reconcilePublishedUpdates_whenUserIsFilteredOut_shouldNotReadItsPointers() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        when(updateRevisionRepository.getLatestUpdateInfoUserIds()).thenReturn(Collections.singletonList(userId));
+
+        // When
+        final int result = reconciler.reconcilePublishedUpdates(user -> false);
+
+        // Then
+        assertThat(result).isEqualTo(0);
+        verify(publishedUpdateRepository, never()).findAll(eq(userId));
+    }
+
+    private PublishedUpdate getPointer(UpdateRevision revision) {
+        return PublishedUpdate.builder()
+                .userId(revision.getUserId())
+                .segmentId(revision.getSegmentId())
+                .uuid(revision.getUuid())
+                .creationDate(revision.getCreationDate())
+                .revision(revision)
+                .build();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import io.barracks.updateservice.model.Lease;
+import io.barracks.updateservice.repository.LeaseRepository;
+import io.barracks.updateservice.repository.PublisherMemberRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PublisherPartitionManagerTest {
+
+    private static final int PARTITIONS = 4;
+    private static final long DURATION = 30000L;
+
+    @Mock
+    private LeaseRepository leaseRepository;
+    @Mock
+    private PublisherMemberRepository publisherMemberRepository;
+    private final List<String> otherMembers = new ArrayList<>();
+    private String owner;
+
+    @Before
+    public void setUp() throws Exception {
+        doAnswer(invocation -> {
+            owner = (String) invocation.getArguments()[0];
+            return null;
+        }).when(publisherMemberRepository).heartbeat(anyString(), any(Date.class));
+        when(publisherMemberRepository.getLiveMemberIds(any(Date.class))).thenAnswer(invocation -> {
+            final List<String> members = new ArrayList<>(otherMembers);
+            members.add(owner);
+            Collections.sort(members);
+            return members;
+        });
+        when(leaseRepository.acquire(anyString(), anyString(), any(Date.class), eq(DURATION))).thenAnswer(invocation ->
+                Optional.of(buildLease((String) invocation.getArguments()[0], (String) invocation.getArguments()[1]))
+        );
+    }
+
+    @Test
+    public void holdPartitions_whenAlone_shouldOwnEveryPartition() {
+        // Given
+        final PublisherPartitionManager manager = new PublisherPartitionManager(leaseRepository, publisherMemberRepository, PARTITIONS, DURATION, 10000L);
+
+        // When
+        final boolean result = manager.holdPartitions();
+
+        // Then
+        assertThat(result).isTrue();
+        verify(leaseRepository, times(PARTITIONS)).acquire(anyString(), anyString(), any(Date.class), eq(DURATION));
+        assertThat(getOwnedPartitions(manager)).containsExactly(0, 1, 2, 3);
+    }
+
+    @Test
+    public void holdPartitions_whenAMemberJoins_shouldReleaseItsShareOfThePartitions() {
+        // Given
+        final PublisherPartitionManager manager = new PublisherPartitionManager(leaseRepository, publisherMemberRepository, PARTITIONS, DURATION, 0L);
+        manager.holdPartitions();
+        // An empty id ranks first, so this node gets the odd partitions
+        otherMembers.add("");
+
+        // When
+        manager.holdPartitions();
+
+        // Then
+        verify(leaseRepository, times(2)).release(any(Lease.class));
+        assertThat(getOwnedPartitions(manager)).containsExactly(1, 3);
+    }
+
+    @Test
+    public void holdPartitions_whenAPartitionIsStillLeasedByAnotherNode_shouldNotOwnIt() {
+        // Given
+        final PublisherPartitionManager manager = new PublisherPartitionManager(leaseRepository, publisherMemberRepository, PARTITIONS, DURATION, 10000L);
+        when(leaseRepository.acquire(eq(PublisherPartitionManager.LEASE_PREFIX + 2), anyString(), any(Date.class), anyLong()))
+                .thenReturn(Optional.empty());
+
+        // When
+        manager.holdPartitions();
+
+        // Then
+        assertThat(getOwnedPartitions(manager)).containsExactly(0, 1, 3);
+    }
+
+    @Test
+    public void holdPartitions_whenCalledWithinTheRenewalInterval_shouldNotRenewTheLeases() {
+        // Given
+        final PublisherPartitionManager manager = new PublisherPartitionManager(leaseRepository, publisherMemberRepository, PARTITIONS, DURATION, 10000L);
+
+        // When
+        manager.holdPartitions();
+        manager.holdPartitions();
+
+        // Then
+        verify(publisherMemberRepository, times(1)).heartbeat(anyString(), any(Date.class));
+        verify(leaseRepository, times(PARTITIONS)).acquire(anyString(), anyString(), any(Date.class), anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void checkOwnership_whenAPartitionWasTakenOver_shouldOnlyAcceptTheUsersOfTheOthers() {
+        // Given
+        final PublisherPartitionManager manager = new PublisherPartitionManager(leaseRepository, publisherMemberRepository, PARTITIONS, DURATION, 10000L);
+        manager.holdPartitions();
+        when(leaseRepository.findHeld(any(Collection.class), anyString(), any(Date.class))).thenAnswer(invocation ->
+                ((Collection<Lease>) invocation.getArguments()[0]).stream()
+                        .filter(lease -> !lease.getName().equals(PublisherPartitionManager.LEASE_PREFIX + 0))
+                        .collect(Collectors.toList())
+        );
+        final List<String> userIds = IntStream.range(0, 100).mapToObj(i -> UUID.randomUUID().toString()).collect(Collectors.toList());
+
+        // When
+        final Predicate<String> result = manager.checkOwnership();
+
+        // Then
+        assertThat(userIds).allMatch(userId -> result.test(userId) == (manager.getPartition(userId) != 0));
+    }
+
+    @Test
+    public void leave_whenPartitionsOwned_shouldReleaseThemAndLeaveTheMembers() {
+        // Given
+        final PublisherPartitionManager manager = new PublisherPartitionManager(leaseRepository, publisherMemberRepository, PARTITIONS, DURATION, 10000L);
+        manager.holdPartitions();
+
+        // When
+        manager.leave();
+
+        // Then
+        verify(leaseRepository, times(PARTITIONS)).release(any(Lease.class));
+        verify(publisherMemberRepository).remove(owner);
+        assertThat(getOwnedPartitions(manager)).isEmpty();
+    }
+
+    @Test
+    public void owns_whenAHeartbeatIsInProgress_shouldAnswerWithoutWaitingForIt() throws Exception {
+        // Given
+        final PublisherPartitionManager manager = new PublisherPartitionManager(leaseRepository, publisherMemberRepository, PARTITIONS, DURATION, 0L);
+        manager.holdPartitions();
+        final CountDownLatch heartbeatStarted = new CountDownLatch(1);
+        final CountDownLatch heartbeatDone = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            heartbeatStarted.countDown();
+            heartbeatDone.await();
+            return null;
+        }).when(publisherMemberRepository).heartbeat(anyString(), any(Date.class));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<Boolean> heartbeat = executor.submit(manager::holdPartitions);
+        heartbeatStarted.await();
+
+        try {
+            // When
+            final Future<Boolean> result = CompletableFuture.supplyAsync(() -> manager.owns("user"));
+
+            // Then
+            assertThat(result.get(1, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            heartbeatDone.countDown();
+            heartbeat.get();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void getPartition_whenCalledTwice_shouldReturnTheSamePartitionInRange() {
+        // Given
+        final PublisherPartitionManager manager = new PublisherPartitionManager(leaseRepository, publisherMemberRepository, PARTITIONS, DURATION, 10000L);
+        final String userId = UUID.randomUUID().toString();
+
+        // When
+        final int partition = manager.getPartition(userId);
+
+        // Then
+        assertThat(partition).isBetween(0, PARTITIONS - 1).isEqualTo(manager.getPartition(userId));
+    }
+
+    private List<Integer> getOwnedPartitions(PublisherPartitionManager manager) {
+        final List<Integer> owned = new ArrayList<>();
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            final int current = partition;
+            final Optional<String> userId = IntStream.range(0, 1000)
+                    .mapToObj(i -> "user" + i)
+                    .filter(id -> manager.getPartition(id) == current)
+                    .findFirst();
+            if (userId.isPresent() && manager.owns(userId.get())) {
+                owned.add(partition);
+            }
+        }
+        return owned;
+    }
+
+    private Lease buildLease(String name, String owner) {
+        return Lease.builder()
+                .name(name)
+                .owner(owner)
+                .token(1L)
+                .expiresAt(new Date(System.currentTimeMillis() + DURATION))
+                .build();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.manager;
+
+import io.barracks.updateservice.model.UpdateCursor;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import static io.barracks.updateservice.utils.UpdateRevisionUtils.getCreatedUpdateRevisionBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RevisionArchiverTest {
+
+    private static final int KEEP = 2;
+    private static final long AGE = 60000L;
+
+    @Mock
+    private UpdateRevisionRepository updateRevisionRepository;
+    private RevisionArchiver archiver;
+
+    @Before
+    public void setUp() {
+        archiver = new RevisionArchiver(updateRevisionRepository, KEEP, AGE, 2);
+    }
+
+    @Test
+    public void constructor_whenNoRevisionKept_shouldThrowIllegalArgumentException() {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> new RevisionArchiver(updateRevisionRepository, 0, AGE, 2));
+    }
+
+    @Test
+    public void archiveSupersededRevisions_shouldArchiveTheUpdatesWithMoreRevisionsThanKept() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision superseded = getCreatedUpdateRevisionBuilder(userId).revisionId(KEEP + 1).build();
+        final UpdateRevision recent = getCreatedUpdateRevisionBuilder(userId).revisionId(KEEP).build();
+        final UpdateRevision last = getCreatedUpdateRevisionBuilder(userId).revisionId(KEEP + 3).build();
+        when(updateRevisionRepository.getLatestUpdateInfoUserIds()).thenReturn(Collections.singletonList(userId));
+        doReturn(new SliceImpl<>(Arrays.asList(superseded, recent), new PageRequest(0, 2), true))
+                .when(updateRevisionRepository)
+                .getAllLatestUpdateInfo(Optional.empty(), 2, Optional.of(userId), Collections.emptyList(), Collections.emptyList());
+        doReturn(new SliceImpl<>(Collections.singletonList(last), new PageRequest(0, 2), false))
+                .when(updateRevisionRepository)
+                .getAllLatestUpdateInfo(Optional.of(UpdateCursor.of(recent)), 2, Optional.of(userId), Collections.emptyList(), Collections.emptyList());
+        when(updateRevisionRepository.archiveUpdateRevisions(anyListOf(UpdateRevision.class), eq(KEEP), any(Date.class)))
+                .thenReturn(1, 3);
+        final long start = System.currentTimeMillis();
+
+        // When
+        final int result = archiver.archiveSupersededRevisions(user -> true);
+
+        // Then
+        assertThat(result).isEqualTo(4);
+        final ArgumentCaptor<Date> before = ArgumentCaptor.forClass(Date.class);
+        verify(updateRevisionRepository).archiveUpdateRevisions(eq(Collections.singletonList(superseded)), eq(KEEP), before.capture());
+        assertThat(before.getValue().getTime()).isGreaterThanOrEqualTo(start - AGE);
+        verify(updateRevisionRepository).archiveUpdateRevisions(eq(Collections.singletonList(last)), eq(KEEP), any(Date.class));
+    }
+
+    @Test
+    public void archiveSupersededRevisions_whenUserFilteredOut_shouldNotArchiveItsUpdates() {
+        // Given
+        final UpdateRevision owned = getCreatedUpdateRevisionBuilder("owned").revisionId(KEEP + 1).build();
+        when(updateRevisionRepository.getLatestUpdateInfoUserIds()).thenReturn(Arrays.asList("owned", "other"));
+        doReturn(new SliceImpl<>(Collections.singletonList(owned), new PageRequest(0, 2), false))
+                .when(updateRevisionRepository)
+                .getAllLatestUpdateInfo(Optional.empty(), 2, Optional.of("owned"), Collections.emptyList(), Collections.emptyList());
+
+        // When
+        archiver.archiveSupersededRevisions("owned"::equals);
+
+        // Then
+        verify(updateRevisionRepository).archiveUpdateRevisions(eq(Collections.singletonList(owned)), eq(KEEP), any(Date.class));
+        verify(updateRevisionRepository, never()).getAllLatestUpdateInfo(
+                any(Optional.class), anyInt(), eq(Optional.of("other")), anyListOf(String.class), anyListOf(String.class)
+        );
+    }
+
+    @Test
+    public void archiveSupersededRevisions_whenNoUpdateHasSupersededRevisions_shouldNotArchive() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision recent = getCreatedUpdateRevisionBuilder(userId).revisionId(KEEP).build();
+        when(updateRevisionRepository.getLatestUpdateInfoUserIds()).thenReturn(Collections.singletonList(userId));
+        doReturn(new SliceImpl<>(Collections.singletonList(recent), new PageRequest(0, 2), false))
+                .when(updateRevisionRepository)
+                .getAllLatestUpdateInfo(Optional.empty(), 2, Optional.of(userId), Collections.emptyList(), Collections.emptyList());
+
+        // When
+        final int result = archiver.archiveSupersededRevisions(user -> true);
+
+        // Then
+        assertThat(result).isEqualTo(0);
+        verify(updateRevisionRepository, never()).archiveUpdateRevisions(anyListOf(UpdateRevision.class), anyInt(), any(Date.class));
+    }
+}
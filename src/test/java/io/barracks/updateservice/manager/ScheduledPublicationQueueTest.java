@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.manager;
+
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static io.barracks.updateservice.utils.UpdateRevisionUtils.getCreatedUpdateRevisionBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScheduledPublicationQueueTest {
+
+    private ScheduledPublicationQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        queue = new ScheduledPublicationQueue();
+    }
+
+    @Test
+    public void pollDue_whenUpdatesQueued_shouldOnlyReturnDueOnesInScheduledDateOrder() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision dueLater = buildScheduledUpdate(userId, 2000L);
+        final UpdateRevision dueFirst = buildScheduledUpdate(userId, 1000L);
+        final UpdateRevision notDue = buildScheduledUpdate(userId, 5000L);
+        queue.schedule(dueLater);
+        queue.schedule(notDue);
+        queue.schedule(dueFirst);
+
+        // When
+        final Iterable<UpdateRevision> result = queue.pollDue(new Date(3000L));
+
+        // Then
+        assertThat(result).containsExactly(dueFirst, dueLater);
+        assertThat(queue.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void pollDue_whenUpdateRescheduled_shouldOnlyReturnItAtItsNewDate() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision update = buildScheduledUpdate(userId, 1000L);
+        final UpdateRevision rescheduled = update.toBuilder().scheduledDate(new Date(4000L)).build();
+        queue.schedule(update);
+        queue.schedule(rescheduled);
+
+        // When
+        final Iterable<UpdateRevision> beforeNewDate = queue.pollDue(new Date(3000L));
+        final Iterable<UpdateRevision> afterNewDate = queue.pollDue(new Date(4000L));
+
+        // Then
+        assertThat(beforeNewDate).isEmpty();
+        assertThat(afterNewDate).containsExactly(rescheduled);
+        assertThat(queue.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void schedule_whenSameUpdateQueuedTwice_shouldReturnItOnce() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision update = buildScheduledUpdate(userId, 1000L);
+        queue.schedule(update);
+        queue.schedule(update);
+
+        // When
+        final Iterable<UpdateRevision> result = queue.pollDue(new Date(1000L));
+
+        // Then
+        assertThat(result).containsExactly(update);
+    }
+
+    @Test
+    public void schedule_whenSameUuidForAnotherUser_shouldKeepBothUpdates() {
+        // Given
+        final UpdateRevision update = buildScheduledUpdate(UUID.randomUUID().toString(), 1000L);
+        final UpdateRevision otherUserUpdate = update.toBuilder().userId(UUID.randomUUID().toString()).build();
+        queue.schedule(update);
+        queue.schedule(otherUserUpdate);
+
+        // When
+        final Iterable<UpdateRevision> result = queue.pollDue(new Date(1000L));
+
+        // Then
+        assertThat(result).containsExactlyInAnyOrder(update, otherUserUpdate);
+    }
+
+    private UpdateRevision buildScheduledUpdate(String userId, long scheduledDate) {
+        return getCreatedUpdateRevisionBuilder(userId)
+                .status(UpdateStatus.SCHEDULED)
+                .scheduledDate(new Date(scheduledDate))
+                .build();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.manager;
+
+import io.barracks.updateservice.model.UpdateCount;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.repository.UpdateCountRepository;
+import io.barracks.updateservice.repository.UpdateRevisionRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UpdateCountReconcilerTest {
+
+    @Mock
+    private UpdateRevisionRepository updateRevisionRepository;
+    @Mock
+    private UpdateCountRepository updateCountRepository;
+    private UpdateCountReconciler reconciler;
+
+    @Before
+    public void setUp() {
+        reconciler = new UpdateCountReconciler(updateRevisionRepository, updateCountRepository);
+    }
+
+    @Test
+    public void reconcileCounts_whenCountersDrifted_shouldReplaceThemAndReportTheUser() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final List<UpdateCount> counts = Collections.singletonList(getCount(userId, UpdateStatus.PUBLISHED, 2));
+        when(updateRevisionRepository.getLatestUpdateInfoUserIds()).thenReturn(Collections.singletonList(userId));
+        when(updateRevisionRepository.countLatestUpdateInfo(userId)).thenReturn(counts);
+        final List<UpdateCount> counters = Arrays.asList(
+                getCount(userId, UpdateStatus.PUBLISHED, 1),
+                getCount(userId, UpdateStatus.DRAFT, 1)
+        );
+        when(updateCountRepository.getCounts(userId)).thenReturn(counters);
+
+        // When
+        final int result = reconciler.reconcileCounts(user -> true);
+
+        // Then
+        assertThat(result).isEqualTo(1);
+        final InOrder inOrder = inOrder(updateCountRepository, updateRevisionRepository);
+        inOrder.verify(updateCountRepository).getCounts(userId);
+        inOrder.verify(updateRevisionRepository).countLatestUpdateInfo(userId);
+        inOrder.verify(updateCountRepository).reconcile(userId, counters, counts);
+    }
+
+    @Test
+    public void reconcileCounts_whenCountersAreRight_shouldStillMarkThemAsReconciled() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final List<UpdateCount> counts = Collections.singletonList(getCount(userId, UpdateStatus.PUBLISHED, 2));
+        when(updateRevisionRepository.getLatestUpdateInfoUserIds()).thenReturn(Collections.singletonList(userId));
+        when(updateRevisionRepository.countLatestUpdateInfo(userId)).thenReturn(counts);
+        final List<UpdateCount> counters = Arrays.asList(
+                getCount(userId, UpdateStatus.PUBLISHED, 2),
+                getCount(userId, UpdateStatus.DRAFT, 0)
+        );
+        when(updateCountRepository.getCounts(userId)).thenReturn(counters);
+
+        // When
+        final int result = reconciler.reconcileCounts(user -> true);
+
+        // Then
+        assertThat(result).isEqualTo(0);
+        verify(updateCountRepository).reconcile(userId, counters, counts);
+    }
+
+    @Test
+    public void reconcileCounts_whenUserIsFilteredOut_shouldNotTouchItsCounters() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        when(updateRevisionRepository.getLatestUpdateInfoUserIds()).thenReturn(Collections.singletonList(userId));
+
+        // When
+        final int result = reconciler.reconcileCounts(user -> false);
+
+        // Then
+        assertThat(result).isEqualTo(0);
+        verify(updateRevisionRepository, never()).countLatestUpdateInfo(any(String.class));
+        verify(updateCountRepository, never()).reconcile(eq(userId), anyListOf(UpdateCount.class), anyListOf(UpdateCount.class));
+    }
+
+    private UpdateCount getCount(String userId, UpdateStatus status, long count) {
+        return UpdateCount.builder().userId(userId).segmentId("segment").status(status).count(count).build();
+    }
+}
@@ -25,21 +25,36 @@
 package io.barracks.updateservice.manager;
 
 import io.barracks.commons.test.ServiceClientTest;
+import io.barracks.updateservice.exception.ConcurrentRevisionException;
 import io.barracks.updateservice.exception.InvalidUpdateOperationException;
-import io.barracks.updateservice.exception.NoSuchUpdateException;
+import io.barracks.updateservice.exception.StaleRevisionException;
 import io.barracks.updateservice.exception.UpdateNotFoundException;
+import io.barracks.updateservice.model.BulkInsertResult;
+import io.barracks.updateservice.model.PublishedUpdate;
+import io.barracks.updateservice.model.RevisionTag;
+import io.barracks.updateservice.model.ScheduledTransition;
+import io.barracks.updateservice.model.UpdateCount;
+import io.barracks.updateservice.model.UpdateCounts;
+import io.barracks.updateservice.model.UpdateCursor;
 import io.barracks.updateservice.model.UpdateRevision;
 import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.repository.PublishedUpdateRepository;
+import io.barracks.updateservice.repository.ScheduledTransitionRepository;
+import io.barracks.updateservice.repository.UpdateCountRepository;
 import io.barracks.updateservice.repository.UpdateRevisionRepository;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
@@ -51,19 +66,52 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class UpdateRevisionManagerTest extends ServiceClientTest {
 
+    private static final int MAX_ATTEMPTS = 3;
+
     @Mock
     private UpdateRevisionRepository updateRevisionRepository;
+    @Mock
+    private ScheduledTransitionRepository scheduledTransitionRepository;
+    @Mock
+    private PublishedUpdateRepository publishedUpdateRepository;
+    @Mock
+    private UpdateCountRepository updateCountRepository;
+    @Mock
+    private PublisherPartitionManager publisherPartitionManager;
+    private ScheduledPublicationQueue scheduledPublicationQueue;
+    private RevisionContentionMetrics revisionContentionMetrics;
     private UpdateRevisionManager manager;
 
     @Before
     public void setUp() throws Exception {
-        manager = new UpdateRevisionManager(updateRevisionRepository, new UpdateStatusManager());
+        scheduledPublicationQueue = new ScheduledPublicationQueue();
+        revisionContentionMetrics = new RevisionContentionMetrics();
+        manager = new UpdateRevisionManager(
+                updateRevisionRepository,
+                scheduledTransitionRepository,
+                publishedUpdateRepository,
+                updateCountRepository,
+                new UpdateStatusManager(),
+                new LatestPublishedUpdateCache(100, 60000),
+                scheduledPublicationQueue,
+                publisherPartitionManager,
+                new PublicationBatchMetrics(),
+                revisionContentionMetrics,
+                MAX_ATTEMPTS
+        );
+        when(updateRevisionRepository.reviseLatestUpdateInfo(any(UpdateRevision.class), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.empty());
+        when(updateRevisionRepository.editLatestUpdateInfo(any(UpdateRevision.class), any(Optional.class)))
+                .thenReturn(Optional.empty());
+        when(publishedUpdateRepository.findOne(any(String.class), any(String.class))).thenReturn(Optional.empty());
+        when(publisherPartitionManager.owns(any(String.class))).thenReturn(true);
     }
 
     @Test
@@ -166,6 +214,8 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
 
         // Then
         verify(updateRevisionRepository).save(getMatcherThatIgnoreUpdateUuid(beforeSaveUpdate));
+        verify(updateRevisionRepository).saveLatestUpdateInfo(mockResponse);
+        verify(updateCountRepository).add(getMatcherThatIgnoreUpdateUuid(beforeSaveUpdate));
         assertEquals(mockResponse, managerResponse);
     }
 
@@ -209,6 +259,306 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
                 .isThrownBy(() -> manager.reviseUpdate(revision))
                 .withMessage("Cannot change status " + UpdateStatus.PUBLISHED.getName() + " to status " + UpdateStatus.DRAFT.getName());
         verify(updateRevisionRepository).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
+        verify(updateRevisionRepository, never()).save(any(UpdateRevision.class));
+        verify(updateRevisionRepository, never()).replaceLatestUpdateInfo(any(UpdateRevision.class));
+    }
+
+    @Test
+    public void reviseUpdate_whenTheNextRevisionIdWasTakenConcurrently_shouldRetryWithTheFollowingOne() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId)
+                .status(UpdateStatus.SCHEDULED)
+                .scheduledDate(new Date(1234567890L))
+                .build();
+        final UpdateRevision publishedRevision = currentRevision.toBuilder()
+                .revisionId(currentRevision.getRevisionId() + 1)
+                .status(UpdateStatus.PUBLISHED)
+                .scheduledDate(null)
+                .build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.ARCHIVED)
+                .scheduledDate(null)
+                .build();
+        final UpdateRevision savedRevision = revision.toBuilder()
+                .revisionId(currentRevision.getRevisionId() + 2)
+                .build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision), Optional.of(publishedRevision));
+        when(updateRevisionRepository.save(any(UpdateRevision.class)))
+                .thenThrow(new DuplicateKeyException("E11000 duplicate key error"))
+                .thenReturn(savedRevision);
+        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(currentRevision.getUuid(), userId))
+                .thenReturn(Optional.of(publishedRevision));
+
+        // When
+        final UpdateRevision result = manager.reviseUpdate(revision);
+
+        // Then
+        assertThat(result).isEqualTo(savedRevision);
+        verify(updateRevisionRepository).replaceLatestUpdateInfo(publishedRevision);
+        verify(updateRevisionRepository).completeLatestUpdateInfo(savedRevision);
+        assertThat(revisionContentionMetrics.metrics())
+                .filteredOn(metric -> metric.getName().equals("revision.contention.retries"))
+                .extracting(metric -> metric.getValue().longValue())
+                .containsExactly(1L);
+    }
+
+    @Test
+    public void reviseUpdate_whenContentionPersists_shouldGiveUpAfterTheMaximumNumberOfAttempts() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.save(any(UpdateRevision.class)))
+                .thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(currentRevision.getUuid(), userId))
+                .thenReturn(Optional.of(currentRevision));
+
+        // When - Then
+        assertThatExceptionOfType(ConcurrentRevisionException.class)
+                .isThrownBy(() -> manager.reviseUpdate(revision));
+        verify(updateRevisionRepository, times(MAX_ATTEMPTS)).save(any(UpdateRevision.class));
+        verify(updateRevisionRepository, never()).completeLatestUpdateInfo(any(UpdateRevision.class));
+        assertThat(revisionContentionMetrics.metrics())
+                .filteredOn(metric -> metric.getName().equals("revision.contention.failures"))
+                .extracting(metric -> metric.getValue().longValue())
+                .containsExactly(1L);
+    }
+
+    @Test
+    public void reviseUpdate_whenExpectedRevisionIsTheLatest_shouldReviseItWithoutReadingTheUpdate() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).revisionId(3).build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        final UpdateRevision savedRevision = revision.toBuilder().revisionId(4).build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class), eq(new RevisionTag(3, 0))))
+                .thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.save(any(UpdateRevision.class))).thenReturn(savedRevision);
+
+        // When
+        final UpdateRevision result = manager.reviseUpdate(revision, new RevisionTag(3, 0));
+
+        // Then
+        assertThat(result).isEqualTo(savedRevision);
+        verify(updateRevisionRepository).save(getMatcherThatIgnoreCreationDate(revision.toBuilder().revisionId(4).build()));
+        verify(updateRevisionRepository, never()).findTopByUuidAndUserIdOrderByRevisionIdDesc(any(UUID.class), anyString());
+    }
+
+    @Test
+    public void reviseUpdate_whenExpectedRevisionAbove127IsTheLatestButItsHeadIsOutOfDate_shouldRestoreItAndRevise() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).revisionId(new Integer(200)).build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        final UpdateRevision savedRevision = revision.toBuilder().revisionId(201).build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class), eq(new RevisionTag(200, 0))))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(currentRevision.getUuid(), userId))
+                .thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.save(any(UpdateRevision.class))).thenReturn(savedRevision);
+
+        // When
+        final UpdateRevision result = manager.reviseUpdate(revision, new RevisionTag(200, 0));
+
+        // Then
+        assertThat(result).isEqualTo(savedRevision);
+        verify(updateRevisionRepository).replaceLatestUpdateInfo(currentRevision);
+    }
+
+    @Test
+    public void reviseUpdate_whenExpectedRevisionIsStale_shouldThrowStaleRevisionException() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).revisionId(4).build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class), eq(new RevisionTag(3, 0))))
+                .thenReturn(Optional.empty());
+        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(currentRevision.getUuid(), userId))
+                .thenReturn(Optional.of(currentRevision));
+
+        // When - Then
+        assertThatExceptionOfType(StaleRevisionException.class)
+                .isThrownBy(() -> manager.reviseUpdate(revision, new RevisionTag(3, 0)))
+                .withMessage("Update " + revision.getUuid() + " is at revision 4, not 3");
+        verify(updateRevisionRepository, never()).save(any(UpdateRevision.class));
+    }
+
+    @Test
+    public void reviseUpdate_whenDraftIsSavedAsADraft_shouldEditItInPlace() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId)
+                .revisionId(2)
+                .creationDate(new Date(1234567890L))
+                .build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .description("New description")
+                .creationDate(null)
+                .build();
+        final UpdateRevision editedRevision = revision.toBuilder()
+                .id(currentRevision.getId())
+                .creationDate(currentRevision.getCreationDate())
+                .build();
+
+        when(updateRevisionRepository.editLatestUpdateInfo(revision, Optional.empty())).thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.editUpdateRevision(any(UpdateRevision.class))).thenReturn(Optional.of(editedRevision));
+
+        // When
+        final UpdateRevision result = manager.reviseUpdate(revision);
+
+        // Then
+        assertThat(result).isEqualTo(editedRevision);
+        verify(updateRevisionRepository).editUpdateRevision(revision.toBuilder()
+                .id(null)
+                .revisionId(2)
+                .creationDate(currentRevision.getCreationDate())
+                .editVersion(1)
+                .build());
+        verify(updateRevisionRepository, never()).save(any(UpdateRevision.class));
+        verify(updateRevisionRepository, never()).reviseLatestUpdateInfo(any(UpdateRevision.class), anyListOf(UpdateStatus.class));
+        verify(updateCountRepository).move(currentRevision, revision);
+    }
+
+    @Test
+    public void reviseUpdate_whenEditedDraftIsSavedAsADraft_shouldBumpItsEditVersion() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId)
+                .revisionId(2)
+                .editVersion(4)
+                .build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .description("New description")
+                .editVersion(null)
+                .build();
+
+        when(updateRevisionRepository.editLatestUpdateInfo(revision, Optional.of(new RevisionTag(2, 4)))).thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.editUpdateRevision(any(UpdateRevision.class))).thenReturn(Optional.empty());
+
+        // When
+        final UpdateRevision result = manager.reviseUpdate(revision, new RevisionTag(2, 4));
+
+        // Then
+        assertThat(result).isEqualTo(revision.toBuilder().id(null).editVersion(5).build());
+        assertThat(RevisionTag.of(result).toString()).isEqualTo("2.5");
+        verify(updateRevisionRepository).editUpdateRevision(revision.toBuilder().id(null).editVersion(5).build());
+    }
+
+    @Test
+    public void reviseUpdate_whenExpectedDraftHasBeenEditedSince_shouldThrowStaleRevisionException() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId)
+                .revisionId(3)
+                .editVersion(1)
+                .build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .description("New description")
+                .editVersion(null)
+                .build();
+
+        when(updateRevisionRepository.editLatestUpdateInfo(revision, Optional.of(new RevisionTag(3, 0)))).thenReturn(Optional.empty());
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class), eq(new RevisionTag(3, 0))))
+                .thenReturn(Optional.empty());
+        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(currentRevision.getUuid(), userId))
+                .thenReturn(Optional.of(currentRevision));
+
+        // When - Then
+        assertThatExceptionOfType(StaleRevisionException.class)
+                .isThrownBy(() -> manager.reviseUpdate(revision, new RevisionTag(3, 0)))
+                .withMessage("Update " + revision.getUuid() + " is at revision 3.1, not 3");
+        verify(updateRevisionRepository, never()).editUpdateRevision(any(UpdateRevision.class));
+        verify(updateRevisionRepository, never()).save(any(UpdateRevision.class));
+    }
+
+    @Test
+    public void reviseUpdate_whenScheduledUpdateIsSavedAsADraft_shouldCreateANewRevision() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = buildScheduledUpdate(userId, false);
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.DRAFT)
+                .scheduledDate(null)
+                .build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+
+        // When
+        manager.reviseUpdate(revision);
+
+        // Then
+        verify(updateRevisionRepository).editLatestUpdateInfo(revision, Optional.empty());
+        verify(updateRevisionRepository, never()).editUpdateRevision(any(UpdateRevision.class));
+        verify(updateRevisionRepository).save(getMatcherThatIgnoreCreationDate(
+                revision.toBuilder().revisionId(currentRevision.getRevisionId() + 1).build()
+        ));
+    }
+
+    @Test
+    public void reviseUpdate_whenLatestRevisionIsMissing_shouldRestoreItAndRetry() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.empty(), Optional.of(currentRevision));
+        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(currentRevision.getUuid(), userId))
+                .thenReturn(Optional.of(currentRevision));
+
+        // When
+        manager.reviseUpdate(revision);
+
+        // Then
+        verify(updateRevisionRepository).replaceLatestUpdateInfo(currentRevision);
+        verify(updateRevisionRepository).save(getMatcherThatIgnoreCreationDate(
+                revision.toBuilder().revisionId(currentRevision.getRevisionId() + 1).build()
+        ));
+    }
+
+    @Test
+    public void reviseUpdate_whenHistorySaveFails_shouldPutTheLatestRevisionBackAndFail() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        final IllegalStateException failure = new IllegalStateException("Database unavailable");
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.save(any(UpdateRevision.class))).thenThrow(failure);
+        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(currentRevision.getUuid(), userId))
+                .thenReturn(Optional.of(currentRevision));
+
+        // When - Then
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> manager.reviseUpdate(revision))
+                .matches(e -> e == failure);
+        verify(updateRevisionRepository).restoreLatestUpdateInfo(currentRevision, currentRevision.getRevisionId() + 1);
+        verify(updateRevisionRepository, never()).completeLatestUpdateInfo(any(UpdateRevision.class));
     }
 
     @Test
@@ -236,7 +586,7 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
                 .uuid(updateUuid)
                 .build();
 
-        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId))
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
                 .thenReturn(Optional.of(currentRevision));
         when(updateRevisionRepository.save(getMatcherThatIgnoreCreationDate(revisionWithoutId))).thenReturn(mockResponse);
 
@@ -244,7 +594,7 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
         final UpdateRevision returnedRevision = manager.reviseUpdate(revision);
 
         // Then
-        verify(updateRevisionRepository).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
+        verify(updateRevisionRepository, never()).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
         verify(updateRevisionRepository).save(getMatcherThatIgnoreCreationDate(revisionWithoutId));
         assertEquals(mockResponse, returnedRevision);
     }
@@ -272,7 +622,7 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
                 .status(UpdateStatus.ARCHIVED)
                 .build();
 
-        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId))
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
                 .thenReturn(Optional.of(currentRevision));
         when(updateRevisionRepository.save(getMatcherThatIgnoreCreationDate(revisionWithoutCorrectRevisionId)))
                 .thenReturn(mockResponse);
@@ -281,7 +631,7 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
         final UpdateRevision returnedRevision = manager.reviseUpdate(revision);
 
         // Then
-        verify(updateRevisionRepository).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
+        verify(updateRevisionRepository, never()).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
         verify(updateRevisionRepository).save(getMatcherThatIgnoreCreationDate(revisionWithoutCorrectRevisionId));
         assertEquals(mockResponse, returnedRevision);
     }
@@ -309,7 +659,7 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
                 .status(UpdateStatus.ARCHIVED)
                 .build();
 
-        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId))
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
                 .thenReturn(Optional.of(currentRevision));
         when(updateRevisionRepository.save(getMatcherToVerifyCreationDateDifferent(revisionWithRevisionId)))
                 .thenReturn(mockResponse);
@@ -318,7 +668,7 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
         final UpdateRevision returnedRevision = manager.reviseUpdate(revision);
 
         // Then
-        verify(updateRevisionRepository).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
+        verify(updateRevisionRepository, never()).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
         verify(updateRevisionRepository).save(getMatcherToVerifyCreationDateDifferent(revisionWithRevisionId));
         assertEquals(mockResponse, returnedRevision);
     }
@@ -342,7 +692,7 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
                 .revisionId(currentRevision.getRevisionId() + 1)
                 .build();
 
-        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId))
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
                 .thenReturn(Optional.of(currentRevision));
         when(updateRevisionRepository.save(getMatcherThatIgnoreCreationDate(mockResponse)))
                 .thenReturn(mockResponse);
@@ -351,118 +701,446 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
         final UpdateRevision returnedRevision = manager.reviseUpdate(revision);
 
         // Then
-        verify(updateRevisionRepository).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
+        verify(updateRevisionRepository, never()).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
         verify(updateRevisionRepository).save(getMatcherThatIgnoreCreationDate(mockResponse));
+        verify(updateRevisionRepository).completeLatestUpdateInfo(mockResponse);
+        verify(updateCountRepository).move(currentRevision, revision.toBuilder()
+                .id(null)
+                .revisionId(currentRevision.getRevisionId() + 1)
+                .creationDate(null)
+                .build());
         assertEquals(mockResponse, returnedRevision);
     }
 
     @Test
-    public void getAllUpdates_whenNoUpdateExists_shouldReturnEmptyList() {
+    public void reviseUpdate_whenRevisionIsPublished_shouldPointItsSegmentToIt() {
         // Given
-        final Pageable pageable = new PageRequest(0, 20);
         final String userId = UUID.randomUUID().toString();
-        final List<String> statusFilters = Collections.emptyList();
-        final Page<UpdateRevision> repositoryResponse = new PageImpl<>(Collections.emptyList(), pageable, 0);
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).status(UpdateStatus.DRAFT).build();
+        final UpdateRevision revision = currentRevision.toBuilder().status(UpdateStatus.PUBLISHED).build();
+        final UpdateRevision savedRevision = revision.toBuilder()
+                .revisionId(currentRevision.getRevisionId() + 1)
+                .creationDate(new Date(1234567890123L))
+                .build();
 
-        when(updateRevisionRepository.getAllLatestUpdateInfo(pageable, Optional.of(userId), statusFilters, Collections.emptyList()))
-                .thenReturn(repositoryResponse);
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.save(any(UpdateRevision.class))).thenReturn(savedRevision);
 
         // When
-        final Page<UpdateRevision> managerResponse = manager.getAllUpdates(pageable, userId, statusFilters, Collections.emptyList());
+        manager.reviseUpdate(revision);
 
         // Then
-        verify(updateRevisionRepository).getAllLatestUpdateInfo(pageable, Optional.of(userId), statusFilters, Collections.emptyList());
-        assertEquals(managerResponse.getTotalElements(), 0);
-        assertEquals(managerResponse.getTotalPages(), 0);
-        assertEquals(managerResponse.getContent().size(), 0);
+        verify(publishedUpdateRepository).publish(savedRevision);
+        verify(publishedUpdateRepository, never()).unpublish(any(UpdateRevision.class), any(Optional.class));
     }
 
     @Test
-    public void getAllUpdates_whenStatusFilterGiven_shouldReturnFilteredUpdateList() {
+    public void reviseUpdate_whenLookupRunsBeforeThePointerIsMoved_shouldNotKeepWhatItRead() {
         // Given
-        final Pageable pageable = new PageRequest(0, 20);
         final String userId = UUID.randomUUID().toString();
-        final String[] statuses = {UpdateStatus.DRAFT.getName(), UpdateStatus.PUBLISHED.getName()};
-        final List<String> statusFilters = Arrays.asList(statuses);
-        final List<UpdateRevision> filteredUpdateList = this.getAllKindsOfUpdates(userId)
-                .parallelStream()
-                .filter((item) -> statusFilters.contains(item.getStatus().getName()))
-                .collect(Collectors.toList());
-        final Page<UpdateRevision> repositoryResponse = new PageImpl<>(filteredUpdateList, pageable, filteredUpdateList.size());
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision previousUpdate = getCreatedUpdateRevisionBuilder(userId).segmentId(segmentId).status(UpdateStatus.PUBLISHED).build();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).segmentId(segmentId).status(UpdateStatus.DRAFT).build();
+        final UpdateRevision revision = currentRevision.toBuilder().status(UpdateStatus.PUBLISHED).build();
+        final UpdateRevision savedRevision = revision.toBuilder().revisionId(currentRevision.getRevisionId() + 1).build();
 
-        when(updateRevisionRepository.getAllLatestUpdateInfo(pageable, Optional.of(userId), statusFilters, Collections.emptyList()))
-                .thenReturn(repositoryResponse);
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.save(any(UpdateRevision.class))).thenReturn(savedRevision);
+        when(publishedUpdateRepository.findOne(userId, segmentId))
+                .thenReturn(Optional.of(PublishedUpdate.builder().userId(userId).segmentId(segmentId).revision(previousUpdate).build()))
+                .thenReturn(Optional.of(PublishedUpdate.builder().userId(userId).segmentId(segmentId).revision(savedRevision).build()));
+        doAnswer(invocation -> manager.getLatestPublishedUpdateForSegment(userId, segmentId))
+                .when(publishedUpdateRepository).publish(savedRevision);
 
         // When
-        final Page<UpdateRevision> managerResponse = manager.getAllUpdates(pageable, userId, statusFilters, Collections.emptyList());
+        manager.reviseUpdate(revision);
+        final Optional<UpdateRevision> result = manager.getLatestPublishedUpdateForSegment(userId, segmentId);
 
         // Then
-        verify(updateRevisionRepository).getAllLatestUpdateInfo(pageable, Optional.of(userId), statusFilters, Collections.emptyList());
-        assertEquals(managerResponse.getTotalElements(), filteredUpdateList.size());
-        assertEquals(managerResponse.getContent().size(), filteredUpdateList.size());
-        assertThat(managerResponse.getContent()).containsExactlyInAnyOrder(filteredUpdateList.toArray(new UpdateRevision[0]));
+        assertThat(result).contains(savedRevision);
     }
 
     @Test
-    public void getUpdateByUuid_whenNoUpdateFound_UpdateNotFoundException() {
+    public void reviseUpdate_whenPublishedUpdateIsArchived_shouldPointItsSegmentToThePreviousPublishedUpdate() {
         // Given
-        final UUID updateUuid = UUID.randomUUID();
         final String userId = UUID.randomUUID().toString();
-        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId))
-                .thenReturn(Optional.empty());
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).status(UpdateStatus.PUBLISHED).build();
+        final UpdateRevision revision = currentRevision.toBuilder().status(UpdateStatus.ARCHIVED).build();
+        final UpdateRevision previousUpdate = getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(currentRevision.getSegmentId())
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, currentRevision.getSegmentId()))
+                .thenReturn(Optional.of(previousUpdate));
 
         // When
-        assertThatExceptionOfType(UpdateNotFoundException.class)
-                .isThrownBy(() -> manager.getUpdateByUuid(updateUuid, userId))
-                .withMessage("No update with id " + updateUuid.toString());
+        manager.reviseUpdate(revision);
 
         // Then
-        verify(updateRevisionRepository).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
+        verify(publishedUpdateRepository, never()).publish(any(UpdateRevision.class));
+        verify(publishedUpdateRepository).unpublish(currentRevision, Optional.of(previousUpdate));
     }
 
     @Test
-    public void getUpdateByUuid_whenUpdateExists_shouldReturnIt() {
+    public void reviseUpdate_whenPublishedUpdateMovesToAnotherSegment_shouldMoveItsPointer() {
         // Given
-        final UUID updateUuid = UUID.randomUUID();
         final String userId = UUID.randomUUID().toString();
-        final UpdateRevision update = getCreatedUpdateRevisionBuilder(userId)
-                .uuid(updateUuid)
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(null)
+                .status(UpdateStatus.PUBLISHED)
                 .build();
-        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId))
-                .thenReturn(Optional.of(update));
+        final UpdateRevision revision = currentRevision.toBuilder().segmentId(UUID.randomUUID().toString()).build();
+        final UpdateRevision savedRevision = revision.toBuilder().revisionId(currentRevision.getRevisionId() + 1).build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+        when(updateRevisionRepository.save(any(UpdateRevision.class))).thenReturn(savedRevision);
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoWithoutSegmentId(userId)).thenReturn(Optional.empty());
 
         // When
-        final UpdateRevision managerResponse = manager.getUpdateByUuid(updateUuid, userId);
+        manager.reviseUpdate(revision);
 
         // Then
-        verify(updateRevisionRepository).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
-        assertEquals(update, managerResponse);
+        verify(publishedUpdateRepository).publish(savedRevision);
+        verify(publishedUpdateRepository).unpublish(currentRevision, Optional.empty());
     }
 
     @Test
-    public void getLatestPublishedUpdateForSegment_whenNoPublishedUpdateExists_shouldReturnNoSuchUpdateException() {
+    public void reviseUpdate_whenRevisionIsScheduled_shouldQueueItsPublication() {
         // Given
         final String userId = UUID.randomUUID().toString();
-        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.SCHEDULED)
+                .scheduledDate(new Date(1234567890123L))
+                .build();
 
-        when(updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId))
-                .thenReturn(Optional.empty());
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
 
         // When
-        assertThatExceptionOfType(NoSuchUpdateException.class)
-                .isThrownBy(() -> manager.getLatestPublishedUpdateForSegment(userId, segmentId))
-                .withMessage("No published update");
+        manager.reviseUpdate(revision);
 
         // Then
-        verify(updateRevisionRepository).getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+        assertThat(scheduledPublicationQueue.pollDue(new Date(1234567890123L)))
+                .extracting(UpdateRevision::getUuid)
+                .containsExactly(currentRevision.getUuid());
+        verify(scheduledTransitionRepository).save(ScheduledTransition.of(revision.toBuilder().revisionId(currentRevision.getRevisionId() + 1).build()));
     }
 
     @Test
-    public void getLatestPublishedUpdateForSegment_whenPublishedUpdateExists_shouldReturnIt() {
+    public void reviseUpdate_whenRevisionIsScheduledForAUserOfAnotherNode_shouldOnlyRecordItsTransition() {
         // Given
         final String userId = UUID.randomUUID().toString();
-        final String segmentId = UUID.randomUUID().toString();
-        final UpdateRevision response = getCreatedUpdateRevisionBuilder(userId)
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.SCHEDULED)
+                .scheduledDate(new Date(1234567890123L))
+                .build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+        when(publisherPartitionManager.owns(userId)).thenReturn(false);
+
+        // When
+        manager.reviseUpdate(revision);
+
+        // Then
+        assertThat(scheduledPublicationQueue.size()).isEqualTo(0);
+        verify(scheduledTransitionRepository).save(ScheduledTransition.of(revision.toBuilder().revisionId(currentRevision.getRevisionId() + 1).build()));
+    }
+
+    @Test
+    public void reviseUpdate_whenRevisionIsScheduledForArchiving_shouldRecordAnArchivingTransition() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.SCHEDULED)
+                .scheduledStatus(UpdateStatus.ARCHIVED)
+                .scheduledDate(new Date(1234567890123L))
+                .build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+
+        // When
+        manager.reviseUpdate(revision);
+
+        // Then
+        verify(scheduledTransitionRepository).save(argThat(new ArgumentMatcher<ScheduledTransition>() {
+            @Override
+            public boolean matches(Object argument) {
+                return ((ScheduledTransition) argument).getTargetStatus() == UpdateStatus.ARCHIVED;
+            }
+        }));
+    }
+
+    @Test
+    public void reviseUpdate_whenRevisionIsScheduledForADraft_shouldThrowInvalidUpdateOperation() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.SCHEDULED)
+                .scheduledStatus(UpdateStatus.DRAFT)
+                .scheduledDate(new Date(1234567890123L))
+                .build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+
+        // When - Then
+        assertThatExceptionOfType(InvalidUpdateOperationException.class)
+                .isThrownBy(() -> manager.reviseUpdate(revision))
+                .withMessage("Cannot schedule status " + UpdateStatus.DRAFT.getName());
+        verify(scheduledTransitionRepository, never()).save(any(ScheduledTransition.class));
+    }
+
+    @Test
+    public void reviseUpdate_whenScheduledUpdateIsUnscheduled_shouldRemoveItsTransition() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision currentRevision = buildScheduledUpdate(userId, false);
+        final UpdateRevision revision = currentRevision.toBuilder()
+                .status(UpdateStatus.DRAFT)
+                .scheduledDate(null)
+                .build();
+
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(revision), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(currentRevision));
+
+        // When
+        manager.reviseUpdate(revision);
+
+        // Then
+        verify(scheduledTransitionRepository).removeSupersededBy(Collections.singletonList(
+                revision.toBuilder().revisionId(currentRevision.getRevisionId() + 1).creationDate(null).build()
+        ));
+        verify(scheduledTransitionRepository, never()).save(any(ScheduledTransition.class));
+    }
+
+    @Test
+    public void getAllUpdates_whenNoUpdateExists_shouldReturnEmptyList() {
+        // Given
+        final Pageable pageable = new PageRequest(0, 20);
+        final String userId = UUID.randomUUID().toString();
+        final List<String> statusFilters = Collections.emptyList();
+        final Page<UpdateRevision> repositoryResponse = new PageImpl<>(Collections.emptyList(), pageable, 0);
+
+        when(updateRevisionRepository.getAllLatestUpdateInfo(pageable, Optional.of(userId), statusFilters, Collections.emptyList()))
+                .thenReturn(repositoryResponse);
+
+        // When
+        final Page<UpdateRevision> managerResponse = manager.getAllUpdates(pageable, userId, statusFilters, Collections.emptyList());
+
+        // Then
+        verify(updateRevisionRepository).getAllLatestUpdateInfo(pageable, Optional.of(userId), statusFilters, Collections.emptyList());
+        assertEquals(managerResponse.getTotalElements(), 0);
+        assertEquals(managerResponse.getTotalPages(), 0);
+        assertEquals(managerResponse.getContent().size(), 0);
+    }
+
+    @Test
+    public void getAllUpdates_whenStatusFilterGiven_shouldReturnFilteredUpdateList() {
+        // Given
+        final Pageable pageable = new PageRequest(0, 20);
+        final String userId = UUID.randomUUID().toString();
+        final String[] statuses = {UpdateStatus.DRAFT.getName(), UpdateStatus.PUBLISHED.getName()};
+        final List<String> statusFilters = Arrays.asList(statuses);
+        final List<UpdateRevision> filteredUpdateList = this.getAllKindsOfUpdates(userId)
+                .parallelStream()
+                .filter((item) -> statusFilters.contains(item.getStatus().getName()))
+                .collect(Collectors.toList());
+        final Page<UpdateRevision> repositoryResponse = new PageImpl<>(filteredUpdateList, pageable, filteredUpdateList.size());
+
+        when(updateRevisionRepository.getAllLatestUpdateInfo(pageable, Optional.of(userId), statusFilters, Collections.emptyList()))
+                .thenReturn(repositoryResponse);
+
+        // When
+        final Page<UpdateRevision> managerResponse = manager.getAllUpdates(pageable, userId, statusFilters, Collections.emptyList());
+
+        // Then
+        verify(updateRevisionRepository).getAllLatestUpdateInfo(pageable, Optional.of(userId), statusFilters, Collections.emptyList());
+        assertEquals(managerResponse.getTotalElements(), filteredUpdateList.size());
+        assertEquals(managerResponse.getContent().size(), filteredUpdateList.size());
+        assertThat(managerResponse.getContent()).containsExactlyInAnyOrder(filteredUpdateList.toArray(new UpdateRevision[0]));
+    }
+
+    @Test
+    public void getAllUpdates_shouldCountTheTotalWithThePageWithoutReadingTheCounters() {
+        // Given
+        final Pageable pageable = new PageRequest(0, 20);
+        final String userId = UUID.randomUUID().toString();
+        final Page<UpdateRevision> repositoryResponse = new PageImpl<>(Collections.emptyList(), pageable, 2);
+        when(updateRevisionRepository.getAllLatestUpdateInfo(pageable, Optional.of(userId), Collections.emptyList(), Collections.emptyList()))
+                .thenReturn(repositoryResponse);
+
+        // When
+        final Page<UpdateRevision> managerResponse = manager.getAllUpdates(pageable, userId, Collections.emptyList(), Collections.emptyList());
+
+        // Then
+        assertThat(managerResponse).isSameAs(repositoryResponse);
+        verify(updateCountRepository, never()).getCounts(anyString());
+    }
+
+    @Test
+    public void getUpdateCounts_shouldSumTheCountersOfTheUser() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        when(updateCountRepository.getCounts(userId)).thenReturn(Arrays.asList(
+                UpdateCount.builder().userId(userId).segmentId("segment").status(UpdateStatus.DRAFT).count(3).build(),
+                UpdateCount.builder().userId(userId).segmentId("other").status(UpdateStatus.DRAFT).count(2).build()
+        ));
+
+        // When
+        final UpdateCounts result = manager.getUpdateCounts(userId);
+
+        // Then
+        assertThat(result.getTotal()).containsEntry(UpdateStatus.DRAFT.getName(), 5L).containsEntry(UpdateStatus.PUBLISHED.getName(), 0L);
+        assertThat(result.getSegments().get("segment")).containsEntry(UpdateStatus.DRAFT.getName(), 3L);
+        assertThat(result.getSegments().get("other")).containsEntry(UpdateStatus.DRAFT.getName(), 2L);
+    }
+
+    @Test
+    public void getAllUpdates_whenCursorGiven_shouldReturnTheSliceAfterIt() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final List<String> statusFilters = Collections.singletonList(UpdateStatus.DRAFT.getName());
+        final Optional<UpdateCursor> cursor = Optional.of(new UpdateCursor(new Date(), UUID.randomUUID()));
+        final List<UpdateRevision> updates = Collections.singletonList(getCreatedUpdateRevisionBuilder(userId).build());
+        final Slice<UpdateRevision> repositoryResponse = new SliceImpl<>(updates, new PageRequest(0, 20), true);
+
+        when(updateRevisionRepository.getAllLatestUpdateInfo(cursor, 20, Optional.of(userId), statusFilters, Collections.emptyList()))
+                .thenReturn(repositoryResponse);
+
+        // When
+        final Slice<UpdateRevision> managerResponse = manager.getAllUpdates(cursor, 20, userId, statusFilters, Collections.emptyList());
+
+        // Then
+        verify(updateRevisionRepository).getAllLatestUpdateInfo(cursor, 20, Optional.of(userId), statusFilters, Collections.emptyList());
+        assertThat(managerResponse.getContent()).containsExactlyElementsOf(updates);
+        assertThat(managerResponse.hasNext()).isTrue();
+    }
+
+    @Test
+    public void getUpdateByUuid_whenNoUpdateFound_UpdateNotFoundException() {
+        // Given
+        final UUID updateUuid = UUID.randomUUID();
+        final String userId = UUID.randomUUID().toString();
+        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId))
+                .thenReturn(Optional.empty());
+
+        // When
+        assertThatExceptionOfType(UpdateNotFoundException.class)
+                .isThrownBy(() -> manager.getUpdateByUuid(updateUuid, userId))
+                .withMessage("No update with id " + updateUuid.toString());
+
+        // Then
+        verify(updateRevisionRepository).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
+    }
+
+    @Test
+    public void getUpdateByUuid_whenUpdateExists_shouldReturnIt() {
+        // Given
+        final UUID updateUuid = UUID.randomUUID();
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision update = getCreatedUpdateRevisionBuilder(userId)
+                .uuid(updateUuid)
+                .build();
+        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId))
+                .thenReturn(Optional.of(update));
+
+        // When
+        final UpdateRevision managerResponse = manager.getUpdateByUuid(updateUuid, userId);
+
+        // Then
+        verify(updateRevisionRepository).findTopByUuidAndUserIdOrderByRevisionIdDesc(updateUuid, userId);
+        assertEquals(update, managerResponse);
+    }
+
+    @Test
+    public void getUpdateHistory_whenNoRevisionFound_shouldThrowUpdateNotFoundException() {
+        // Given
+        final UUID updateUuid = UUID.randomUUID();
+        final String userId = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 10);
+        when(updateRevisionRepository.getUpdateHistory(userId, updateUuid, pageable))
+                .thenReturn(new PageImpl<>(Collections.emptyList(), pageable, 0));
+
+        // When
+        assertThatExceptionOfType(UpdateNotFoundException.class)
+                .isThrownBy(() -> manager.getUpdateHistory(updateUuid, userId, pageable))
+                .withMessage("No update with id " + updateUuid.toString());
+
+        // Then
+        verify(updateRevisionRepository).getUpdateHistory(userId, updateUuid, pageable);
+    }
+
+    @Test
+    public void getUpdateHistory_whenRevisionsExist_shouldReturnThem() {
+        // Given
+        final UUID updateUuid = UUID.randomUUID();
+        final String userId = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 10);
+        final UpdateRevision revision = getCreatedUpdateRevisionBuilder(userId).uuid(updateUuid).build();
+        final Page<UpdateRevision> expected = new PageImpl<>(Collections.singletonList(revision), pageable, 1);
+        when(updateRevisionRepository.getUpdateHistory(userId, updateUuid, pageable)).thenReturn(expected);
+
+        // When
+        final Page<UpdateRevision> result = manager.getUpdateHistory(updateUuid, userId, pageable);
+
+        // Then
+        verify(updateRevisionRepository).getUpdateHistory(userId, updateUuid, pageable);
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void getLatestPublishedUpdateForSegment_whenNoPublishedUpdateExists_shouldReturnEmpty() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId))
+                .thenReturn(Optional.empty());
+
+        // When
+        final Optional<UpdateRevision> managerResponse = manager.getLatestPublishedUpdateForSegment(userId, segmentId);
+
+        // Then
+        verify(updateRevisionRepository).getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+        assertThat(managerResponse).isEmpty();
+    }
+
+    @Test
+    public void getLatestPublishedUpdateForSegment_whenNoPublishedUpdateExistsAndCalledTwice_shouldQueryTheRepositoryOnce() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId))
+                .thenReturn(Optional.empty());
+
+        // When
+        manager.getLatestPublishedUpdateForSegment(userId, segmentId);
+        final Optional<UpdateRevision> managerResponse = manager.getLatestPublishedUpdateForSegment(userId, segmentId);
+
+        // Then
+        verify(updateRevisionRepository, times(1)).getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+        assertThat(managerResponse).isEmpty();
+    }
+
+    @Test
+    public void getLatestPublishedUpdateForSegment_whenPublishedUpdateExists_shouldReturnIt() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision response = getCreatedUpdateRevisionBuilder(userId)
                 .segmentId(segmentId)
                 .build();
 
@@ -470,7 +1148,7 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
                 .thenReturn(Optional.of(response));
 
         // When
-        UpdateRevision managerResponse = manager.getLatestPublishedUpdateForSegment(userId, segmentId);
+        UpdateRevision managerResponse = manager.getLatestPublishedUpdateForSegment(userId, segmentId).get();
 
         // Then
         verify(updateRevisionRepository).getLatestPublishedUpdateInfoBySegment(userId, segmentId);
@@ -478,7 +1156,135 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
     }
 
     @Test
-    public void getLatestPublishedUpdate_whenNoPublishedUpdateExists_shouldReturnNoSuchUpdateException() {
+    public void getLatestPublishedUpdateForSegment_whenCalledTwice_shouldQueryTheRepositoryOnce() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision response = getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .build();
+
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId))
+                .thenReturn(Optional.of(response));
+
+        // When
+        manager.getLatestPublishedUpdateForSegment(userId, segmentId);
+        final UpdateRevision managerResponse = manager.getLatestPublishedUpdateForSegment(userId, segmentId).get();
+
+        // Then
+        verify(updateRevisionRepository, times(1)).getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+        assertEquals(response, managerResponse);
+    }
+
+    @Test
+    public void getLatestPublishedUpdateForSegment_whenAnUpdateOfTheUserIsRevised_shouldQueryTheRepositoryAgain() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision published = getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        final UpdateRevision archived = published.toBuilder().status(UpdateStatus.ARCHIVED).build();
+        final UpdateRevision other = getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+
+        when(publishedUpdateRepository.findOne(userId, segmentId))
+                .thenReturn(Optional.of(PublishedUpdate.builder().userId(userId).segmentId(segmentId).revision(published).build()))
+                .thenReturn(Optional.of(PublishedUpdate.builder().userId(userId).segmentId(segmentId).revision(other).build()));
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId))
+                .thenReturn(Optional.of(other));
+        when(updateRevisionRepository.reviseLatestUpdateInfo(eq(archived), anyListOf(UpdateStatus.class)))
+                .thenReturn(Optional.of(published));
+
+        // When
+        manager.getLatestPublishedUpdateForSegment(userId, segmentId);
+        manager.reviseUpdate(archived);
+        final UpdateRevision managerResponse = manager.getLatestPublishedUpdateForSegment(userId, segmentId).get();
+
+        // Then
+        verify(publishedUpdateRepository, times(2)).findOne(userId, segmentId);
+        verify(publishedUpdateRepository).unpublish(published, Optional.of(other));
+        assertEquals(other, managerResponse);
+    }
+
+    @Test
+    public void getLatestPublishedUpdateForSegment_whenSegmentHasAPointer_shouldReturnItsRevisionWithoutReadingTheUpdates() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision update = getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        when(publishedUpdateRepository.findOne(userId, segmentId)).thenReturn(Optional.of(
+                PublishedUpdate.builder().userId(userId).segmentId(segmentId).uuid(update.getUuid()).revision(update).build()
+        ));
+
+        // When
+        final Optional<UpdateRevision> managerResponse = manager.getLatestPublishedUpdateForSegment(userId, segmentId);
+
+        // Then
+        assertThat(managerResponse).contains(update);
+        verify(updateRevisionRepository, never()).getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+        verify(publishedUpdateRepository, never()).save(any(String.class), any(String.class), any(UpdateRevision.class));
+    }
+
+    @Test
+    public void getLatestPublishedUpdateForSegment_whenSegmentHasAnEmptyPointer_shouldReturnEmpty() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        when(publishedUpdateRepository.findOne(userId, segmentId)).thenReturn(Optional.of(
+                PublishedUpdate.builder().userId(userId).segmentId(segmentId).build()
+        ));
+
+        // When
+        final Optional<UpdateRevision> managerResponse = manager.getLatestPublishedUpdateForSegment(userId, segmentId);
+
+        // Then
+        assertThat(managerResponse).isEmpty();
+        verify(updateRevisionRepository, never()).getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+    }
+
+    @Test
+    public void getLatestPublishedUpdateForSegment_whenSegmentHasNoPointer_shouldStoreOne() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision update = getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId)).thenReturn(Optional.of(update));
+
+        // When
+        final Optional<UpdateRevision> managerResponse = manager.getLatestPublishedUpdateForSegment(userId, segmentId);
+
+        // Then
+        assertThat(managerResponse).contains(update);
+        verify(publishedUpdateRepository).save(userId, segmentId, update);
+    }
+
+    @Test
+    public void getLatestPublishedUpdateForSegment_whenSegmentHasNoPublishedUpdate_shouldNotStoreAPointer() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId)).thenReturn(Optional.empty());
+
+        // When
+        final Optional<UpdateRevision> managerResponse = manager.getLatestPublishedUpdateForSegment(userId, segmentId);
+
+        // Then
+        assertThat(managerResponse).isEmpty();
+        verify(publishedUpdateRepository, never()).save(any(String.class), any(String.class), any(UpdateRevision.class));
+    }
+
+    @Test
+    public void getLatestPublishedUpdate_whenNoPublishedUpdateExists_shouldReturnEmpty() {
         // Given
         final String userId = UUID.randomUUID().toString();
 
@@ -486,12 +1292,11 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
                 .thenReturn(Optional.empty());
 
         // When
-        assertThatExceptionOfType(NoSuchUpdateException.class)
-                .isThrownBy(() -> manager.getLatestPublishedUpdateForOtherSegment(userId))
-                .withMessage("No published update");
+        final Optional<UpdateRevision> managerResponse = manager.getLatestPublishedUpdateForOtherSegment(userId);
 
         // Then
         verify(updateRevisionRepository).getLatestPublishedUpdateInfoWithoutSegmentId(userId);
+        assertThat(managerResponse).isEmpty();
     }
 
     @Test
@@ -506,7 +1311,7 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
                 .thenReturn(Optional.of(response));
 
         // When
-        UpdateRevision managerResponse = manager.getLatestPublishedUpdateForOtherSegment(userId);
+        UpdateRevision managerResponse = manager.getLatestPublishedUpdateForOtherSegment(userId).get();
 
         // Then
         verify(updateRevisionRepository).getLatestPublishedUpdateInfoWithoutSegmentId(userId);
@@ -514,77 +1319,187 @@ public class UpdateRevisionManagerTest extends ServiceClientTest {
     }
 
     @Test
-    public void publishDueScheduledUpdates_whenADueScheduledUpdateExists_shouldUpdateIt() {
+    public void scheduleUpcomingPublications_whenUpdatesAreScheduled_shouldQueueThem() {
         // Given
         final String userId = UUID.randomUUID().toString();
-        final UpdateStatus status = UpdateStatus.SCHEDULED;
+        final Date until = new Date();
         final UpdateRevision dueUpdate = buildScheduledUpdate(userId, true);
-        final UpdateRevision notDueUpdate = buildScheduledUpdate(userId, false);
-        final List<UpdateRevision> scheduledUpdates = Arrays.asList(
-                dueUpdate,
-                notDueUpdate
-        );
-        final Page<UpdateRevision> scheduledUpdatesPage = new PageImpl<>(scheduledUpdates);
-        final UpdateRevision publishedDueUpdate = dueUpdate.toBuilder().scheduledDate(null).status(UpdateStatus.PUBLISHED).build();
-        when(updateRevisionRepository.getAllLatestUpdateInfo(any(Pageable.class), eq(status)))
-                .thenReturn(scheduledUpdatesPage);
-        when(updateRevisionRepository.findTopByUuidAndUserIdOrderByRevisionIdDesc(publishedDueUpdate.getUuid(), userId))
-                .thenReturn(Optional.of(dueUpdate));
+        when(scheduledTransitionRepository.getDueTransitions(until, Optional.empty(), 100))
+                .thenReturn(new SliceImpl<>(Collections.singletonList(ScheduledTransition.of(dueUpdate))));
+        when(updateRevisionRepository.getLatestUpdateInfo(userId, Collections.singletonList(dueUpdate.getUuid())))
+                .thenReturn(Collections.singletonList(dueUpdate));
+
+        // When
+        manager.scheduleUpcomingPublications(until, id -> true);
+
+        // Then
+        verify(scheduledTransitionRepository).getDueTransitions(until, Optional.empty(), 100);
+        verify(updateRevisionRepository, never()).save(any(UpdateRevision.class));
+        assertThat(scheduledPublicationQueue.pollDue(until)).containsExactly(dueUpdate);
+    }
+
+    @Test
+    public void scheduleUpcomingPublications_whenUpdatesAreFilteredOut_shouldNotQueueThem() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String otherUserId = UUID.randomUUID().toString();
+        final Date until = new Date();
+        final UpdateRevision dueUpdate = buildScheduledUpdate(userId, true);
+        final UpdateRevision otherDueUpdate = buildScheduledUpdate(otherUserId, true);
+        when(scheduledTransitionRepository.getDueTransitions(until, Optional.empty(), 100))
+                .thenReturn(new SliceImpl<>(Arrays.asList(ScheduledTransition.of(dueUpdate), ScheduledTransition.of(otherDueUpdate))));
+        when(updateRevisionRepository.getLatestUpdateInfo(userId, Collections.singletonList(dueUpdate.getUuid())))
+                .thenReturn(Collections.singletonList(dueUpdate));
+
+        // When
+        manager.scheduleUpcomingPublications(until, userId::equals);
+
+        // Then
+        assertThat(scheduledPublicationQueue.pollDue(until)).containsExactly(dueUpdate);
+        verify(updateRevisionRepository, never()).getLatestUpdateInfo(eq(otherUserId), anyListOf(UUID.class));
+    }
+
+    @Test
+    public void scheduleUpcomingPublications_whenStartDateGiven_shouldOnlyQueueTheTransitionsDueAfterIt() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final Date from = new Date(System.currentTimeMillis() - 1000);
+        final Date until = new Date();
+        final UpdateRevision dueUpdate = buildScheduledUpdate(userId, true);
+        when(scheduledTransitionRepository.getDueTransitions(from, until, Optional.empty(), 100))
+                .thenReturn(new SliceImpl<>(Collections.singletonList(ScheduledTransition.of(dueUpdate))));
+        when(updateRevisionRepository.getLatestUpdateInfo(userId, Collections.singletonList(dueUpdate.getUuid())))
+                .thenReturn(Collections.singletonList(dueUpdate));
 
         // When
-        manager.publishDueScheduledUpdates();
+        manager.scheduleUpcomingPublications(from, until, id -> true);
 
         // Then
-        verify(updateRevisionRepository).getAllLatestUpdateInfo(any(Pageable.class), eq(status));
-        verify(updateRevisionRepository, times(1)).save(getMatcherThatIgnoreCreationDate(
-                publishedDueUpdate.toBuilder()
-                        .revisionId(dueUpdate.getRevisionId() + 1)
-                        .build()
+        assertThat(scheduledPublicationQueue.pollDue(until)).containsExactly(dueUpdate);
+        verify(scheduledTransitionRepository, never()).getDueTransitions(any(Date.class), any(Optional.class), anyInt());
+    }
+
+    @Test
+    public void getScheduledUpdates_whenAnUpdateWasRevisedSinceItsTransition_shouldDropItAndRemoveTheTransition() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision dueUpdate = buildScheduledUpdate(userId, true);
+        final UpdateRevision revisedUpdate = buildScheduledUpdate(userId, true);
+        final UpdateRevision revisedHead = revisedUpdate.toBuilder()
+                .revisionId(revisedUpdate.getRevisionId() + 1)
+                .status(UpdateStatus.DRAFT)
+                .build();
+        when(updateRevisionRepository.getLatestUpdateInfo(userId, Arrays.asList(revisedUpdate.getUuid(), dueUpdate.getUuid())))
+                .thenReturn(Arrays.asList(dueUpdate, revisedHead));
+
+        // When
+        final List<UpdateRevision> result = manager.getScheduledUpdates(Arrays.asList(
+                ScheduledTransition.of(revisedUpdate),
+                ScheduledTransition.of(dueUpdate)
         ));
+
+        // Then
+        assertThat(result).containsExactly(dueUpdate);
+        verify(scheduledTransitionRepository).removeSupersededBy(Collections.singletonList(revisedHead));
+    }
+
+    @Test
+    public void publishScheduledUpdates_whenUpdatesAreNotDueOrNoLongerScheduled_shouldNotPublishThem() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision notDueUpdate = buildScheduledUpdate(userId, false);
+        final UpdateRevision draftUpdate = buildScheduledUpdate(userId, true).toBuilder()
+                .status(UpdateStatus.DRAFT)
+                .build();
+
+        // When
+        final BulkInsertResult result = manager.publishScheduledUpdates(Arrays.asList(notDueUpdate, draftUpdate));
+
+        // Then
+        verify(updateRevisionRepository, never()).insertUpdateRevisions(anyListOf(UpdateRevision.class));
+        assertThat(result.getInserted()).isEmpty();
+        assertThat(result.getConflicts()).isEmpty();
     }
 
     @Test
-    public void publishDueScheduledUpdates_whenNoDueScheduledUpdateExist_shouldUpdateNone() {
+    public void publishScheduledUpdates_whenAnUpdateWasRevisedConcurrently_shouldPublishTheOthersAndReportTheConflict() {
         // Given
         final String userId = UUID.randomUUID().toString();
-        final UpdateStatus status = UpdateStatus.SCHEDULED;
-        final UpdateRevision notDueUpdate1 = buildScheduledUpdate(userId, false);
-        final UpdateRevision notDueUpdate2 = buildScheduledUpdate(userId, false);
-        final List<UpdateRevision> scheduledUpdates = Arrays.asList(
-                notDueUpdate1,
-                notDueUpdate2
+        final UpdateRevision revisedUpdate = buildScheduledUpdate(userId, true);
+        final UpdateRevision dueUpdate = buildScheduledUpdate(userId, true);
+        final BulkInsertResult.Conflict conflict = new BulkInsertResult.Conflict(
+                revisedUpdate.toBuilder().revisionId(revisedUpdate.getRevisionId() + 1).build(),
+                11000,
+                "E11000 duplicate key error"
         );
-        final Page<UpdateRevision> scheduledUpdatesPage = new PageImpl<>(scheduledUpdates);
-        when(updateRevisionRepository.getAllLatestUpdateInfo(any(Pageable.class), eq(status)))
-                .thenReturn(scheduledUpdatesPage);
+        when(updateRevisionRepository.insertUpdateRevisions(anyListOf(UpdateRevision.class))).thenAnswer(invocation -> {
+            final List<UpdateRevision> revisions = (List<UpdateRevision>) invocation.getArguments()[0];
+            return new BulkInsertResult(revisions.subList(1, 2), Collections.singletonList(conflict));
+        });
 
         // When
-        manager.publishDueScheduledUpdates();
+        final BulkInsertResult result = manager.publishScheduledUpdates(Arrays.asList(revisedUpdate, dueUpdate));
 
         // Then
-        verify(updateRevisionRepository).getAllLatestUpdateInfo(any(Pageable.class), eq(status));
-        verify(updateRevisionRepository, times(0)).save(any(UpdateRevision.class));
+        assertThat(result.getConflicts()).containsExactly(conflict);
+        assertThat(result.getInserted()).hasSize(1);
+        assertThat(result.getInserted().get(0).getUuid()).isEqualTo(dueUpdate.getUuid());
+        assertThat(result.getInserted().get(0).getStatus()).isEqualTo(UpdateStatus.PUBLISHED);
+        verify(updateRevisionRepository).saveLatestUpdateInfo(result.getInserted());
+        verify(scheduledTransitionRepository).removeSupersededBy(result.getInserted());
+        verify(publishedUpdateRepository).publish(result.getInserted().get(0));
+        verify(publishedUpdateRepository, never()).publish(conflict.getRevision());
     }
 
     @Test
-    public void publishDueScheduledUpdates_whenNoScheduledUpdateExist_shouldUpdateNone() {
+    public void publishScheduledUpdates_whenUpdateIsScheduledForArchiving_shouldArchiveIt() {
         // Given
-        final UpdateStatus status = UpdateStatus.SCHEDULED;
-        final List<UpdateRevision> scheduledUpdates = Collections.emptyList();
-        final Page<UpdateRevision> scheduledUpdatesPage = new PageImpl<>(scheduledUpdates);
-        when(updateRevisionRepository.getAllLatestUpdateInfo(any(Pageable.class), eq(status)))
-                .thenReturn(scheduledUpdatesPage);
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision dueUpdate = buildScheduledUpdate(userId, true).toBuilder()
+                .scheduledStatus(UpdateStatus.ARCHIVED)
+                .build();
+        acceptAllInsertions();
 
         // When
-        manager.publishDueScheduledUpdates();
+        final BulkInsertResult result = manager.publishScheduledUpdates(Collections.singletonList(dueUpdate));
 
         // Then
-        verify(updateRevisionRepository).getAllLatestUpdateInfo(any(Pageable.class), eq(status));
-        verify(updateRevisionRepository, times(0)).save(any(UpdateRevision.class));
+        assertThat(result.getInserted()).extracting(UpdateRevision::getStatus).containsExactly(UpdateStatus.ARCHIVED);
+        assertThat(result.getInserted()).extracting(UpdateRevision::getScheduledStatus).containsNull();
+        verify(publishedUpdateRepository, never()).publish(any(UpdateRevision.class));
+        verify(updateCountRepository).move(
+                result.getInserted().get(0).toBuilder().status(UpdateStatus.SCHEDULED).build(),
+                result.getInserted().get(0)
+        );
+    }
+
+    @Test
+    public void publishScheduledUpdates_whenUpdatesArePublished_shouldInvalidateTheCachedLatestUpdates() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision dueUpdate = buildScheduledUpdate(userId, true).toBuilder().segmentId(null).build();
+        when(updateRevisionRepository.getLatestPublishedUpdateInfoWithoutSegmentId(userId)).thenReturn(Optional.empty());
+        manager.getLatestPublishedUpdateForOtherSegment(userId);
+        acceptAllInsertions();
+
+        // When
+        manager.publishScheduledUpdates(Collections.singletonList(dueUpdate));
+        manager.getLatestPublishedUpdateForOtherSegment(userId);
+
+        // Then
+        verify(updateRevisionRepository, times(2)).getLatestPublishedUpdateInfoWithoutSegmentId(userId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void acceptAllInsertions() {
+        when(updateRevisionRepository.insertUpdateRevisions(anyListOf(UpdateRevision.class))).thenAnswer(invocation ->
+                new BulkInsertResult((List<UpdateRevision>) invocation.getArguments()[0], Collections.emptyList())
+        );
     }
 
     private UpdateRevision buildScheduledUpdate(String userId, boolean due) {
-        final UpdateRevision.UpdateRevisionBuilder builder = getCreatedUpdateRevisionBuilder(userId);
+        final UpdateRevision.UpdateRevisionBuilder builder = getCreatedUpdateRevisionBuilder(userId)
+                .status(UpdateStatus.SCHEDULED);
         if (due) {
             builder.scheduledDate(Date.from(LocalDate.now().minusDays(1L).atStartOfDay(ZoneId.systemDefault()).toInstant()));
         } else {
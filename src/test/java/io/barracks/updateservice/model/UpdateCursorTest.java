@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.model;
+
+import io.barracks.updateservice.exception.InvalidCursorException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.UUID;
+
+public class UpdateCursorTest {
+
+    @Test
+    public void testTokenRoundTrip() {
+        final UpdateCursor cursor = new UpdateCursor(new Date(1234567890123L), UUID.randomUUID());
+        Assert.assertEquals(cursor, UpdateCursor.fromToken(cursor.toToken()));
+    }
+
+    @Test
+    public void testTokenIsUrlSafe() {
+        final String token = new UpdateCursor(new Date(1234567890123L), UUID.randomUUID()).toToken();
+        Assert.assertTrue(token.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void testFromTokenWithInvalidEncoding() {
+        UpdateCursor.fromToken("not a token");
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void testFromTokenWithInvalidContent() {
+        UpdateCursor.fromToken("Y291Y291");
+    }
+
+}
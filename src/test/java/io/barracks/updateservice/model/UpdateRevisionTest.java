@@ -38,7 +38,7 @@ public class UpdateRevisionTest {
 
     @Test
     public void toString_whenHavingAUpdateInfoObject_shouldHaveACustomToStringMethod() {
-        assertFalse(new UpdateRevision("", UUID.randomUUID(), "Name", "toto", "Description", "OBJECTID", "segmentId", 1, new HashMap<>(), new Date(), UpdateStatus.ARCHIVED, null).toString().contains("@"));
+        assertFalse(new UpdateRevision("", UUID.randomUUID(), "Name", "toto", "Description", "OBJECTID", "segmentId", 1, new HashMap<>(), new Date(), UpdateStatus.ARCHIVED, null, null, null).toString().contains("@"));
     }
 
     @Test
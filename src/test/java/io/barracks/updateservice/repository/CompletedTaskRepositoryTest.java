@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import com.mongodb.DBObject;
+import io.barracks.commons.test.MongoRepositoryTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompletedTaskRepositoryTest extends MongoRepositoryTest {
+
+    private MongoTemplate mongoTemplate;
+    private CompletedTaskRepository completedTaskRepository;
+    private String name;
+
+    public CompletedTaskRepositoryTest() {
+        super(CompletedTaskRepository.COMPLETED_TASK_COLLECTION);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mongoTemplate = new MongoTemplate(getMongo(), getDatabaseName());
+        completedTaskRepository = new CompletedTaskRepository(mongoTemplate);
+        name = UUID.randomUUID().toString();
+    }
+
+    @Test
+    public void isCompleted_whenNotRecorded_shouldReturnFalse() {
+        // When
+        final boolean result = completedTaskRepository.isCompleted(name);
+
+        // Then
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    public void isCompleted_whenRecorded_shouldReturnTrue() {
+        // Given
+        completedTaskRepository.complete(name, new Date(1000000L));
+
+        // When
+        final boolean result = completedTaskRepository.isCompleted(name);
+
+        // Then
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    public void complete_whenAlreadyRecorded_shouldKeepTheFirstCompletionDate() {
+        // Given
+        completedTaskRepository.complete(name, new Date(1000000L));
+
+        // When
+        completedTaskRepository.complete(name, new Date(2000000L));
+
+        // Then
+        final DBObject document = mongoTemplate.getCollection(CompletedTaskRepository.COMPLETED_TASK_COLLECTION).findOne();
+        assertThat(mongoTemplate.getCollection(CompletedTaskRepository.COMPLETED_TASK_COLLECTION).count()).isEqualTo(1);
+        assertThat(document.get("completedAt")).isEqualTo(new Date(1000000L));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.repository;
+
+import io.barracks.commons.test.MongoRepositoryTest;
+import io.barracks.updateservice.model.Lease;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LeaseRepositoryTest extends MongoRepositoryTest {
+
+    private static final long DURATION = 30000L;
+
+    private LeaseRepository leaseRepository;
+    private String name;
+
+    public LeaseRepositoryTest() {
+        super(Lease.class.getDeclaredAnnotation(Document.class).collection());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        leaseRepository = new LeaseRepository(new MongoTemplate(getMongo(), getDatabaseName()));
+        name = UUID.randomUUID().toString();
+    }
+
+    @Test
+    public void acquire_whenNoLeaseExists_shouldCreateIt() {
+        // Given
+        final Date now = new Date(1000000L);
+
+        // When
+        final Optional<Lease> result = leaseRepository.acquire(name, "owner1", now, DURATION);
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(result.get().getOwner()).isEqualTo("owner1");
+        assertThat(result.get().getToken()).isEqualTo(1L);
+        assertThat(result.get().getExpiresAt()).isEqualTo(new Date(now.getTime() + DURATION));
+    }
+
+    @Test
+    public void acquire_whenLeaseHeldByAnotherOwner_shouldReturnNothing() {
+        // Given
+        final Date now = new Date(1000000L);
+        leaseRepository.acquire(name, "owner1", now, DURATION);
+
+        // When
+        final Optional<Lease> result = leaseRepository.acquire(name, "owner2", new Date(now.getTime() + 1000L), DURATION);
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void acquire_whenLeaseHeldBySameOwner_shouldRenewItWithTheSameToken() {
+        // Given
+        final Date now = new Date(1000000L);
+        final Date later = new Date(now.getTime() + 1000L);
+        leaseRepository.acquire(name, "owner1", now, DURATION);
+
+        // When
+        final Optional<Lease> result = leaseRepository.acquire(name, "owner1", later, DURATION);
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(result.get().getToken()).isEqualTo(1L);
+        assertThat(result.get().getExpiresAt()).isEqualTo(new Date(later.getTime() + DURATION));
+    }
+
+    @Test
+    public void acquire_whenLeaseExpired_shouldLetAnotherOwnerTakeItOverWithANewToken() {
+        // Given
+        final Date now = new Date(1000000L);
+        final Lease previous = leaseRepository.acquire(name, "owner1", now, DURATION).get();
+        final Date afterExpiry = new Date(now.getTime() + DURATION + 1L);
+
+        // When
+        final Optional<Lease> result = leaseRepository.acquire(name, "owner2", afterExpiry, DURATION);
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(result.get().getOwner()).isEqualTo("owner2");
+        assertThat(result.get().getToken()).isEqualTo(2L);
+        assertThat(leaseRepository.findHeld(Collections.singletonList(previous), "owner1", now)).isEmpty();
+        assertThat(leaseRepository.findHeld(Collections.singletonList(result.get()), "owner2", afterExpiry)).containsExactly(result.get());
+    }
+
+    @Test
+    public void release_whenLeaseHeld_shouldLetAnotherOwnerTakeItOverImmediately() {
+        // Given
+        final Date now = new Date(1000000L);
+        final Lease lease = leaseRepository.acquire(name, "owner1", now, DURATION).get();
+
+        // When
+        leaseRepository.release(lease);
+        final Optional<Lease> result = leaseRepository.acquire(name, "owner2", now, DURATION);
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(result.get().getOwner()).isEqualTo("owner2");
+    }
+
+    @Test
+    public void findHeld_whenOneLeaseWasTakenOver_shouldOnlyReturnTheOthers() {
+        // Given
+        final Date now = new Date(1000000L);
+        final String otherName = UUID.randomUUID().toString();
+        final Lease lease = leaseRepository.acquire(name, "owner1", now, DURATION).get();
+        final Lease lost = leaseRepository.acquire(otherName, "owner1", now, DURATION).get();
+        leaseRepository.release(lost);
+        leaseRepository.acquire(otherName, "owner2", now, DURATION);
+
+        // When
+        final List<Lease> result = leaseRepository.findHeld(Arrays.asList(lease, lost), "owner1", now);
+
+        // Then
+        assertThat(result).containsExactly(lease);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import io.barracks.commons.test.MongoRepositoryTest;
+import io.barracks.updateservice.model.PublishedUpdate;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static io.barracks.updateservice.utils.UpdateRevisionUtils.getCreatedUpdateRevisionBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PublishedUpdateRepositoryTest extends MongoRepositoryTest {
+
+    private MongoTemplate mongoTemplate;
+    private PublishedUpdateRepository publishedUpdateRepository;
+
+    public PublishedUpdateRepositoryTest() {
+        super(PublishedUpdate.class.getDeclaredAnnotation(Document.class).collection());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mongoTemplate = new MongoTemplate(getMongo(), getDatabaseName());
+        publishedUpdateRepository = new PublishedUpdateRepository(mongoTemplate);
+    }
+
+    @Test
+    public void publish_whenSegmentHasNoPointer_shouldPointItToTheRevision() {
+        // Given
+        final UpdateRevision revision = buildPublishedRevision(UUID.randomUUID().toString(), "segment", 1000L);
+
+        // When
+        publishedUpdateRepository.publish(revision);
+
+        // Then
+        final Optional<PublishedUpdate> result = publishedUpdateRepository.findOne(revision.getUserId(), "segment");
+        assertThat(result).isPresent();
+        assertThat(result.get().getUuid()).isEqualTo(revision.getUuid());
+        assertThat(result.get().getRevision()).isEqualTo(revision);
+    }
+
+    @Test
+    public void publish_whenSegmentPointsToAnOlderRevision_shouldPointItToTheNewOne() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision olderRevision = buildPublishedRevision(userId, "segment", 1000L);
+        final UpdateRevision revision = buildPublishedRevision(userId, "segment", 2000L);
+        publishedUpdateRepository.publish(olderRevision);
+
+        // When
+        publishedUpdateRepository.publish(revision);
+
+        // Then
+        assertThat(publishedUpdateRepository.findOne(userId, "segment").map(PublishedUpdate::getRevision)).contains(revision);
+        assertThat(mongoTemplate.findAll(PublishedUpdate.class)).hasSize(1);
+    }
+
+    @Test
+    public void publish_whenSegmentPointsToAMoreRecentRevision_shouldKeepIt() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision revision = buildPublishedRevision(userId, "segment", 2000L);
+        publishedUpdateRepository.publish(revision);
+
+        // When
+        publishedUpdateRepository.publish(buildPublishedRevision(userId, "segment", 1000L));
+
+        // Then
+        assertThat(publishedUpdateRepository.findOne(userId, "segment").map(PublishedUpdate::getRevision)).contains(revision);
+    }
+
+    @Test
+    public void publish_whenRevisionHasNoSegment_shouldPointTheOtherSegmentToIt() {
+        // Given
+        final UpdateRevision revision = buildPublishedRevision(UUID.randomUUID().toString(), null, 1000L);
+
+        // When
+        publishedUpdateRepository.publish(revision);
+
+        // Then
+        assertThat(publishedUpdateRepository.findOne(revision.getUserId(), null).map(PublishedUpdate::getRevision)).contains(revision);
+        assertThat(mongoTemplate.findById(PublishedUpdate.getId(revision.getUserId(), OtherSegment.ID), PublishedUpdate.class)).isNotNull();
+    }
+
+    @Test
+    public void unpublish_whenSegmentPointsToTheRevision_shouldPointItToTheFallback() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision fallback = buildPublishedRevision(userId, "segment", 1000L);
+        final UpdateRevision revision = buildPublishedRevision(userId, "segment", 2000L);
+        publishedUpdateRepository.publish(revision);
+
+        // When
+        publishedUpdateRepository.unpublish(revision, Optional.of(fallback));
+
+        // Then
+        assertThat(publishedUpdateRepository.findOne(userId, "segment").map(PublishedUpdate::getRevision)).contains(fallback);
+    }
+
+    @Test
+    public void unpublish_whenNoFallback_shouldRecordThatNothingIsPublished() {
+        // Given
+        final UpdateRevision revision = buildPublishedRevision(UUID.randomUUID().toString(), "segment", 2000L);
+        publishedUpdateRepository.publish(revision);
+
+        // When
+        publishedUpdateRepository.unpublish(revision, Optional.empty());
+
+        // Then
+        final Optional<PublishedUpdate> result = publishedUpdateRepository.findOne(revision.getUserId(), "segment");
+        assertThat(result).isPresent();
+        assertThat(result.get().getUuid()).isNull();
+        assertThat(result.get().getRevision()).isNull();
+    }
+
+    @Test
+    public void unpublish_whenSegmentPointsToAnotherUpdate_shouldKeepIt() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision revision = buildPublishedRevision(userId, "segment", 1000L);
+        final UpdateRevision otherRevision = buildPublishedRevision(userId, "segment", 2000L);
+        publishedUpdateRepository.publish(otherRevision);
+
+        // When
+        publishedUpdateRepository.unpublish(revision, Optional.empty());
+
+        // Then
+        assertThat(publishedUpdateRepository.findOne(userId, "segment").map(PublishedUpdate::getRevision)).contains(otherRevision);
+    }
+
+    @Test
+    public void save_whenSegmentAlreadyHasAPointer_shouldKeepIt() {
+        // Given
+        final UpdateRevision revision = buildPublishedRevision(UUID.randomUUID().toString(), "segment", 1000L);
+        final UpdateRevision otherRevision = buildPublishedRevision(revision.getUserId(), "segment", 2000L);
+        publishedUpdateRepository.publish(revision);
+
+        // When
+        publishedUpdateRepository.save(revision.getUserId(), "segment", otherRevision);
+
+        // Then
+        assertThat(publishedUpdateRepository.findOne(revision.getUserId(), "segment").map(PublishedUpdate::getRevision)).contains(revision);
+    }
+
+    @Test
+    public void findAll_shouldReturnThePointersOfTheUser() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        publishedUpdateRepository.publish(buildPublishedRevision(userId, "segment1", 1000L));
+        publishedUpdateRepository.publish(buildPublishedRevision(userId, "segment2", 1000L));
+        publishedUpdateRepository.publish(buildPublishedRevision(UUID.randomUUID().toString(), "segment1", 1000L));
+
+        // When
+        final List<PublishedUpdate> result = publishedUpdateRepository.findAll(userId);
+
+        // Then
+        assertThat(result).extracting(PublishedUpdate::getSegmentId).containsOnly("segment1", "segment2");
+    }
+
+    @Test
+    public void repair_whenPointerHasNotMoved_shouldPointItToTheRevision() {
+        // Given
+        final UpdateRevision revision = buildPublishedRevision(UUID.randomUUID().toString(), "segment", 2000L);
+        final UpdateRevision latest = buildPublishedRevision(revision.getUserId(), "segment", 1000L);
+        publishedUpdateRepository.publish(revision);
+        final PublishedUpdate pointer = publishedUpdateRepository.findOne(revision.getUserId(), "segment").get();
+
+        // When
+        final boolean result = publishedUpdateRepository.repair(pointer, Optional.of(latest));
+
+        // Then
+        assertThat(result).isTrue();
+        assertThat(publishedUpdateRepository.findOne(revision.getUserId(), "segment").map(PublishedUpdate::getRevision)).contains(latest);
+    }
+
+    @Test
+    public void repair_whenNothingIsPublished_shouldRecordIt() {
+        // Given
+        final UpdateRevision revision = buildPublishedRevision(UUID.randomUUID().toString(), "segment", 1000L);
+        publishedUpdateRepository.publish(revision);
+        final PublishedUpdate pointer = publishedUpdateRepository.findOne(revision.getUserId(), "segment").get();
+
+        // When
+        publishedUpdateRepository.repair(pointer, Optional.empty());
+
+        // Then
+        final Optional<PublishedUpdate> result = publishedUpdateRepository.findOne(revision.getUserId(), "segment");
+        assertThat(result).isPresent();
+        assertThat(result.get().getRevision()).isNull();
+    }
+
+    @Test
+    public void repair_whenPointerMovedSinceItWasRead_shouldKeepIt() {
+        // Given
+        final UpdateRevision revision = buildPublishedRevision(UUID.randomUUID().toString(), "segment", 1000L);
+        final UpdateRevision newRevision = buildPublishedRevision(revision.getUserId(), "segment", 2000L);
+        publishedUpdateRepository.publish(revision);
+        final PublishedUpdate pointer = publishedUpdateRepository.findOne(revision.getUserId(), "segment").get();
+        publishedUpdateRepository.publish(newRevision);
+
+        // When
+        final boolean result = publishedUpdateRepository.repair(pointer, Optional.empty());
+
+        // Then
+        assertThat(result).isFalse();
+        assertThat(publishedUpdateRepository.findOne(revision.getUserId(), "segment").map(PublishedUpdate::getRevision)).contains(newRevision);
+    }
+
+    private UpdateRevision buildPublishedRevision(String userId, String segmentId, long creationDate) {
+        return getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .additionalProperties(Collections.singletonMap("key", "value"))
+                .creationDate(new Date(creationDate))
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+    }
+}
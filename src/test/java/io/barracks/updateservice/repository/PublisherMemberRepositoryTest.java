@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.repository;
+
+import io.barracks.commons.test.MongoRepositoryTest;
+import io.barracks.updateservice.model.PublisherMember;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PublisherMemberRepositoryTest extends MongoRepositoryTest {
+
+    private PublisherMemberRepository publisherMemberRepository;
+
+    public PublisherMemberRepositoryTest() {
+        super(PublisherMember.class.getDeclaredAnnotation(Document.class).collection());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        publisherMemberRepository = new PublisherMemberRepository(new MongoTemplate(getMongo(), getDatabaseName()));
+    }
+
+    @Test
+    public void getLiveMemberIds_whenMembersSentHeartbeats_shouldOnlyReturnTheRecentOnesInIdOrder() {
+        // Given
+        publisherMemberRepository.heartbeat("b", new Date(2000L));
+        publisherMemberRepository.heartbeat("a", new Date(3000L));
+        publisherMemberRepository.heartbeat("c", new Date(500L));
+
+        // When
+        final List<String> result = publisherMemberRepository.getLiveMemberIds(new Date(1000L));
+
+        // Then
+        assertThat(result).containsExactly("a", "b");
+    }
+
+    @Test
+    public void heartbeat_whenMemberExists_shouldRefreshIt() {
+        // Given
+        publisherMemberRepository.heartbeat("a", new Date(500L));
+
+        // When
+        publisherMemberRepository.heartbeat("a", new Date(2000L));
+
+        // Then
+        assertThat(publisherMemberRepository.getLiveMemberIds(new Date(1000L))).containsExactly("a");
+    }
+
+    @Test
+    public void remove_whenMemberExists_shouldRemoveIt() {
+        // Given
+        publisherMemberRepository.heartbeat("a", new Date(2000L));
+
+        // When
+        publisherMemberRepository.remove("a");
+
+        // Then
+        assertThat(publisherMemberRepository.getLiveMemberIds(new Date(1000L))).isEmpty();
+    }
+}
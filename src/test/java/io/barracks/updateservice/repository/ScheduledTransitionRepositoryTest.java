@@ -0,0 +1,213 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import io.barracks.commons.test.MongoRepositoryTest;
+import io.barracks.updateservice.model.ScheduledTransition;
+import io.barracks.updateservice.model.TenantBacklog;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static io.barracks.updateservice.utils.UpdateRevisionUtils.getCreatedUpdateRevisionBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScheduledTransitionRepositoryTest extends MongoRepositoryTest {
+
+    private MongoTemplate mongoTemplate;
+    private ScheduledTransitionRepository scheduledTransitionRepository;
+
+    public ScheduledTransitionRepositoryTest() {
+        super(ScheduledTransition.class.getDeclaredAnnotation(Document.class).collection());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mongoTemplate = new MongoTemplate(getMongo(), getDatabaseName());
+        scheduledTransitionRepository = new ScheduledTransitionRepository(mongoTemplate);
+    }
+
+    @Test
+    public void save_whenAnOlderTransitionExists_shouldReplaceIt() {
+        // Given
+        final UpdateRevision update = buildScheduledUpdate(UUID.randomUUID().toString(), 1000L);
+        final UpdateRevision revision = update.toBuilder().revisionId(update.getRevisionId() + 1).scheduledStatus(UpdateStatus.ARCHIVED).build();
+        scheduledTransitionRepository.save(ScheduledTransition.of(update));
+
+        // When
+        scheduledTransitionRepository.save(ScheduledTransition.of(revision));
+
+        // Then
+        assertThat(mongoTemplate.findAll(ScheduledTransition.class)).containsExactly(ScheduledTransition.of(revision));
+    }
+
+    @Test
+    public void save_whenAMoreRecentTransitionExists_shouldKeepIt() {
+        // Given
+        final UpdateRevision update = buildScheduledUpdate(UUID.randomUUID().toString(), 1000L);
+        final UpdateRevision revision = update.toBuilder().revisionId(update.getRevisionId() + 1).build();
+        scheduledTransitionRepository.save(ScheduledTransition.of(revision));
+
+        // When
+        scheduledTransitionRepository.save(ScheduledTransition.of(update));
+
+        // Then
+        assertThat(mongoTemplate.findAll(ScheduledTransition.class)).containsExactly(ScheduledTransition.of(revision));
+    }
+
+    @Test
+    public void removeSupersededBy_whenUpdatesWereRevised_shouldOnlyRemoveTheOlderTransitions() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision revised = buildScheduledUpdate(userId, 1000L);
+        final UpdateRevision rescheduled = buildScheduledUpdate(userId, 1000L);
+        final UpdateRevision untouched = buildScheduledUpdate(userId, 1000L);
+        final UpdateRevision rescheduledRevision = rescheduled.toBuilder().revisionId(rescheduled.getRevisionId() + 1).build();
+        scheduledTransitionRepository.save(ScheduledTransition.of(revised));
+        scheduledTransitionRepository.save(ScheduledTransition.of(rescheduledRevision));
+        scheduledTransitionRepository.save(ScheduledTransition.of(untouched));
+
+        // When
+        scheduledTransitionRepository.removeSupersededBy(Arrays.asList(
+                revised.toBuilder().revisionId(revised.getRevisionId() + 1).status(UpdateStatus.PUBLISHED).build(),
+                rescheduledRevision
+        ));
+
+        // Then
+        assertThat(mongoTemplate.findAll(ScheduledTransition.class)).containsExactlyInAnyOrder(
+                ScheduledTransition.of(rescheduledRevision),
+                ScheduledTransition.of(untouched)
+        );
+    }
+
+    @Test
+    public void getDueTransitions_whenWalkingSlices_shouldReturnEachDueTransitionOnceInDueDateOrder() {
+        // Given
+        final List<ScheduledTransition> transitions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            // Several transitions are due at the same date, so that the id has to break the tie
+            transitions.add(ScheduledTransition.of(buildScheduledUpdate(UUID.randomUUID().toString(), 1000L * (i / 2))));
+        }
+        transitions.forEach(scheduledTransitionRepository::save);
+        scheduledTransitionRepository.save(ScheduledTransition.of(buildScheduledUpdate(UUID.randomUUID().toString(), 5000L)));
+
+        // When
+        final List<ScheduledTransition> result = new ArrayList<>();
+        Optional<ScheduledTransition> last = Optional.empty();
+        Slice<ScheduledTransition> slice;
+        do {
+            slice = scheduledTransitionRepository.getDueTransitions(new Date(3000L), last, 2);
+            result.addAll(slice.getContent());
+            last = slice.hasContent() ? Optional.of(result.get(result.size() - 1)) : last;
+        } while (slice.hasNext());
+
+        // Then
+        assertThat(result).containsExactlyInAnyOrder(transitions.toArray(new ScheduledTransition[0]));
+        assertThat(result).isSortedAccordingTo((t1, t2) -> t1.getDueAt().compareTo(t2.getDueAt()));
+    }
+
+    @Test
+    public void getDueTransitions_whenGivenAUser_shouldOnlyReturnTheDueTransitionsOfThatUser() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final ScheduledTransition due = ScheduledTransition.of(buildScheduledUpdate(userId, 1000L));
+        scheduledTransitionRepository.save(due);
+        scheduledTransitionRepository.save(ScheduledTransition.of(buildScheduledUpdate(UUID.randomUUID().toString(), 1000L)));
+
+        // When
+        final Slice<ScheduledTransition> result = scheduledTransitionRepository.getDueTransitions(new Date(3000L), userId, Optional.empty(), 10);
+
+        // Then
+        assertThat(result.getContent()).containsExactly(due);
+    }
+
+    @Test
+    public void getDueTransitions_whenGivenAStartDate_shouldOnlyReturnTheTransitionsDueAfterIt() {
+        // Given
+        final ScheduledTransition due = ScheduledTransition.of(buildScheduledUpdate(UUID.randomUUID().toString(), 2000L));
+        scheduledTransitionRepository.save(due);
+        scheduledTransitionRepository.save(ScheduledTransition.of(buildScheduledUpdate(UUID.randomUUID().toString(), 1000L)));
+        scheduledTransitionRepository.save(ScheduledTransition.of(buildScheduledUpdate(UUID.randomUUID().toString(), 4000L)));
+
+        // When
+        final Slice<ScheduledTransition> result = scheduledTransitionRepository.getDueTransitions(new Date(1000L), new Date(3000L), Optional.empty(), 10);
+
+        // Then
+        assertThat(result.getContent()).containsExactly(due);
+    }
+
+    @Test
+    public void getBacklogs_whenTransitionsAreDue_shouldCountTheDueOnesOfEachUser() {
+        // Given
+        final String userId1 = UUID.randomUUID().toString();
+        final String userId2 = UUID.randomUUID().toString();
+        Arrays.asList(
+                buildScheduledUpdate(userId1, 2000L),
+                buildScheduledUpdate(userId1, 1000L),
+                buildScheduledUpdate(userId1, 5000L),
+                buildScheduledUpdate(userId2, 3000L)
+        ).forEach(update -> scheduledTransitionRepository.save(ScheduledTransition.of(update)));
+
+        // When
+        final List<TenantBacklog> result = scheduledTransitionRepository.getBacklogs(new Date(3000L));
+
+        // Then
+        assertThat(result).containsExactlyInAnyOrder(
+                new TenantBacklog(userId1, 2, new Date(1000L)),
+                new TenantBacklog(userId2, 1, new Date(3000L))
+        );
+    }
+
+    @Test
+    public void getBacklogs_whenNoTransitionIsDue_shouldReturnNothing() {
+        // Given
+        scheduledTransitionRepository.save(ScheduledTransition.of(buildScheduledUpdate(UUID.randomUUID().toString(), 5000L)));
+
+        // When
+        final List<TenantBacklog> result = scheduledTransitionRepository.getBacklogs(new Date(3000L));
+
+        // Then
+        assertThat(result).isEqualTo(Collections.emptyList());
+    }
+
+    private UpdateRevision buildScheduledUpdate(String userId, long scheduledDate) {
+        return getCreatedUpdateRevisionBuilder(userId)
+                .status(UpdateStatus.SCHEDULED)
+                .scheduledDate(new Date(scheduledDate))
+                .build();
+    }
+}
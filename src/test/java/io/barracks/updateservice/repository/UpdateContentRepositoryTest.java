@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import io.barracks.commons.test.MongoRepositoryTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateContentRepositoryTest extends MongoRepositoryTest {
+
+    private MongoTemplate mongoTemplate;
+    private UpdateContentRepository updateContentRepository;
+
+    public UpdateContentRepositoryTest() {
+        super(UpdateContentRepository.CONTENT_COLLECTION);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mongoTemplate = new MongoTemplate(getMongo(), getDatabaseName());
+        updateContentRepository = new UpdateContentRepository(mongoTemplate);
+    }
+
+    @Test
+    public void externalize_shouldReplaceTheContentWithItsHash() {
+        // Given
+        final DBObject document = getDocument("description", new BasicDBObject("key", "value"));
+
+        // When
+        updateContentRepository.externalize(document);
+
+        // Then
+        assertThat(document.containsField("description")).isFalse();
+        assertThat(document.containsField("additionalProperties")).isFalse();
+        assertThat(document.get("name")).isEqualTo("name");
+        assertThat(document.get(UpdateContentRepository.CONTENT_HASH_KEY)).isNotNull();
+        assertThat(mongoTemplate.getCollection(UpdateContentRepository.CONTENT_COLLECTION).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void externalize_whenSameContentInAnotherKeyOrder_shouldStoreItOnce() {
+        // Given
+        final DBObject first = getDocument("description", new BasicDBObject("a", 1).append("b", new BasicDBObject("c", 2).append("d", 3)));
+        final DBObject second = getDocument("description", new BasicDBObject("b", new BasicDBObject("d", 3).append("c", 2)).append("a", 1));
+
+        // When
+        updateContentRepository.externalize(first);
+        new UpdateContentRepository(mongoTemplate).externalize(second);
+
+        // Then
+        assertThat(first.get(UpdateContentRepository.CONTENT_HASH_KEY)).isEqualTo(second.get(UpdateContentRepository.CONTENT_HASH_KEY));
+        assertThat(mongoTemplate.getCollection(UpdateContentRepository.CONTENT_COLLECTION).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void externalize_whenContentDiffers_shouldStoreBoth() {
+        // Given
+        final DBObject first = getDocument("description", new BasicDBObject("key", "value"));
+        final DBObject second = getDocument("other description", new BasicDBObject("key", "value"));
+
+        // When
+        updateContentRepository.externalize(first);
+        updateContentRepository.externalize(second);
+
+        // Then
+        assertThat(first.get(UpdateContentRepository.CONTENT_HASH_KEY)).isNotEqualTo(second.get(UpdateContentRepository.CONTENT_HASH_KEY));
+        assertThat(mongoTemplate.getCollection(UpdateContentRepository.CONTENT_COLLECTION).count()).isEqualTo(2);
+    }
+
+    @Test
+    public void externalize_whenNoContent_shouldLeaveTheDocumentAsIs() {
+        // Given
+        final DBObject document = new BasicDBObject("name", "name");
+
+        // When
+        updateContentRepository.externalize(document);
+
+        // Then
+        assertThat(document).isEqualTo(new BasicDBObject("name", "name"));
+        assertThat(mongoTemplate.getCollection(UpdateContentRepository.CONTENT_COLLECTION).count()).isEqualTo(0);
+    }
+
+    @Test
+    public void reference_shouldKeepTheContentNextToItsHash() {
+        // Given
+        final DBObject document = getDocument("description", new BasicDBObject("key", "value"));
+
+        // When
+        final boolean result = updateContentRepository.reference(document);
+
+        // Then
+        assertThat(result).isTrue();
+        assertThat(document.get("name")).isEqualTo("name");
+        assertThat(document.get("description")).isEqualTo("description");
+        assertThat(document.get("additionalProperties")).isEqualTo(new BasicDBObject("key", "value"));
+        assertThat(document.get(UpdateContentRepository.CONTENT_HASH_KEY)).isNotNull();
+        assertThat(mongoTemplate.getCollection(UpdateContentRepository.CONTENT_COLLECTION).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void resolve_whenReferenced_shouldPutBackTheNameAndTheContent() {
+        // Given
+        final DBObject document = getDocument("description", new BasicDBObject("key", "value"));
+        updateContentRepository.reference(document);
+        final DBObject projected = new BasicDBObject(UpdateContentRepository.CONTENT_HASH_KEY, document.get(UpdateContentRepository.CONTENT_HASH_KEY));
+
+        // When
+        new UpdateContentRepository(mongoTemplate).resolve(projected);
+
+        // Then
+        assertThat(projected).isEqualTo(getDocument("description", new BasicDBObject("key", "value")));
+    }
+
+    @Test
+    public void resolve_whenContentInline_shouldOnlyRemoveTheHash() {
+        // Given
+        final DBObject document = getDocument("description", new BasicDBObject("key", "value"));
+        updateContentRepository.reference(document);
+        mongoTemplate.getCollection(UpdateContentRepository.CONTENT_COLLECTION).drop();
+
+        // When
+        new UpdateContentRepository(mongoTemplate).resolve(document);
+
+        // Then
+        assertThat(document).isEqualTo(getDocument("description", new BasicDBObject("key", "value")));
+    }
+
+    @Test
+    public void resolve_whenContentNotCached_shouldReadItFromTheDatabase() {
+        // Given
+        final DBObject document = getDocument("description", new BasicDBObject("key", "value"));
+        updateContentRepository.externalize(document);
+
+        // When
+        new UpdateContentRepository(mongoTemplate).resolve(document);
+
+        // Then
+        assertThat(document).isEqualTo(getDocument("description", new BasicDBObject("key", "value")));
+    }
+
+    @Test
+    public void resolve_whenNoHash_shouldLeaveTheDocumentAsIs() {
+        // Given
+        final DBObject document = getDocument("description", new BasicDBObject("key", "value"));
+
+        // When
+        updateContentRepository.resolve(document);
+
+        // Then
+        assertThat(document).isEqualTo(getDocument("description", new BasicDBObject("key", "value")));
+    }
+
+    private DBObject getDocument(String description, DBObject additionalProperties) {
+        return new BasicDBObject("name", "name")
+                .append("description", description)
+                .append("additionalProperties", additionalProperties);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import com.mongodb.BasicDBObject;
+import io.barracks.commons.test.MongoRepositoryTest;
+import io.barracks.updateservice.model.UpdateCount;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static io.barracks.updateservice.utils.UpdateRevisionUtils.getCreatedUpdateRevisionBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateCountRepositoryTest extends MongoRepositoryTest {
+
+    private MongoTemplate mongoTemplate;
+    private UpdateCountRepository updateCountRepository;
+
+    private static final String COLLECTION = UpdateCount.class.getDeclaredAnnotation(Document.class).collection();
+
+    public UpdateCountRepositoryTest() {
+        super(COLLECTION);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mongoTemplate = new MongoTemplate(getMongo(), getDatabaseName());
+        updateCountRepository = new UpdateCountRepository(mongoTemplate);
+    }
+
+    @Test
+    public void add_shouldIncrementTheCounterOfTheSegmentAndStatus() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision revision = getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.DRAFT).build();
+
+        // When
+        updateCountRepository.add(revision);
+        updateCountRepository.add(revision);
+
+        // Then
+        assertThat(getStoredCounts(userId)).containsExactly(getCount(userId, "segment", UpdateStatus.DRAFT, 2));
+    }
+
+    @Test
+    public void add_whenRevisionHasNoSegment_shouldCountItInTheOtherSegment() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision revision = getCreatedUpdateRevisionBuilder(userId).segmentId(null).status(UpdateStatus.DRAFT).build();
+
+        // When
+        updateCountRepository.add(revision);
+
+        // Then
+        assertThat(getStoredCounts(userId)).containsExactly(getCount(userId, OtherSegment.ID, UpdateStatus.DRAFT, 1));
+    }
+
+    @Test
+    public void move_whenStatusChanges_shouldMoveTheUpdateToTheNewStatus() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision draft = getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.DRAFT).build();
+        final UpdateRevision published = draft.toBuilder().status(UpdateStatus.PUBLISHED).build();
+        updateCountRepository.add(draft);
+
+        // When
+        updateCountRepository.move(draft, published);
+
+        // Then
+        assertThat(getStoredCounts(userId)).containsOnly(
+                getCount(userId, "segment", UpdateStatus.DRAFT, 0),
+                getCount(userId, "segment", UpdateStatus.PUBLISHED, 1)
+        );
+    }
+
+    @Test
+    public void move_whenNeitherStatusNorSegmentChanges_shouldLeaveTheCountersAsIs() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision draft = getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.DRAFT).build();
+        updateCountRepository.add(draft);
+
+        // When
+        updateCountRepository.move(draft, draft.toBuilder().description("edited").build());
+
+        // Then
+        assertThat(getStoredCounts(userId)).containsExactly(getCount(userId, "segment", UpdateStatus.DRAFT, 1));
+    }
+
+    @Test
+    public void reconcile_shouldCorrectTheCountersByTheirDifferenceAndInsertTheMissingOnes() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision draft = getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.DRAFT).build();
+        updateCountRepository.add(draft);
+        updateCountRepository.add(draft.toBuilder().status(UpdateStatus.ARCHIVED).build());
+        final List<UpdateCount> counters = updateCountRepository.getCounts(userId);
+        final List<UpdateCount> counts = Arrays.asList(
+                getCount(userId, "segment", UpdateStatus.DRAFT, 3),
+                getCount(userId, null, UpdateStatus.PUBLISHED, 1)
+        );
+
+        // When
+        final int result = updateCountRepository.reconcile(userId, counters, counts);
+
+        // Then
+        assertThat(result).isEqualTo(0);
+        assertThat(updateCountRepository.getCounts(userId)).allMatch(count -> count.getReconciledAt() != null);
+        assertThat(getStoredCounts(userId)).containsOnly(
+                getCount(userId, "segment", UpdateStatus.DRAFT, 3),
+                getCount(userId, OtherSegment.ID, UpdateStatus.PUBLISHED, 1),
+                getCount(userId, "segment", UpdateStatus.ARCHIVED, 0)
+        );
+    }
+
+    @Test
+    public void reconcile_whenCounterMovedSinceItWasRead_shouldKeepTheMove() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision draft = getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.DRAFT).build();
+        updateCountRepository.add(draft);
+        final List<UpdateCount> counters = updateCountRepository.getCounts(userId);
+        final List<UpdateCount> counts = Collections.singletonList(getCount(userId, "segment", UpdateStatus.DRAFT, 1));
+        updateCountRepository.add(draft);
+
+        // When
+        final int result = updateCountRepository.reconcile(userId, counters, counts);
+
+        // Then
+        assertThat(result).isEqualTo(1);
+        assertThat(getStoredCounts(userId)).containsExactly(getCount(userId, "segment", UpdateStatus.DRAFT, 2));
+    }
+
+    @Test
+    public void reconcile_whenCounterWasCreatedSinceTheCountersWereRead_shouldKeepIt() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision draft = getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.DRAFT).build();
+        final List<UpdateCount> counters = updateCountRepository.getCounts(userId);
+        updateCountRepository.add(draft);
+        updateCountRepository.add(draft);
+
+        // When
+        final int result = updateCountRepository.reconcile(userId, counters, Collections.singletonList(getCount(userId, "segment", UpdateStatus.DRAFT, 1)));
+
+        // Then
+        assertThat(result).isEqualTo(1);
+        assertThat(getStoredCounts(userId)).containsExactly(getCount(userId, "segment", UpdateStatus.DRAFT, 2));
+    }
+
+    @Test
+    public void reconcile_whenCounterHasNoVersion_shouldCorrectIt() {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateCount counter = getCount(userId, "segment", UpdateStatus.DRAFT, 4);
+        mongoTemplate.getCollection(COLLECTION).insert(new BasicDBObject("_id", counter.getId())
+                .append("userId", userId)
+                .append("segmentId", "segment")
+                .append("status", UpdateStatus.DRAFT.name())
+                .append("count", 4L));
+
+        // When
+        final int result = updateCountRepository.reconcile(
+                userId,
+                updateCountRepository.getCounts(userId),
+                Collections.singletonList(getCount(userId, "segment", UpdateStatus.DRAFT, 1))
+        );
+
+        // Then
+        assertThat(result).isEqualTo(0);
+        assertThat(getStoredCounts(userId)).containsExactly(getCount(userId, "segment", UpdateStatus.DRAFT, 1));
+    }
+
+    private List<UpdateCount> getStoredCounts(String userId) {
+        return updateCountRepository.getCounts(userId).stream()
+                .map(count -> count.toBuilder().version(0).reconciledAt(null).build())
+                .collect(Collectors.toList());
+    }
+
+    private UpdateCount getCount(String userId, String segmentId, UpdateStatus status, long count) {
+        return UpdateCount.builder().userId(userId).segmentId(segmentId).status(status).count(count).build();
+    }
+}
@@ -25,18 +25,22 @@
 package io.barracks.updateservice.repository;
 
 import io.barracks.commons.test.MongoRepositoryTest;
+import io.barracks.updateservice.manager.IndexManager;
 import io.barracks.updateservice.model.UpdateRevision;
 import org.junit.Before;
+import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 
 import static org.junit.Assert.assertEquals;
 
 abstract class UpdateInfoRepositoryTest extends MongoRepositoryTest {
     UpdateRevisionRepositoryImpl updateInfoRepository;
+    UpdateContentRepository updateContentRepository;
     MongoTemplate mongoTemplate;
 
     UpdateInfoRepositoryTest() {
@@ -47,7 +51,14 @@ abstract class UpdateInfoRepositoryTest extends MongoRepositoryTest {
     public void setUp() throws Exception {
         super.setUp();
         mongoTemplate = new MongoTemplate(getMongo(), getDatabaseName());
-        updateInfoRepository = new UpdateRevisionRepositoryImpl(mongoTemplate);
+        updateContentRepository = new UpdateContentRepository(mongoTemplate);
+        final GenericApplicationContext context = new GenericApplicationContext();
+        context.addApplicationListener(new UpdateContentEventListener(updateContentRepository));
+        context.addApplicationListener(new OtherSegmentEventListener());
+        context.refresh();
+        mongoTemplate.setApplicationContext(context);
+        updateInfoRepository = new UpdateRevisionRepositoryImpl(mongoTemplate, updateContentRepository);
+        new IndexManager(mongoTemplate, Collections.singletonList(updateInfoRepository), 0L).ensureIndexes();
     }
 
     void compareUpdateInfo(UpdateRevision expected, UpdateRevision actual) {
@@ -65,5 +76,8 @@ abstract class UpdateInfoRepositoryTest extends MongoRepositoryTest {
 
     void insertUpdateInfoInDb(UpdateRevision... updateRevision) throws IOException {
         mongoTemplate.insertAll(Arrays.asList(updateRevision));
+        for (UpdateRevision revision : updateRevision) {
+            updateInfoRepository.saveLatestUpdateInfo(revision);
+        }
     }
 }
\ No newline at end of file
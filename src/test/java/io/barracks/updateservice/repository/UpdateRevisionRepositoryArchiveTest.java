@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.utils.UpdateRevisionUtils;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateRevisionRepositoryArchiveTest extends UpdateInfoRepositoryTest {
+
+    @Test
+    public void archiveUpdateRevisions_shouldMoveAllButTheLatestRevisionsToTheArchive() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final List<UpdateRevision> revisions = insertRevisions(userId, UUID.randomUUID(), 5, new Date(1000L));
+        final UpdateRevision head = revisions.get(4);
+
+        // When
+        final int result = updateInfoRepository.archiveUpdateRevisions(Collections.singletonList(head), 2, new Date(2000L));
+
+        // Then
+        assertThat(result).isEqualTo(3);
+        assertThat(getRevisionIds(mongoTemplate.findAll(UpdateRevision.class))).containsOnly(4, 5);
+        assertThat(getRevisionIds(mongoTemplate.findAll(UpdateRevision.class, UpdateRevisionRepositoryImpl.ARCHIVE_COLLECTION)))
+                .containsOnly(1, 2, 3);
+    }
+
+    @Test
+    public void archiveUpdateRevisions_whenRevisionsAreTooRecent_shouldKeepThemInTheHistory() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final List<UpdateRevision> revisions = insertRevisions(userId, UUID.randomUUID(), 3, new Date(3000L));
+
+        // When
+        final int result = updateInfoRepository.archiveUpdateRevisions(Collections.singletonList(revisions.get(2)), 1, new Date(2000L));
+
+        // Then
+        assertThat(result).isEqualTo(0);
+        assertThat(mongoTemplate.findAll(UpdateRevision.class)).hasSize(3);
+        assertThat(mongoTemplate.findAll(UpdateRevision.class, UpdateRevisionRepositoryImpl.ARCHIVE_COLLECTION)).isEmpty();
+    }
+
+    @Test
+    public void archiveUpdateRevisions_whenRevisionAlreadyArchived_shouldStillRemoveItFromTheHistory() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final List<UpdateRevision> revisions = insertRevisions(userId, UUID.randomUUID(), 2, new Date(1000L));
+        mongoTemplate.insert(revisions.get(0), UpdateRevisionRepositoryImpl.ARCHIVE_COLLECTION);
+
+        // When
+        final int result = updateInfoRepository.archiveUpdateRevisions(Collections.singletonList(revisions.get(1)), 1, new Date(2000L));
+
+        // Then
+        assertThat(result).isEqualTo(1);
+        assertThat(getRevisionIds(mongoTemplate.findAll(UpdateRevision.class))).containsOnly(2);
+        assertThat(getRevisionIds(mongoTemplate.findAll(UpdateRevision.class, UpdateRevisionRepositoryImpl.ARCHIVE_COLLECTION)))
+                .containsOnly(1);
+    }
+
+    @Test
+    public void getUpdateHistory_shouldReadTheHistoryThenTheArchive() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UUID uuid = UUID.randomUUID();
+        final List<UpdateRevision> revisions = insertRevisions(userId, uuid, 5, new Date(1000L));
+        insertRevisions(userId, UUID.randomUUID(), 2, new Date(1000L));
+        updateInfoRepository.archiveUpdateRevisions(Collections.singletonList(revisions.get(4)), 2, new Date(2000L));
+
+        // When
+        final Page<UpdateRevision> first = updateInfoRepository.getUpdateHistory(userId, uuid, new PageRequest(0, 3));
+        final Page<UpdateRevision> second = updateInfoRepository.getUpdateHistory(userId, uuid, new PageRequest(1, 3));
+
+        // Then
+        assertThat(first.getTotalElements()).isEqualTo(5);
+        assertThat(getRevisionIds(first.getContent())).containsExactly(5, 4, 3);
+        assertThat(getRevisionIds(second.getContent())).containsExactly(2, 1);
+    }
+
+    @Test
+    public void getUpdateHistory_whenNoRevision_shouldReturnEmptyPage() throws Exception {
+        // When
+        final Page<UpdateRevision> result = updateInfoRepository.getUpdateHistory(UUID.randomUUID().toString(), UUID.randomUUID(), new PageRequest(0, 10));
+
+        // Then
+        assertThat(result.getTotalElements()).isEqualTo(0);
+        assertThat(result.getContent()).isEmpty();
+    }
+
+    private List<UpdateRevision> insertRevisions(String userId, UUID uuid, int count, Date creationDate) throws Exception {
+        final List<UpdateRevision> revisions = IntStream.rangeClosed(1, count)
+                .mapToObj(revisionId -> UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                        .uuid(uuid)
+                        .revisionId(revisionId)
+                        .creationDate(creationDate)
+                        .build())
+                .collect(Collectors.toList());
+        insertUpdateInfoInDb(revisions.toArray(new UpdateRevision[]{}));
+        return revisions;
+    }
+
+    private List<Integer> getRevisionIds(List<UpdateRevision> revisions) {
+        return revisions.stream().map(UpdateRevision::getRevisionId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.repository;
+
+import io.barracks.updateservice.model.BulkInsertResult;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.utils.UpdateRevisionUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class UpdateRevisionRepositoryBulkInsertTest extends UpdateInfoRepositoryTest {
+
+    @Test
+    public void insertUpdateRevisions_whenNoRevisionConflicts_shouldInsertThemAll() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision revision1 = buildPublishedRevision(userId, 2);
+        final UpdateRevision revision2 = buildPublishedRevision(userId, 2);
+
+        // When
+        final BulkInsertResult result = updateInfoRepository.insertUpdateRevisions(Arrays.asList(revision1, revision2));
+
+        // Then
+        assertThat(result.getConflicts()).isEmpty();
+        assertThat(result.getInserted()).hasSize(2);
+        assertThat(result.getInserted()).allMatch(revision -> revision.getId() != null && revision.getCreationDate() != null);
+        assertThat(mongoTemplate.findAll(UpdateRevision.class)).containsExactlyInAnyOrder(result.getInserted().toArray(new UpdateRevision[0]));
+    }
+
+    @Test
+    public void insertUpdateRevisions_whenARevisionAlreadyExists_shouldReportItAndInsertTheOthers() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision existing = buildPublishedRevision(userId, 2);
+        insertUpdateInfoInDb(existing);
+        final UpdateRevision conflicting = existing.toBuilder().id(null).status(UpdateStatus.ARCHIVED).build();
+        final UpdateRevision other = buildPublishedRevision(userId, 2);
+
+        // When
+        final BulkInsertResult result = updateInfoRepository.insertUpdateRevisions(Arrays.asList(conflicting, other));
+
+        // Then
+        assertThat(result.getConflicts()).hasSize(1);
+        assertThat(result.getConflicts().get(0).getRevision()).isEqualTo(conflicting);
+        assertThat(result.getConflicts().get(0).isDuplicateKey()).isTrue();
+        assertThat(result.getInserted()).extracting(UpdateRevision::getUuid).containsExactly(other.getUuid());
+        assertThat(mongoTemplate.count(query(where("userId").is(userId)), UpdateRevision.class)).isEqualTo(2);
+    }
+
+    @Test
+    public void saveLatestUpdateInfo_whenGivenABatch_shouldReplaceOlderRevisionsOnly() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision current = buildPublishedRevision(userId, 1);
+        final UpdateRevision newer = buildPublishedRevision(userId, 3);
+        insertUpdateInfoInDb(current, newer);
+        final BulkInsertResult inserted = updateInfoRepository.insertUpdateRevisions(Arrays.asList(
+                current.toBuilder().id(null).revisionId(2).build(),
+                newer.toBuilder().id(null).revisionId(2).build()
+        ));
+
+        // When
+        updateInfoRepository.saveLatestUpdateInfo(inserted.getInserted());
+
+        // Then
+        assertThat(findLatestUpdateInfo(userId, current.getUuid())).extracting(UpdateRevision::getRevisionId).containsExactly(2);
+        assertThat(findLatestUpdateInfo(userId, newer.getUuid())).extracting(UpdateRevision::getRevisionId).containsExactly(3);
+    }
+
+    @Test
+    public void saveLatestUpdateInfo_whenGivenAnEmptyBatch_shouldDoNothing() throws Exception {
+        // When
+        updateInfoRepository.saveLatestUpdateInfo(Collections.emptyList());
+
+        // Then
+        assertThat(mongoTemplate.count(query(where("userId").exists(true)), UpdateRevisionRepositoryImpl.LATEST_UPDATE_INFO_COLLECTION)).isZero();
+    }
+
+    private List<UpdateRevision> findLatestUpdateInfo(String userId, UUID uuid) {
+        return mongoTemplate.find(
+                query(where("userId").is(userId).and("uuid").is(uuid)),
+                UpdateRevision.class,
+                UpdateRevisionRepositoryImpl.LATEST_UPDATE_INFO_COLLECTION
+        );
+    }
+
+    private UpdateRevision buildPublishedRevision(String userId, int revisionId) {
+        return UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .id(null)
+                .revisionId(revisionId)
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+    }
+}
@@ -24,6 +24,9 @@
 
 package io.barracks.updateservice.repository;
 
+import com.google.common.base.Strings;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 import io.barracks.updateservice.model.UpdateRevision;
 import io.barracks.updateservice.model.UpdateStatus;
 import io.barracks.updateservice.utils.UpdateRevisionUtils;
@@ -31,6 +34,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Optional;
 import java.util.UUID;
@@ -368,4 +372,95 @@ public class UpdateRevisionRepositoryBySegmentAndStatusTest extends UpdateInfoRe
         assertThat(result).isPresent();
         compareUpdateInfo(updateRevision6, result.get());
     }
+
+    @Test
+    public void getLatestPublishedUpdateInfo_whenAnsweredFromTheIndex_shouldResolveTheContent() throws IOException {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision updateRevision = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .additionalProperties(Collections.singletonMap("key", "value"))
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        insertUpdateInfoInDb(updateRevision);
+
+        // When
+        final Optional<UpdateRevision> result = new UpdateRevisionRepositoryImpl(mongoTemplate, new UpdateContentRepository(mongoTemplate))
+                .getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+
+        // Then
+        assertThat(result).isPresent();
+        compareUpdateInfo(updateRevision, result.get());
+        assertThat(result.get().getScheduledDate()).isEqualTo(updateRevision.getScheduledDate());
+        assertThat(result.get().getScheduledStatus()).isEqualTo(updateRevision.getScheduledStatus());
+    }
+
+    @Test
+    public void getLatestPublishedUpdateInfo_whenNameAndPackageIdAreLong_shouldResolveThemFromTheContentHash() throws IOException {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision updateRevision = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .name(Strings.repeat("name", 1000))
+                .packageId(Strings.repeat("packageId", 1000))
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        insertUpdateInfoInDb(updateRevision);
+
+        // When
+        final Optional<UpdateRevision> result = new UpdateRevisionRepositoryImpl(mongoTemplate, new UpdateContentRepository(mongoTemplate))
+                .getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+
+        // Then
+        assertThat(result).isPresent();
+        compareUpdateInfo(updateRevision, result.get());
+    }
+
+    @Test
+    public void getLatestPublishedUpdateInfo_whenTheHashDoesNotReferenceTheName_shouldReadTheWholeDocument() throws IOException {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision updateRevision = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        final DBObject document = new BasicDBObject();
+        mongoTemplate.getConverter().write(updateRevision, document);
+        new UpdateContentRepository(mongoTemplate).externalize(document);
+        mongoTemplate.getConverter().write(updateRevision, document);
+        mongoTemplate.getCollection(UpdateRevisionRepositoryImpl.LATEST_UPDATE_INFO_COLLECTION).insert(document);
+
+        // When
+        final Optional<UpdateRevision> result = new UpdateRevisionRepositoryImpl(mongoTemplate, new UpdateContentRepository(mongoTemplate))
+                .getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+
+        // Then
+        assertThat(result).isPresent();
+        compareUpdateInfo(updateRevision, result.get());
+    }
+
+    @Test
+    public void getLatestPublishedUpdateInfo_whenStoredWithoutContentHash_shouldReadTheWholeDocument() throws IOException {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision updateRevision = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .additionalProperties(Collections.singletonMap("key", "value"))
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        final DBObject document = new BasicDBObject();
+        mongoTemplate.getConverter().write(updateRevision, document);
+        mongoTemplate.getCollection(UpdateRevisionRepositoryImpl.LATEST_UPDATE_INFO_COLLECTION).insert(document);
+
+        // When
+        final Optional<UpdateRevision> result = updateInfoRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+
+        // Then
+        assertThat(result).isPresent();
+        compareUpdateInfo(updateRevision, result.get());
+    }
 }
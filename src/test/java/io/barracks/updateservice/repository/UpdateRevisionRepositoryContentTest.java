@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.utils.UpdateRevisionUtils;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateRevisionRepositoryContentTest extends UpdateInfoRepositoryTest {
+
+    @Test
+    public void insertUpdateRevisions_whenOnlyTheStatusChanges_shouldStoreTheContentOnce() throws Exception {
+        // Given
+        final UpdateRevision draft = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(UUID.randomUUID().toString())
+                .additionalProperties(Collections.singletonMap("key", "value"))
+                .build();
+        final UpdateRevision published = draft.toBuilder().revisionId(2).status(UpdateStatus.PUBLISHED).build();
+
+        // When
+        updateInfoRepository.insertUpdateRevisions(Arrays.asList(draft, published));
+
+        // Then
+        final List<DBObject> documents = mongoTemplate.getCollection(getCollectionName()).find().toArray();
+        assertThat(documents).hasSize(2);
+        assertThat(documents).allMatch(document -> !document.containsField("description") && !document.containsField("additionalProperties"));
+        assertThat(documents.get(0).get(UpdateContentRepository.CONTENT_HASH_KEY))
+                .isNotNull()
+                .isEqualTo(documents.get(1).get(UpdateContentRepository.CONTENT_HASH_KEY));
+        assertThat(mongoTemplate.getCollection(UpdateContentRepository.CONTENT_COLLECTION).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void findAll_whenContentStoredAside_shouldResolveIt() throws Exception {
+        // Given
+        final UpdateRevision revision = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(UUID.randomUUID().toString())
+                .additionalProperties(Collections.singletonMap("key", "value"))
+                .build();
+        insertUpdateInfoInDb(revision);
+
+        // When
+        final List<UpdateRevision> result = mongoTemplate.findAll(UpdateRevision.class);
+
+        // Then
+        assertThat(result).hasSize(1);
+        compareUpdateInfo(revision, result.get(0));
+    }
+
+    @Test
+    public void saveLatestUpdateInfo_shouldKeepTheContentInlineNextToItsHash() throws Exception {
+        // Given
+        final UpdateRevision revision = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(UUID.randomUUID().toString()).build();
+
+        // When
+        insertUpdateInfoInDb(revision);
+
+        // Then
+        final DBObject document = mongoTemplate.getCollection(UpdateRevisionRepositoryImpl.LATEST_UPDATE_INFO_COLLECTION).findOne();
+        assertThat(document.get("description")).isEqualTo(revision.getDescription());
+        assertThat(document.get(UpdateContentRepository.CONTENT_HASH_KEY)).isNotNull();
+    }
+
+    @Test
+    public void editUpdateRevision_shouldReferenceTheNewContent() throws Exception {
+        // Given
+        final UpdateRevision revision = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(UUID.randomUUID().toString()).build();
+        insertUpdateInfoInDb(revision);
+        final Object previousHash = mongoTemplate.getCollection(getCollectionName()).findOne().get(UpdateContentRepository.CONTENT_HASH_KEY);
+        final UpdateRevision edited = revision.toBuilder()
+                .description("edited")
+                .additionalProperties(Collections.singletonMap("key", "value"))
+                .build();
+
+        // When
+        final Optional<UpdateRevision> result = updateInfoRepository.editUpdateRevision(edited);
+
+        // Then
+        assertThat(result).isPresent();
+        compareUpdateInfo(edited, result.get());
+        final DBObject document = mongoTemplate.getCollection(getCollectionName()).findOne();
+        assertThat(document.containsField("description")).isFalse();
+        assertThat(document.get(UpdateContentRepository.CONTENT_HASH_KEY)).isNotEqualTo(previousHash);
+        assertThat(mongoTemplate.getCollection(UpdateContentRepository.CONTENT_COLLECTION)
+                .findOne(new BasicDBObject("_id", document.get(UpdateContentRepository.CONTENT_HASH_KEY)))).isNotNull();
+    }
+
+    @Test
+    public void findAll_whenContentStoredInline_shouldReadIt() throws Exception {
+        // Given
+        final UpdateRevision revision = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(UUID.randomUUID().toString()).build();
+        final DBObject document = new BasicDBObject();
+        mongoTemplate.getConverter().write(revision, document);
+        mongoTemplate.getCollection(getCollectionName()).insert(document);
+
+        // When
+        final List<UpdateRevision> result = mongoTemplate.findAll(UpdateRevision.class);
+
+        // Then
+        assertThat(result).hasSize(1);
+        compareUpdateInfo(revision, result.get(0));
+    }
+
+    private String getCollectionName() {
+        return mongoTemplate.getCollectionName(UpdateRevision.class);
+    }
+}
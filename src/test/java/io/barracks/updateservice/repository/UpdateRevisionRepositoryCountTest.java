@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import io.barracks.updateservice.model.UpdateCount;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.utils.UpdateRevisionUtils;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateRevisionRepositoryCountTest extends UpdateInfoRepositoryTest {
+
+    @Test
+    public void countLatestUpdateInfo_shouldCountTheUpdatesOfTheUserBySegmentAndStatus() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        insertUpdateInfoInDb(
+                UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.DRAFT).build(),
+                UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).segmentId("segment").status(UpdateStatus.DRAFT).build(),
+                UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).segmentId(null).status(UpdateStatus.PUBLISHED).build(),
+                UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(UUID.randomUUID().toString()).status(UpdateStatus.DRAFT).build()
+        );
+
+        // When
+        final List<UpdateCount> result = updateInfoRepository.countLatestUpdateInfo(userId);
+
+        // Then
+        assertThat(result).containsOnly(
+                UpdateCount.builder().userId(userId).segmentId("segment").status(UpdateStatus.DRAFT).count(2).build(),
+                UpdateCount.builder().userId(userId).segmentId(OtherSegment.ID).status(UpdateStatus.PUBLISHED).count(1).build()
+        );
+    }
+
+    @Test
+    public void getLatestUpdateInfoUserIds_shouldReturnEachUserOnce() throws Exception {
+        // Given
+        final String userId1 = UUID.randomUUID().toString();
+        final String userId2 = UUID.randomUUID().toString();
+        insertUpdateInfoInDb(
+                UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId1).build(),
+                UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId1).build(),
+                UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId2).build()
+        );
+
+        // When
+        final List<String> result = updateInfoRepository.getLatestUpdateInfoUserIds();
+
+        // Then
+        assertThat(result).containsOnly(userId1, userId2).hasSize(2);
+    }
+}
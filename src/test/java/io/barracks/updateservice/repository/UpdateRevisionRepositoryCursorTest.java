@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.repository;
+
+import io.barracks.updateservice.model.UpdateCursor;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.utils.UpdateRevisionUtils;
+import org.junit.Test;
+import org.springframework.data.domain.Slice;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateRevisionRepositoryCursorTest extends UpdateInfoRepositoryTest {
+
+    @Test
+    public void getAllLatestUpdateInfo_whenNoCursorGiven_shouldReturnMostRecentUpdatesFirst() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision older = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).creationDate(new Date(1000L)).build();
+        final UpdateRevision newer = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).creationDate(new Date(2000L)).build();
+        final UpdateRevision newest = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).creationDate(new Date(3000L)).build();
+        insertUpdateInfoInDb(older, newest, newer);
+
+        // When
+        final Slice<UpdateRevision> result = getSlice(Optional.empty(), 2, userId, Collections.emptyList());
+
+        // Then
+        assertThat(result.getContent()).containsExactly(newest, newer);
+        assertThat(result.hasNext()).isTrue();
+    }
+
+    @Test
+    public void getAllLatestUpdateInfo_whenWalkingWithCursors_shouldReturnEachUpdateOnce() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final List<UpdateRevision> updates = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            // Some updates share a creation date, so that the uuid has to break the tie
+            updates.add(UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).creationDate(new Date(1000L * (i / 2))).build());
+        }
+        insertUpdateInfoInDb(updates.toArray(new UpdateRevision[0]));
+
+        // When
+        final List<UpdateRevision> result = new ArrayList<>();
+        Optional<UpdateCursor> cursor = Optional.empty();
+        Slice<UpdateRevision> slice;
+        do {
+            slice = getSlice(cursor, 2, userId, Collections.emptyList());
+            result.addAll(slice.getContent());
+            cursor = slice.hasContent() ? Optional.of(UpdateCursor.of(result.get(result.size() - 1))) : cursor;
+        } while (slice.hasNext());
+
+        // Then
+        assertThat(result).containsExactlyInAnyOrder(updates.toArray(new UpdateRevision[0]));
+        for (int i = 1; i < result.size(); i++) {
+            assertThat(result.get(i).getCreationDate()).isBeforeOrEqualsTo(result.get(i - 1).getCreationDate());
+        }
+    }
+
+    @Test
+    public void getAllLatestUpdateInfo_whenStatusGiven_shouldOnlyReturnUpdatesOfThatStatus() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision draft = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).creationDate(new Date(1000L)).build();
+        final UpdateRevision published = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .creationDate(new Date(2000L))
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        insertUpdateInfoInDb(draft, published);
+
+        // When
+        final Slice<UpdateRevision> result = getSlice(
+                Optional.of(new UpdateCursor(new Date(3000L), UUID.randomUUID())),
+                10,
+                userId,
+                Collections.singletonList(UpdateStatus.DRAFT.getName())
+        );
+
+        // Then
+        assertThat(result.getContent()).containsExactly(draft);
+        assertThat(result.hasNext()).isFalse();
+    }
+
+    private Slice<UpdateRevision> getSlice(Optional<UpdateCursor> cursor, int size, String userId, List<String> statuses) {
+        return updateInfoRepository.getAllLatestUpdateInfo(cursor, size, Optional.of(userId), statuses, Collections.emptyList());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.repository;
+
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.utils.UpdateRevisionUtils;
+import org.junit.Test;
+import org.springframework.data.domain.Slice;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateRevisionRepositoryDueScheduledTest extends UpdateInfoRepositoryTest {
+
+    @Test
+    public void getAllDueScheduledUpdateInfo_whenUpdatesScheduled_shouldOnlyReturnDueOnesInScheduledDateOrder() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision dueLater = buildScheduledUpdate(userId, 2000L);
+        final UpdateRevision dueFirst = buildScheduledUpdate(userId, 1000L);
+        final UpdateRevision notDue = buildScheduledUpdate(userId, 5000L);
+        final UpdateRevision draft = buildScheduledUpdate(userId, 1000L).toBuilder().status(UpdateStatus.DRAFT).build();
+        insertUpdateInfoInDb(dueLater, dueFirst, notDue, draft);
+
+        // When
+        final Slice<UpdateRevision> result = updateInfoRepository.getAllDueScheduledUpdateInfo(new Date(3000L), Optional.empty(), 10);
+
+        // Then
+        assertThat(result.getContent()).containsExactly(dueFirst, dueLater);
+        assertThat(result.hasNext()).isFalse();
+    }
+
+    @Test
+    public void getAllDueScheduledUpdateInfo_whenWalkingSlices_shouldReturnEachDueUpdateOnce() throws Exception {
+        // Given
+        final List<UpdateRevision> updates = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            // Several updates are due at the same date, so that the id has to break the tie
+            updates.add(buildScheduledUpdate(UUID.randomUUID().toString(), 1000L * (i / 2)));
+        }
+        insertUpdateInfoInDb(updates.toArray(new UpdateRevision[0]));
+
+        // When
+        final List<UpdateRevision> result = new ArrayList<>();
+        Optional<UpdateRevision> last = Optional.empty();
+        Slice<UpdateRevision> slice;
+        do {
+            slice = updateInfoRepository.getAllDueScheduledUpdateInfo(new Date(3000L), last, 2);
+            result.addAll(slice.getContent());
+            last = slice.hasContent() ? Optional.of(result.get(result.size() - 1)) : last;
+        } while (slice.hasNext());
+
+        // Then
+        assertThat(result).containsExactlyInAnyOrder(updates.toArray(new UpdateRevision[0]));
+    }
+
+    private UpdateRevision buildScheduledUpdate(String userId, long scheduledDate) {
+        return UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .status(UpdateStatus.SCHEDULED)
+                .scheduledDate(new Date(scheduledDate))
+                .build();
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.updateservice.repository;
+
+import io.barracks.updateservice.model.RevisionTag;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.model.UpdateStatus;
+import io.barracks.updateservice.utils.UpdateRevisionUtils;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class UpdateRevisionRepositoryLatestUpdateInfoTest extends UpdateInfoRepositoryTest {
+
+    @Test
+    public void saveLatestUpdateInfo_whenNewerRevisionSaved_shouldReplaceThePreviousOne() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision revision1 = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision revision2 = revision1.toBuilder()
+                .creationDate(new Date(123456789111L))
+                .status(UpdateStatus.PUBLISHED)
+                .revisionId(2)
+                .build();
+        insertUpdateInfoInDb(revision1, revision2);
+
+        // When
+        final List<UpdateRevision> result = getAllLatestUpdateInfo(userId);
+
+        // Then
+        assertThat(result).containsExactly(revision2);
+    }
+
+    @Test
+    public void saveLatestUpdateInfo_whenOlderRevisionSaved_shouldKeepTheMostRecentOne() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision revision1 = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision revision2 = revision1.toBuilder()
+                .creationDate(new Date(123456789111L))
+                .status(UpdateStatus.PUBLISHED)
+                .revisionId(2)
+                .build();
+        insertUpdateInfoInDb(revision2, revision1);
+
+        // When
+        final List<UpdateRevision> result = getAllLatestUpdateInfo(userId);
+
+        // Then
+        assertThat(result).containsExactly(revision2);
+    }
+
+    @Test
+    public void rebuildLatestUpdateInfo_whenHistoryExists_shouldStoreTheLatestRevisionOfEachUpdate() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final String segmentId = UUID.randomUUID().toString();
+        final UpdateRevision draft = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .segmentId(segmentId)
+                .build();
+        final UpdateRevision published = draft.toBuilder()
+                .creationDate(new Date(123456789111L))
+                .status(UpdateStatus.PUBLISHED)
+                .revisionId(2)
+                .build();
+        final UpdateRevision other = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).build();
+        mongoTemplate.insertAll(Arrays.asList(draft, published, other));
+
+        // When
+        final int count = updateInfoRepository.rebuildLatestUpdateInfo();
+
+        // Then
+        assertThat(count).isGreaterThanOrEqualTo(2);
+        assertThat(getAllLatestUpdateInfo(userId)).containsExactlyInAnyOrder(published, other);
+        final Optional<UpdateRevision> latest = updateInfoRepository.getLatestPublishedUpdateInfoBySegment(userId, segmentId);
+        assertThat(latest).isPresent();
+        compareUpdateInfo(published, latest.get());
+    }
+
+    @Test
+    public void reviseLatestUpdateInfo_whenStatusCanBeChanged_shouldStoreTheNextRevisionAndReturnThePreviousOne() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision current = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .status(UpdateStatus.SCHEDULED)
+                .scheduledDate(new Date(123456789111L))
+                .build();
+        insertUpdateInfoInDb(current);
+        final UpdateRevision revision = current.toBuilder()
+                .name("New name")
+                .status(UpdateStatus.PUBLISHED)
+                .scheduledDate(null)
+                .build();
+
+        // When
+        final Optional<UpdateRevision> result = updateInfoRepository.reviseLatestUpdateInfo(
+                revision,
+                Arrays.asList(UpdateStatus.DRAFT, UpdateStatus.SCHEDULED)
+        );
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(result.get().getRevisionId()).isEqualTo(current.getRevisionId());
+        assertThat(result.get().getStatus()).isEqualTo(UpdateStatus.SCHEDULED);
+        final List<UpdateRevision> latest = getAllLatestUpdateInfo(userId);
+        assertThat(latest).hasSize(1);
+        assertThat(latest.get(0).getRevisionId()).isEqualTo(current.getRevisionId() + 1);
+        assertThat(latest.get(0).getName()).isEqualTo("New name");
+        assertThat(latest.get(0).getStatus()).isEqualTo(UpdateStatus.PUBLISHED);
+        assertThat(latest.get(0).getScheduledDate()).isNull();
+    }
+
+    @Test
+    public void reviseLatestUpdateInfo_whenStatusCannotBeChanged_shouldLeaveTheLatestRevisionUnchanged() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision current = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        insertUpdateInfoInDb(current);
+
+        // When
+        final Optional<UpdateRevision> result = updateInfoRepository.reviseLatestUpdateInfo(
+                current.toBuilder().status(UpdateStatus.DRAFT).build(),
+                Arrays.asList(UpdateStatus.DRAFT, UpdateStatus.SCHEDULED)
+        );
+
+        // Then
+        assertThat(result).isEmpty();
+        assertThat(getAllLatestUpdateInfo(userId)).containsExactly(current);
+    }
+
+    @Test
+    public void reviseLatestUpdateInfo_whenExpectedRevisionIsNotTheLatest_shouldLeaveTheLatestRevisionUnchanged() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision current = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .revisionId(2)
+                .build();
+        insertUpdateInfoInDb(current);
+
+        // When
+        final Optional<UpdateRevision> result = updateInfoRepository.reviseLatestUpdateInfo(
+                current.toBuilder().status(UpdateStatus.PUBLISHED).build(),
+                Arrays.asList(UpdateStatus.DRAFT, UpdateStatus.SCHEDULED),
+                new RevisionTag(1, 0)
+        );
+
+        // Then
+        assertThat(result).isEmpty();
+        assertThat(getAllLatestUpdateInfo(userId)).containsExactly(current);
+    }
+
+    @Test
+    public void editLatestUpdateInfo_whenDraftIsStored_shouldEditItInPlaceAndBumpItsEditVersion() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision draft = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).build();
+        insertUpdateInfoInDb(draft);
+        final UpdateRevision edit = draft.toBuilder().name("New name").segmentId(null).editVersion(1).build();
+
+        // When
+        final Optional<UpdateRevision> result = updateInfoRepository.editLatestUpdateInfo(edit, Optional.of(RevisionTag.of(draft)));
+        final Optional<UpdateRevision> edited = updateInfoRepository.editUpdateRevision(edit);
+
+        // Then
+        assertThat(result).contains(draft);
+        assertThat(edited).contains(edit);
+        assertThat(getAllLatestUpdateInfo(userId)).containsExactly(edit);
+        assertThat(mongoTemplate.find(query(where("userId").is(userId)), UpdateRevision.class)).containsExactly(edit);
+    }
+
+    @Test
+    public void editLatestUpdateInfo_whenDraftHasBeenEditedSinceTheGivenTag_shouldLeaveTheLatestRevisionUnchanged() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision draft = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).editVersion(2).build();
+        insertUpdateInfoInDb(draft);
+
+        // When
+        final Optional<UpdateRevision> result = updateInfoRepository.editLatestUpdateInfo(
+                draft.toBuilder().name("New name").build(),
+                Optional.of(new RevisionTag(draft.getRevisionId(), 1))
+        );
+
+        // Then
+        assertThat(result).isEmpty();
+        assertThat(getAllLatestUpdateInfo(userId)).containsExactly(draft);
+    }
+
+    @Test
+    public void editUpdateRevision_whenALaterEditIsAlreadyStored_shouldLeaveTheRevisionUnchanged() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision draft = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).editVersion(3).build();
+        insertUpdateInfoInDb(draft);
+
+        // When
+        final Optional<UpdateRevision> result = updateInfoRepository.editUpdateRevision(
+                draft.toBuilder().name("Older name").editVersion(2).build()
+        );
+
+        // Then
+        assertThat(result).isEmpty();
+        assertThat(mongoTemplate.find(query(where("userId").is(userId)), UpdateRevision.class)).containsExactly(draft);
+    }
+
+    @Test
+    public void reviseLatestUpdateInfo_whenDraftHasBeenEdited_shouldResetItsEditVersion() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision draft = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).editVersion(2).build();
+        insertUpdateInfoInDb(draft);
+
+        // When
+        final Optional<UpdateRevision> result = updateInfoRepository.reviseLatestUpdateInfo(
+                draft.toBuilder().status(UpdateStatus.PUBLISHED).editVersion(null).build(),
+                Collections.singletonList(UpdateStatus.DRAFT),
+                RevisionTag.of(draft)
+        );
+
+        // Then
+        assertThat(result).contains(draft);
+        final List<UpdateRevision> latest = getAllLatestUpdateInfo(userId);
+        assertThat(latest).hasSize(1);
+        assertThat(latest.get(0).getRevisionId()).isEqualTo(draft.getRevisionId() + 1);
+        assertThat(latest.get(0).getEditVersion()).isNull();
+    }
+
+    @Test
+    public void editLatestUpdateInfo_whenStatusDiffers_shouldLeaveTheLatestRevisionUnchanged() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision published = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId)
+                .status(UpdateStatus.PUBLISHED)
+                .build();
+        insertUpdateInfoInDb(published);
+
+        // When
+        final Optional<UpdateRevision> result = updateInfoRepository.editLatestUpdateInfo(
+                published.toBuilder().status(UpdateStatus.DRAFT).build(),
+                Optional.empty()
+        );
+
+        // Then
+        assertThat(result).isEmpty();
+        assertThat(getAllLatestUpdateInfo(userId)).containsExactly(published);
+    }
+
+    @Test
+    public void replaceLatestUpdateInfo_whenRevisionWithTheSameIdIsStored_shouldReplaceIt() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision current = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).build();
+        insertUpdateInfoInDb(current);
+        final UpdateRevision revision = current.toBuilder().status(UpdateStatus.PUBLISHED).build();
+
+        // When
+        updateInfoRepository.replaceLatestUpdateInfo(revision);
+
+        // Then
+        assertThat(getAllLatestUpdateInfo(userId)).containsExactly(revision);
+    }
+
+    @Test
+    public void restoreLatestUpdateInfo_whenLatestRevisionIsStillTheGivenId_shouldPutTheRevisionBack() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision current = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).build();
+        insertUpdateInfoInDb(current);
+        final UpdateRevision revision = current.toBuilder().status(UpdateStatus.PUBLISHED).build();
+        updateInfoRepository.reviseLatestUpdateInfo(revision, Collections.singletonList(current.getStatus()));
+
+        // When
+        updateInfoRepository.restoreLatestUpdateInfo(current, current.getRevisionId() + 1);
+
+        // Then
+        assertThat(getAllLatestUpdateInfo(userId)).containsExactly(current);
+    }
+
+    @Test
+    public void restoreLatestUpdateInfo_whenLatestRevisionMovedOn_shouldKeepIt() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision current = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).build();
+        insertUpdateInfoInDb(current);
+        final UpdateRevision revision = current.toBuilder().status(UpdateStatus.PUBLISHED).build();
+        updateInfoRepository.reviseLatestUpdateInfo(revision, Collections.singletonList(current.getStatus()));
+        updateInfoRepository.reviseLatestUpdateInfo(revision, Collections.singletonList(revision.getStatus()));
+
+        // When
+        updateInfoRepository.restoreLatestUpdateInfo(current, current.getRevisionId() + 1);
+
+        // Then
+        assertThat(getAllLatestUpdateInfo(userId)).extracting(UpdateRevision::getRevisionId).containsExactly(current.getRevisionId() + 2);
+    }
+
+    @Test
+    public void getAllLatestUpdateInfo_whenSortedByAFieldLeftOutOfTheSlimKeys_shouldReturnTheWholeRevisionsOfThePageInOrder() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision a = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).name("a")
+                .additionalProperties(Collections.singletonMap("key", "a")).build();
+        final UpdateRevision b = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).name("b")
+                .additionalProperties(Collections.singletonMap("key", "b")).build();
+        final UpdateRevision c = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).name("c")
+                .additionalProperties(Collections.singletonMap("key", "c")).build();
+        insertUpdateInfoInDb(b, c, a);
+
+        // When
+        final Page<UpdateRevision> result = updateInfoRepository.getAllLatestUpdateInfo(
+                new PageRequest(0, 2, Sort.Direction.ASC, "name"),
+                Optional.of(userId),
+                Collections.emptyList(),
+                Collections.emptyList()
+        );
+
+        // Then
+        assertThat(result.getTotalElements()).isEqualTo(3);
+        assertThat(result.getContent()).containsExactly(a, b);
+    }
+
+    private List<UpdateRevision> getAllLatestUpdateInfo(String userId) {
+        return mongoTemplate.find(
+                query(where("userId").is(userId)),
+                UpdateRevision.class,
+                UpdateRevisionRepositoryImpl.LATEST_UPDATE_INFO_COLLECTION
+        );
+    }
+}
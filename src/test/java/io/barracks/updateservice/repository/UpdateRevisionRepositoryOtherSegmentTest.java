@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package io.barracks.updateservice.repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import io.barracks.updateservice.model.UpdateRevision;
+import io.barracks.updateservice.utils.UpdateRevisionUtils;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateRevisionRepositoryOtherSegmentTest extends UpdateInfoRepositoryTest {
+
+    @Test
+    public void saveLatestUpdateInfo_whenNoSegment_shouldStoreTheOtherSegmentAndReadItBackAsNoSegment() throws Exception {
+        // Given
+        final UpdateRevision revision = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(UUID.randomUUID().toString())
+                .segmentId(null)
+                .build();
+
+        // When
+        insertUpdateInfoInDb(revision);
+
+        // Then
+        final DBObject document = mongoTemplate.getCollection(UpdateRevisionRepositoryImpl.LATEST_UPDATE_INFO_COLLECTION).findOne();
+        assertThat(document.get(OtherSegment.SEGMENT_ID_KEY)).isEqualTo(OtherSegment.ID);
+        assertThat(mongoTemplate.findAll(UpdateRevision.class, UpdateRevisionRepositoryImpl.LATEST_UPDATE_INFO_COLLECTION))
+                .extracting(UpdateRevision::getSegmentId)
+                .containsExactly((String) null);
+    }
+
+    @Test
+    public void getAllLatestUpdateInfo_whenOtherAndRealSegmentsGiven_shouldReturnBoth() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision other = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).segmentId(null).build();
+        final UpdateRevision segment = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision ignored = UpdateRevisionUtils.getCreatedUpdateRevisionBuilder(userId).build();
+        insertUpdateInfoInDb(other, segment, ignored);
+
+        // When
+        final List<UpdateRevision> result = updateInfoRepository.getAllLatestUpdateInfo(
+                Optional.empty(), 10, Optional.of(userId), Collections.emptyList(), Arrays.asList(OtherSegment.ID, segment.getSegmentId())
+        ).getContent();
+
+        // Then
+        assertThat(result).containsExactlyInAnyOrder(other, segment);
+    }
+
+    @Test
+    public void migrateOtherSegment_shouldStoreTheOtherSegmentInEveryCollection() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final List<String> collections = Arrays.asList(
+                UpdateRevisionRepositoryImpl.LATEST_UPDATE_INFO_COLLECTION,
+                mongoTemplate.getCollectionName(UpdateRevision.class),
+                UpdateRevisionRepositoryImpl.ARCHIVE_COLLECTION
+        );
+        for (String collection : collections) {
+            mongoTemplate.getCollection(collection).insert(
+                    new BasicDBObject("userId", userId).append("uuid", UUID.randomUUID()).append("status", "published"),
+                    new BasicDBObject("userId", userId).append("uuid", UUID.randomUUID()).append("segmentId", null),
+                    new BasicDBObject("userId", userId).append("uuid", UUID.randomUUID()).append("segmentId", "segment")
+            );
+        }
+
+        // When
+        final int result = updateInfoRepository.migrateOtherSegment(1);
+
+        // Then
+        assertThat(result).isEqualTo(6);
+        for (String collection : collections) {
+            assertThat(mongoTemplate.getCollection(collection).find().toArray())
+                    .extracting(document -> document.get(OtherSegment.SEGMENT_ID_KEY))
+                    .containsExactlyInAnyOrder(OtherSegment.ID, OtherSegment.ID, "segment");
+        }
+    }
+}
@@ -28,9 +28,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.barracks.commons.test.ServiceClientTest;
 import io.barracks.updateservice.config.ExceptionConfig;
 import io.barracks.updateservice.exception.InvalidUpdateOperationException;
-import io.barracks.updateservice.exception.NoSuchUpdateException;
+import io.barracks.updateservice.exception.StaleRevisionException;
 import io.barracks.updateservice.exception.UpdateNotFoundException;
 import io.barracks.updateservice.manager.UpdateRevisionManager;
+import io.barracks.updateservice.model.RevisionTag;
+import io.barracks.updateservice.model.UpdateCount;
+import io.barracks.updateservice.model.UpdateCounts;
+import io.barracks.updateservice.model.UpdateCursor;
 import io.barracks.updateservice.model.UpdateEntity;
 import io.barracks.updateservice.model.UpdateRevision;
 import io.barracks.updateservice.model.UpdateStatus;
@@ -45,9 +49,11 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.web.HateoasPageableHandlerMethodArgumentResolver;
 import org.springframework.data.web.PagedResourcesAssembler;
 import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.restdocs.RestDocumentation;
 import org.springframework.restdocs.mockmvc.RestDocumentationResultHandler;
@@ -60,6 +66,7 @@ import java.util.*;
 
 import static io.barracks.updateservice.utils.UpdateRevisionUtils.getCreatedUpdateRevisionBuilder;
 import static io.barracks.updateservice.utils.UpdateRevisionUtils.getMatcherThatIgnoreUpdateUuidAndCreationDate;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.Mockito.*;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
@@ -146,6 +153,29 @@ public class UpdateRevisionResourceTest extends ServiceClientTest {
         result.andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void createUpdate_whenSegmentIdIsTheOtherSegment_shouldReturn400BadRequest() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateEntity requestBody = UpdateEntityUtils.getEntityBuilder(userId)
+                .segmentId("other")
+                .build();
+        final ObjectMapper mapper = new ObjectMapper();
+        final String jsonRequestBody = mapper.writeValueAsString(requestBody);
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.post(UPDATES_ENDPOINT)
+                        .content(jsonRequestBody)
+                        .contentType(MediaType.APPLICATION_JSON_UTF8)
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        result.andExpect(status().isBadRequest());
+        verifyZeroInteractions(updateRevisionManager);
+    }
+
     @Test
     public void createUpdate_whenPackageIdIsMissing_shouldReturn400BadRequest() throws Exception {
         // Given
@@ -442,6 +472,120 @@ public class UpdateRevisionResourceTest extends ServiceClientTest {
         compareUpdateRevisionWithResult(result, revisedUpdate, "");
     }
 
+    @Test
+    public void reviseUpdate_whenIfMatchGiven_shouldReviseThatRevisionAndReturnTheNewEntityTag() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UUID updateUuid = UUID.randomUUID();
+        final UpdateEntity requestBody = UpdateEntityUtils.getEntityBuilder(userId)
+                .status(UpdateStatus.DRAFT)
+                .build();
+        final ObjectMapper mapper = new ObjectMapper();
+        final String jsonRequestBody = mapper.writeValueAsString(requestBody);
+        final UpdateRevision revisedUpdate = requestBody.toUpdateRevision().toBuilder().revisionId(4).build();
+
+        doReturn(revisedUpdate).when(updateRevisionManager).reviseUpdate(getMatcherThatIgnoreUpdateUuidAndCreationDate(requestBody.toUpdateRevision()), eq(new RevisionTag(3, 0)));
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.put(UPDATES_ENDPOINT + "/" + updateUuid.toString())
+                        .param("userId", userId)
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .content(jsonRequestBody)
+                        .contentType(MediaType.APPLICATION_JSON_UTF8)
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        verify(updateRevisionManager).reviseUpdate(getMatcherThatIgnoreUpdateUuidAndCreationDate(requestBody.toUpdateRevision()), eq(new RevisionTag(3, 0)));
+        verify(updateRevisionManager, never()).reviseUpdate(any(UpdateRevision.class));
+        result.andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+    }
+
+    @Test
+    public void reviseUpdate_whenIfMatchCarriesAnEditVersion_shouldReviseThatEditAndReturnTheNewEntityTag() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UUID updateUuid = UUID.randomUUID();
+        final UpdateEntity requestBody = UpdateEntityUtils.getEntityBuilder(userId)
+                .status(UpdateStatus.DRAFT)
+                .build();
+        final ObjectMapper mapper = new ObjectMapper();
+        final String jsonRequestBody = mapper.writeValueAsString(requestBody);
+        final UpdateRevision editedUpdate = requestBody.toUpdateRevision().toBuilder().revisionId(3).editVersion(3).build();
+
+        doReturn(editedUpdate).when(updateRevisionManager).reviseUpdate(getMatcherThatIgnoreUpdateUuidAndCreationDate(requestBody.toUpdateRevision()), eq(new RevisionTag(3, 2)));
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.put(UPDATES_ENDPOINT + "/" + updateUuid.toString())
+                        .param("userId", userId)
+                        .header(HttpHeaders.IF_MATCH, "\"3.2\"")
+                        .content(jsonRequestBody)
+                        .contentType(MediaType.APPLICATION_JSON_UTF8)
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        verify(updateRevisionManager).reviseUpdate(getMatcherThatIgnoreUpdateUuidAndCreationDate(requestBody.toUpdateRevision()), eq(new RevisionTag(3, 2)));
+        result.andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3.3\""))
+                .andExpect(jsonPath("$.editVersion").doesNotExist());
+    }
+
+    @Test
+    public void reviseUpdate_whenManagerThrowStaleRevisionException_shouldReturn412PreconditionFailed() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UUID updateUuid = UUID.randomUUID();
+        final UpdateEntity requestBody = UpdateEntityUtils.getEntityBuilder(userId)
+                .status(UpdateStatus.DRAFT)
+                .build();
+        final ObjectMapper mapper = new ObjectMapper();
+        final String jsonRequestBody = mapper.writeValueAsString(requestBody);
+
+        doThrow(new StaleRevisionException(""))
+                .when(updateRevisionManager).reviseUpdate(getMatcherThatIgnoreUpdateUuidAndCreationDate(requestBody.toUpdateRevision()), eq(new RevisionTag(3, 0)));
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.put(UPDATES_ENDPOINT + "/" + updateUuid.toString())
+                        .param("userId", userId)
+                        .header(HttpHeaders.IF_MATCH, "W/\"3\"")
+                        .content(jsonRequestBody)
+                        .contentType(MediaType.APPLICATION_JSON_UTF8)
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        result.andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void reviseUpdate_whenIfMatchIsNotARevision_shouldReturn412PreconditionFailed() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UUID updateUuid = UUID.randomUUID();
+        final UpdateEntity requestBody = UpdateEntityUtils.getEntityBuilder(userId).build();
+        final ObjectMapper mapper = new ObjectMapper();
+        final String jsonRequestBody = mapper.writeValueAsString(requestBody);
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.put(UPDATES_ENDPOINT + "/" + updateUuid.toString())
+                        .param("userId", userId)
+                        .header(HttpHeaders.IF_MATCH, "\"abc\"")
+                        .content(jsonRequestBody)
+                        .contentType(MediaType.APPLICATION_JSON_UTF8)
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        verifyZeroInteractions(updateRevisionManager);
+        result.andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     public void getAllUpdates_whenNoUserIdGiven_shouldReturn400BadRequest() throws Exception {
         // Given
@@ -561,6 +705,83 @@ public class UpdateRevisionResourceTest extends ServiceClientTest {
         compareUpdateRevisionWithResult(result, update2, "content[1]");
     }
 
+    @Test
+    public void getAllUpdatesAfterCursor_whenEmptyCursorGiven_shouldReturnFirstSliceAndNextLink() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateRevision update1 = getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateRevision update2 = getCreatedUpdateRevisionBuilder(userId).build();
+        final UpdateCursor next = UpdateCursor.of(update2);
+
+        doReturn(new SliceImpl<>(Arrays.asList(update1, update2), new PageRequest(0, 2), true))
+                .when(updateRevisionManager).getAllUpdates(Optional.empty(), 2, userId, Collections.emptyList(), Collections.emptyList());
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.get(UPDATES_ENDPOINT)
+                        .param("userId", userId)
+                        .param("cursor", "")
+                        .param("size", "2")
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        verify(updateRevisionManager).getAllUpdates(Optional.empty(), 2, userId, Collections.emptyList(), Collections.emptyList());
+        result.andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.content", hasSize(2)))
+                .andExpect(jsonPath("$.links[0].rel").value("next"))
+                .andExpect(jsonPath("$.links[0].href").value(containsString("cursor=" + next.toToken())));
+        compareUpdateRevisionWithResult(result, update1, "content[0]");
+        compareUpdateRevisionWithResult(result, update2, "content[1]");
+    }
+
+    @Test
+    public void getAllUpdatesAfterCursor_whenLastSliceGiven_shouldReturnNoNextLink() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final List<String> statuses = Collections.singletonList(UpdateStatus.PUBLISHED.getName());
+        final UpdateCursor cursor = new UpdateCursor(new Date(1234567890123L), UUID.randomUUID());
+        final UpdateRevision update = getCreatedUpdateRevisionBuilder(userId).build();
+
+        doReturn(new SliceImpl<>(Collections.singletonList(update), new PageRequest(0, 20), false))
+                .when(updateRevisionManager).getAllUpdates(Optional.of(cursor), 20, userId, statuses, Collections.emptyList());
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.get(UPDATES_ENDPOINT)
+                        .param("userId", userId)
+                        .param("status", statuses.toArray(new String[0]))
+                        .param("cursor", cursor.toToken())
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        verify(updateRevisionManager).getAllUpdates(Optional.of(cursor), 20, userId, statuses, Collections.emptyList());
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.links", hasSize(0)));
+        compareUpdateRevisionWithResult(result, update, "content[0]");
+    }
+
+    @Test
+    public void getAllUpdatesAfterCursor_whenCursorIsInvalid_shouldReturn400BadRequest() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.get(UPDATES_ENDPOINT)
+                        .param("userId", userId)
+                        .param("cursor", "not a cursor")
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        result.andExpect(status().isBadRequest());
+        verifyZeroInteractions(updateRevisionManager);
+    }
+
     @Test
     public void getUpdateByUuid_whenNoUserIdGiven_shouldReturn400BadRequest() throws Exception {
         // Given
@@ -621,6 +842,58 @@ public class UpdateRevisionResourceTest extends ServiceClientTest {
         verify(updateRevisionManager).getUpdateByUuid(updateUuid, userId);
     }
 
+    @Test
+    public void getUpdateHistory_whenUpdateIdInvalid_shouldReturn404notFound() throws Exception {
+        // Given
+        final UUID updateUuid = UUID.randomUUID();
+        final String userId = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 10);
+
+        doThrow(UpdateNotFoundException.class)
+                .when(updateRevisionManager).getUpdateHistory(updateUuid, userId, pageable);
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.get(UPDATES_ENDPOINT + "/" + updateUuid + "/revisions")
+                        .param("userId", userId)
+                        .params(queryFrom(pageable))
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        result.andExpect(status().isNotFound());
+        verify(updateRevisionManager).getUpdateHistory(updateUuid, userId, pageable);
+    }
+
+    @Test
+    public void getUpdateHistory_whenRevisionsExist_shouldReturnThemAnd200Ok() throws Exception {
+        // Given
+        final UUID updateUuid = UUID.randomUUID();
+        final String userId = UUID.randomUUID().toString();
+        final Pageable pageable = new PageRequest(0, 10);
+        final UpdateRevision latest = getCreatedUpdateRevisionBuilder(userId).uuid(updateUuid).revisionId(2).build();
+        final UpdateRevision previous = getCreatedUpdateRevisionBuilder(userId).uuid(updateUuid).revisionId(1).build();
+
+        doReturn(new PageImpl<>(Arrays.asList(latest, previous), pageable, 2))
+                .when(updateRevisionManager).getUpdateHistory(updateUuid, userId, pageable);
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.get(UPDATES_ENDPOINT + "/" + updateUuid + "/revisions")
+                        .param("userId", userId)
+                        .params(queryFrom(pageable))
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        verify(updateRevisionManager).getUpdateHistory(updateUuid, userId, pageable);
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(2)))
+                .andExpect(jsonPath("$.content[0].revisionId").value(2))
+                .andExpect(jsonPath("$.content[1].revisionId").value(1))
+                .andExpect(jsonPath("$.page.totalElements").value(2));
+    }
+
     @Test
     public void getLatestPublishedUpdate_whenNoUserIdGiven_shouldReturn400BadRequest() throws Exception {
         // When
@@ -643,7 +916,7 @@ public class UpdateRevisionResourceTest extends ServiceClientTest {
                 .build();
 
         when(updateRevisionManager.getLatestPublishedUpdateForOtherSegment(userId))
-                .thenReturn(update);
+                .thenReturn(Optional.of(update));
 
         // When
         final ResultActions result = mvc.perform(
@@ -665,7 +938,7 @@ public class UpdateRevisionResourceTest extends ServiceClientTest {
                 .build();
 
         when(updateRevisionManager.getLatestPublishedUpdateForOtherSegment(userId))
-                .thenReturn(update);
+                .thenReturn(Optional.of(update));
 
         // When
         final ResultActions result = mvc.perform(
@@ -679,12 +952,12 @@ public class UpdateRevisionResourceTest extends ServiceClientTest {
     }
 
     @Test
-    public void getLatestPublishedUpdate_whenManagerThrowNoSuchUpdateException_shouldReturn204NoContent() throws Exception {
+    public void getLatestPublishedUpdate_whenManagerReturnsNoUpdate_shouldReturn204NoContent() throws Exception {
         // Given
         final String userId = UUID.randomUUID().toString();
         final String segmentId = UUID.randomUUID().toString();
         when(updateRevisionManager.getLatestPublishedUpdateForSegment(userId, segmentId))
-                .thenThrow(new NoSuchUpdateException(""));
+                .thenReturn(Optional.empty());
 
         // When
         final ResultActions result = mvc.perform(
@@ -707,7 +980,7 @@ public class UpdateRevisionResourceTest extends ServiceClientTest {
                 .build();
 
         when(updateRevisionManager.getLatestPublishedUpdateForSegment(userId, segmentId))
-                .thenReturn(update);
+                .thenReturn(Optional.of(update));
 
         // When
         final ResultActions result = mvc.perform(
@@ -721,6 +994,32 @@ public class UpdateRevisionResourceTest extends ServiceClientTest {
         verify(updateRevisionManager).getLatestPublishedUpdateForSegment(userId, segmentId);
     }
 
+    @Test
+    public void getUpdateCounts_shouldReturnTheCountsOfTheUserAnd200Ok() throws Exception {
+        // Given
+        final String userId = UUID.randomUUID().toString();
+        final UpdateCounts counts = UpdateCounts.of(Arrays.asList(
+                UpdateCount.builder().userId(userId).segmentId("segment").status(UpdateStatus.PUBLISHED).count(2).build(),
+                UpdateCount.builder().userId(userId).segmentId("other").status(UpdateStatus.DRAFT).count(3).build()
+        ));
+        when(updateRevisionManager.getUpdateCounts(userId)).thenReturn(counts);
+
+        // When
+        final ResultActions result = mvc.perform(
+                MockMvcRequestBuilders.get(UPDATES_ENDPOINT + "/counts?userId=" + userId)
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+        );
+
+        // Then
+        result.andExpect(status().isOk())
+                .andExpect(jsonPath("$.total.published").value(2))
+                .andExpect(jsonPath("$.total.draft").value(3))
+                .andExpect(jsonPath("$.total.scheduled").value(0))
+                .andExpect(jsonPath("$.segments.segment.published").value(2))
+                .andExpect(jsonPath("$.segments.other.draft").value(3));
+        verify(updateRevisionManager).getUpdateCounts(userId);
+    }
+
     private void compareUpdateRevisionWithResult(ResultActions result, UpdateRevision update, String pathToUpdate) throws Exception {
         result.andExpect(jsonPath("$." + pathToUpdate + ".uuid").value(update.getUuid().toString()))
                 .andExpect(jsonPath("$." + pathToUpdate + ".userId").value(update.getUserId()))